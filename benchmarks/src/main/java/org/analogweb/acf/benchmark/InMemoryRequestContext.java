@@ -0,0 +1,88 @@
+package org.analogweb.acf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.analogweb.RequestContext;
+import org.analogweb.core.MediaTypes;
+
+/**
+ * メモリ上のリクエストボディを返却する{@link RequestContext}を生成します。<br/>
+ * サーバーを起動せずに{@link org.analogweb.acf.AnalogwebRequestContext}を経由した
+ * リクエストの解析を計測するために使用します。
+ * マルチパートの解析に関係しないメソッドは、戻り値の型に応じた既定値を返却します。
+ * @author snowgoose
+ */
+public final class InMemoryRequestContext {
+
+    private InMemoryRequestContext() {
+        // nop.
+    }
+
+    public static RequestContext create(final String contentType, final byte[] body) {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        return proxy(RequestContext.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                final String name = method.getName();
+                if (name.equals("getRequestMethod")) {
+                    return "POST";
+                } else if (name.equals("getContentType")) {
+                    return MediaTypes.valueOf(contentType);
+                } else if (name.equals("getContentLength")) {
+                    return (long) body.length;
+                } else if (name.equals("getCharacterEncoding")) {
+                    return "UTF-8";
+                } else if (name.equals("getRequestBody")) {
+                    return new ByteArrayInputStream(body);
+                } else if (name.equals("getAttribute")) {
+                    return attributes.get(args[0]);
+                } else if (name.equals("setAttribute")) {
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    static <T> T nullObject(Class<T> type) {
+        return proxy(type, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(InMemoryRequestContext.class.getClassLoader(),
+                new Class<?>[] { type }, handler));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == List.class || type == Collection.class) {
+            return Collections.emptyList();
+        } else if (type == Map.class) {
+            return Collections.emptyMap();
+        } else if (type.isInterface() && type.getName().startsWith("org.analogweb.")) {
+            return nullObject(type);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package org.analogweb.acf.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * ベンチマーク用に合成したmultipart/form-dataのリクエストボディを生成します。<br/>
+ * 同一のシードから生成されるため、リリース間で同じ入力を再現することが可能です。
+ * @author snowgoose
+ */
+public final class MultipartBodies {
+
+    public static final String BOUNDARY = "----------------------------analogweb0bench";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * 生成するリクエストボディの構成です。
+     */
+    public enum Profile {
+        /** 小さなフォームフィールドが大量に含まれる構成です。 */
+        SMALL_FIELDS,
+        /** 巨大なファイルが数個含まれる構成です。 */
+        LARGE_FILES,
+        /** フォームフィールドと中程度のファイルが混在する構成です。 */
+        MIXED,
+        /** 同名のパートが大量に含まれる構成です。 */
+        REPEATED_NAMES
+    }
+
+    private MultipartBodies() {
+        // nop.
+    }
+
+    public static String contentType() {
+        return "multipart/form-data; boundary=" + BOUNDARY;
+    }
+
+    public static byte[] create(Profile profile) {
+        final Random random = new Random(0x5eedL);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            switch (profile) {
+            case SMALL_FIELDS:
+                for (int i = 0; i < 500; i++) {
+                    writeField(out, "field" + i, "value" + i);
+                }
+                break;
+            case LARGE_FILES:
+                for (int i = 0; i < 3; i++) {
+                    writeFile(out, "file" + i, "large" + i + ".bin", randomBytes(random,
+                            8 * 1024 * 1024));
+                }
+                break;
+            case MIXED:
+                for (int i = 0; i < 20; i++) {
+                    writeField(out, "field" + i, "value" + i);
+                    writeFile(out, "file" + i, "medium" + i + ".bin", randomBytes(random,
+                            64 * 1024));
+                }
+                break;
+            case REPEATED_NAMES:
+                for (int i = 0; i < 1000; i++) {
+                    writeField(out, "checkbox", String.valueOf(i));
+                }
+                for (int i = 0; i < 50; i++) {
+                    writeFile(out, "attachment", "small" + i + ".bin", randomBytes(random, 1024));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(profile.name());
+            }
+            out.write(ascii("--" + BOUNDARY + "--\r\n"));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeField(ByteArrayOutputStream out, String name, String value)
+            throws IOException {
+        out.write(ascii("--" + BOUNDARY + "\r\n"));
+        out.write(ascii("Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"));
+        out.write(ascii(value));
+        out.write(ascii("\r\n"));
+    }
+
+    private static void writeFile(ByteArrayOutputStream out, String name, String fileName,
+            byte[] content) throws IOException {
+        out.write(ascii("--" + BOUNDARY + "\r\n"));
+        out.write(ascii("Content-Disposition: form-data; name=\"" + name + "\"; filename=\""
+                + fileName + "\"\r\n"));
+        out.write(ascii("Content-Type: application/octet-stream\r\n\r\n"));
+        out.write(content);
+        out.write(ascii("\r\n"));
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        final byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(ASCII);
+    }
+}
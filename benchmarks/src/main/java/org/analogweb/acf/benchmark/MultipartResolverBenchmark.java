@@ -0,0 +1,119 @@
+package org.analogweb.acf.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.analogweb.Application;
+import org.analogweb.Multipart;
+import org.analogweb.RequestContext;
+import org.analogweb.acf.AbstractMultipartParameters;
+import org.analogweb.acf.MultipartParameterResolver;
+import org.analogweb.acf.MultipartParameterStreamResolver;
+import org.analogweb.acf.MultipartParameters;
+import org.analogweb.acf.benchmark.MultipartBodies.Profile;
+import org.analogweb.core.DefaultApplicationProperties;
+import org.analogweb.util.ApplicationPropertiesHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * {@link MultipartParameterResolver}と{@link MultipartParameterStreamResolver}の
+ * {@code resolveValue}を、{@link org.analogweb.acf.AnalogwebRequestContext}を経由して
+ * 計測するベンチマークです。<br/>
+ * スループットに加えて{@link Mode#SampleTime}によりp99などのレイテンシを、
+ * {@link GCProfiler}によりアロケーションレートを計測します。
+ * @author snowgoose
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MultipartResolverBenchmark {
+
+    private static final Application APPLICATION = InMemoryRequestContext
+            .nullObject(Application.class);
+
+    @Param({ "SMALL_FIELDS", "LARGE_FILES", "MIXED", "REPEATED_NAMES" })
+    public Profile profile;
+
+    private byte[] body;
+    private String contentType;
+    private MultipartParameterResolver buffered;
+    private MultipartParameterStreamResolver streaming;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ApplicationPropertiesHolder.configure(APPLICATION,
+                DefaultApplicationProperties.defaultProperties());
+        this.body = MultipartBodies.create(profile);
+        this.contentType = MultipartBodies.contentType();
+        this.buffered = new MultipartParameterResolver();
+        this.streaming = new MultipartParameterStreamResolver();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ApplicationPropertiesHolder.dispose(APPLICATION);
+    }
+
+    @Benchmark
+    public void buffered(Blackhole bh) throws IOException {
+        consume(bh, resolve(this.buffered));
+    }
+
+    @Benchmark
+    public void streaming(Blackhole bh) throws IOException {
+        consume(bh, resolve(this.streaming));
+    }
+
+    private MultipartParameters<?> resolve(MultipartParameterResolver resolver) {
+        final RequestContext request = InMemoryRequestContext.create(contentType, body);
+        return (MultipartParameters<?>) resolver.resolveValue(request, null, "", Iterable.class,
+                null);
+    }
+
+    private void consume(Blackhole bh, MultipartParameters<?> parameters) throws IOException {
+        final byte[] buffer = new byte[8192];
+        try {
+            for (final Multipart part : parameters) {
+                bh.consume(part.getName());
+                final InputStream in = part.getInputStream();
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        bh.consume(read);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            // no MultipartCleanupProcessor runs here, so delete temp files explicitly.
+            AbstractMultipartParameters.dispose(parameters);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MultipartResolverBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,71 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.analogweb.Multipart;
+
+/**
+ * パートの逐次処理、並列処理及びリソースの解放を提供する{@link MultipartParameters}の
+ * 基底クラスです。<br/>
+ * {@link MultipartParameters}を直接実装したクラスは、{@link #dispose(MultipartParameters)}
+ * による解放の対象となりません。
+ * @author snowgoose
+ */
+public abstract class AbstractMultipartParameters<T extends Multipart> implements
+        MultipartParameters<T> {
+
+    /**
+     * すべてのパートを出現順に{@link PartHandler}へ渡します。
+     * @param handler {@link PartHandler}
+     */
+    public void forEachPart(PartHandler handler) {
+        forEachPart(this, handler);
+    }
+
+    /**
+     * すべてのパートを{@link Executor}により並列に処理し、結果を出現順に返却します。
+     * @param processor {@link PartProcessor}
+     * @param executor パートを処理する{@link Executor}。{@code null}の場合は共有の
+     * {@link java.util.concurrent.ForkJoinPool}
+     * @return 処理結果
+     * @see ParallelPartProcessor
+     */
+    public <R> List<R> processAll(PartProcessor<R> processor, Executor executor) {
+        return new ParallelPartProcessor(executor).processAll(this, processor);
+    }
+
+    /**
+     * 一時ファイルなど、パートが保持しているリソースを解放します。<br/>
+     * リクエストの処理の完了時に{@link MultipartCleanupProcessor}により実行されます。
+     */
+    public void dispose() {
+        // nothing to release.
+    }
+
+    /**
+     * パートを出現順に{@link PartHandler}へ渡します。
+     * @param parts パート
+     * @param handler {@link PartHandler}
+     */
+    public static void forEachPart(Iterable<? extends Multipart> parts, PartHandler handler) {
+        for (final Multipart part : parts) {
+            try {
+                handler.handle(part);
+            } catch (final IOException e) {
+                throw new FileUploadFailureException(e);
+            }
+        }
+    }
+
+    /**
+     * {@link AbstractMultipartParameters}の場合のみ、リソースを解放します。
+     * @param parameters {@link MultipartParameters}
+     */
+    public static void dispose(MultipartParameters<?> parameters) {
+        if (parameters instanceof AbstractMultipartParameters) {
+            ((AbstractMultipartParameters<?>) parameters).dispose();
+        }
+    }
+}
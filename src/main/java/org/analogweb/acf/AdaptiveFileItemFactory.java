@@ -0,0 +1,61 @@
+package org.analogweb.acf;
+
+import java.io.File;
+
+/**
+ * パート毎にメモリ上に保持する閾値を決定する{@link TrackedDiskFileItemFactory}です。<br/>
+ * すべてのパートがメモリ上に保持するバイト数の合計は、指定された上限(メモリバジェット)を
+ * 超えません。
+ * @author snowgoose
+ * @see MemoryBudgetDecorator
+ */
+public class AdaptiveFileItemFactory extends TrackedDiskFileItemFactory {
+
+    public static final int DEFAULT_MAX_SIZE_THRESHOLD = MemoryBudgetDecorator.DEFAULT_MAX_SIZE_THRESHOLD;
+    private final MemoryBudgetDecorator budget;
+
+    /**
+     * @param memoryBudget すべてのパートがメモリ上に保持するバイト数の合計の上限
+     * @param repository 一時ファイルを書き出すディレクトリ
+     */
+    public AdaptiveFileItemFactory(long memoryBudget, File repository) {
+        super(DEFAULT_SIZE_THRESHOLD, repository);
+        this.budget = new MemoryBudgetDecorator(memoryBudget, DEFAULT_SIZE_THRESHOLD);
+        addDecorator(this.budget);
+    }
+
+    /**
+     * 現在の閾値を返却します。<br/>
+     * 十分な数のパートを受け付けるまでは、閾値の上限を返却します。
+     */
+    @Override
+    public int getSizeThreshold() {
+        return budget.getSizeThreshold();
+    }
+
+    /**
+     * メモリ上に保持されているパートが予約しているバイト数の合計を返却します。
+     */
+    public long getReservedBytes() {
+        return budget.getReservedBytes();
+    }
+
+    public long getMemoryBudget() {
+        return budget.getMemoryBudget();
+    }
+
+    public void setMinSizeThreshold(int minSizeThreshold) {
+        budget.setMinSizeThreshold(minSizeThreshold);
+    }
+
+    public void setMaxSizeThreshold(int maxSizeThreshold) {
+        budget.setMaxSizeThreshold(maxSizeThreshold);
+    }
+
+    /**
+     * 閾値の算出に使用するパーセンタイル(0から1)を指定します。デフォルトは{@code 0.9}です。
+     */
+    public void setPercentile(double percentile) {
+        budget.setPercentile(percentile);
+    }
+}
@@ -2,18 +2,34 @@ package org.analogweb.acf;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
+import org.analogweb.Headers;
 import org.analogweb.RequestContext;
+import org.apache.commons.fileupload.UploadContext;
 
 /**
+ * {@link RequestContext}を{@link org.apache.commons.fileupload.RequestContext}として
+ * 扱います。<br/>
+ * {@link ContentDecoder}が指定されている場合、リクエストボディは
+ * {@code Content-Encoding}に従って展開されます。
+ * {@link UploadContext}として、2GBを超える{@code Content-Length}も扱います。
  * @author snowgooseyk
  */
-public class AnalogwebRequestContext implements org.apache.commons.fileupload.RequestContext {
+public class AnalogwebRequestContext implements UploadContext {
 
     private final org.analogweb.RequestContext request;
+    private final ContentDecoder decoder;
+    private final String contentEncoding;
 
     public AnalogwebRequestContext(RequestContext request) {
+        this(request, null);
+    }
+
+    public AnalogwebRequestContext(RequestContext request, ContentDecoder decoder) {
         this.request = request;
+        this.decoder = decoder;
+        this.contentEncoding = decoder == null ? null : resolveContentEncoding(request);
     }
 
     @Override
@@ -27,12 +43,49 @@ public class AnalogwebRequestContext implements org.apache.commons.fileupload.Re
     }
 
     @Override
+    public long contentLength() {
+        if (isEncoded()) {
+            // decoded length is unknown.
+            return -1;
+        }
+        return request.getContentLength();
+    }
+
+    @Override
+    @Deprecated
     public int getContentLength() {
-        return (int) request.getContentLength();
+        final long length = contentLength();
+        return length > Integer.MAX_VALUE ? -1 : (int) length;
     }
 
     @Override
     public InputStream getInputStream() throws IOException {
+        if (isEncoded()) {
+            return decoder.decode(getRequestBody(), contentEncoding);
+        }
+        return getRequestBody();
+    }
+
+    /**
+     * 展開する前のリクエストボディを取得します。
+     */
+    protected InputStream getRequestBody() throws IOException {
         return request.getRequestBody();
     }
+
+    private boolean isEncoded() {
+        return decoder != null && decoder.isEncoded(contentEncoding);
+    }
+
+    private static String resolveContentEncoding(RequestContext request) {
+        final Headers headers = request.getRequestHeaders();
+        if (headers == null) {
+            return null;
+        }
+        final List<String> values = headers.getValues(ContentDecoder.CONTENT_ENCODING);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.get(0);
+    }
 }
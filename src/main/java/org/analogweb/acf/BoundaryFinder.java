@@ -0,0 +1,52 @@
+package org.analogweb.acf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Boyer-Moore-Horspool法により、{@link ByteBuffer}からマルチパートの境界を探索します。<br/>
+ * 探索対象のバッファの内容をコピーすることはありません。
+ * @author snowgoose
+ */
+final class BoundaryFinder {
+
+    private final byte[] pattern;
+    private final int[] shifts = new int[256];
+
+    BoundaryFinder(byte[] pattern) {
+        this.pattern = pattern;
+        final int last = pattern.length - 1;
+        for (int i = 0; i < shifts.length; i++) {
+            shifts[i] = pattern.length;
+        }
+        for (int i = 0; i < last; i++) {
+            shifts[pattern[i] & 0xff] = last - i;
+        }
+    }
+
+    int length() {
+        return this.pattern.length;
+    }
+
+    /**
+     * 指定された範囲から境界を探索します。
+     * @param buffer 探索対象の{@link ByteBuffer}
+     * @param from 探索を開始する絶対位置
+     * @param to 探索を終了する絶対位置(この位置を含まない)
+     * @return 境界の開始位置。見つからない場合は{@code -1}
+     */
+    int indexOf(ByteBuffer buffer, int from, int to) {
+        final int last = pattern.length - 1;
+        int i = from;
+        while (i + last < to) {
+            int j = last;
+            while (buffer.get(i + j) == pattern[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += shifts[buffer.get(i + last) & 0xff];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,20 @@
+package org.analogweb.acf;
+
+import java.nio.ByteBuffer;
+
+import org.analogweb.Multipart;
+
+/**
+ * 内容を読み取り専用の{@link ByteBuffer}として参照可能な{@link Multipart}です。<br/>
+ * {@link #getBytes()}が内容の複製を返却するのに対し、{@link #asReadOnlyBuffer()}は
+ * 保持している内容を複製せずに参照します。
+ * @author snowgoose
+ */
+public interface BufferedMultipart extends Multipart {
+
+    /**
+     * このパートの内容を読み取り専用の{@link ByteBuffer}として取得します。
+     * @return 読み取り専用の{@link ByteBuffer}
+     */
+    ByteBuffer asReadOnlyBuffer();
+}
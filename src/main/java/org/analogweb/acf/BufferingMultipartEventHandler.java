@@ -0,0 +1,74 @@
+package org.analogweb.acf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.fileupload.FileItemHeaders;
+
+/**
+ * {@link MultipartPushParser}のイベントから{@link ByteBufferMultipart}を組み立て、
+ * {@link MultipartParameters}として参照可能にする{@link MultipartEventHandler}です。<br/>
+ * 各パートの内容はメモリ上に保持されます。
+ * @author snowgoose
+ */
+public class BufferingMultipartEventHandler implements MultipartEventHandler {
+
+    private static final int INITIAL_PART_SIZE = 1024;
+    private final List<ByteBufferMultipart> parts = new ArrayList<ByteBufferMultipart>();
+    private FileItemHeaders headers;
+    private byte[] content;
+    private int length;
+    private boolean complete;
+
+    @Override
+    public void onPartStart(FileItemHeaders headers) {
+        this.headers = headers;
+        this.content = new byte[INITIAL_PART_SIZE];
+        this.length = 0;
+    }
+
+    @Override
+    public void onPartData(ByteBuffer data) {
+        final int size = data.remaining();
+        if (this.length + size > this.content.length) {
+            final byte[] extended = new byte[Math.max(this.content.length * 2, this.length + size)];
+            System.arraycopy(this.content, 0, extended, 0, this.length);
+            this.content = extended;
+        }
+        data.get(this.content, this.length, size);
+        this.length += size;
+    }
+
+    @Override
+    public void onPartEnd() {
+        this.parts.add(new ByteBufferMultipart(PartHeaders.getFieldName(headers), PartHeaders
+                .getFileName(headers), headers.getHeader("Content-Type"), headers, ByteBuffer.wrap(
+                this.content, 0, this.length).slice()));
+        this.headers = null;
+        this.content = null;
+    }
+
+    @Override
+    public void onComplete() {
+        this.complete = true;
+    }
+
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    public List<ByteBufferMultipart> getMultiparts() {
+        return Collections.unmodifiableList(this.parts);
+    }
+
+    /**
+     * これまでに組み立てられたパートを{@link MultipartParameters}として取得します。
+     * @param encoding フォームフィールドのエンコーディング
+     * @return {@link MultipartParameters}
+     */
+    public MultipartParameters<ByteBufferMultipart> getParameters(String encoding) {
+        return new ByteBufferMultipartParameters(getMultiparts(), encoding);
+    }
+}
@@ -0,0 +1,102 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+import org.analogweb.Multipart;
+import org.apache.commons.fileupload.FileItemHeaders;
+
+/**
+ * リクエストボディを保持する{@link ByteBuffer}のスライスを内容とする
+ * {@link Multipart}の実装です。<br/>
+ * {@link #getInputStream()}はバッファをコピーせずに内容を読み出します。
+ * @author snowgoose
+ */
+public class ByteBufferMultipart implements BufferedMultipart, TransferableMultipart {
+
+    private final String name;
+    private final String resourceName;
+    private final String contentType;
+    private final FileItemHeaders headers;
+    private final ByteBuffer content;
+
+    public ByteBufferMultipart(String name, String resourceName, String contentType,
+            FileItemHeaders headers, ByteBuffer content) {
+        this.name = name;
+        this.resourceName = resourceName;
+        this.contentType = contentType;
+        this.headers = headers;
+        this.content = content.asReadOnlyBuffer();
+    }
+
+    public boolean isMultipartFile() {
+        return this.resourceName != null;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public String getResourceName() {
+        return this.resourceName;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteBufferInputStream(this.content);
+    }
+
+    @Override
+    public byte[] getBytes() {
+        final byte[] bytes = new byte[this.content.remaining()];
+        this.content.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    public FileItemHeaders getHeaders() {
+        return this.headers;
+    }
+
+    public long getSize() {
+        return this.content.remaining();
+    }
+
+    @Override
+    public ByteBuffer asReadOnlyBuffer() {
+        return this.content.duplicate();
+    }
+
+    @Override
+    public long transferTo(Path target) {
+        try {
+            final FileChannel channel = Transfers.openTarget(target);
+            try {
+                return Transfers.write(this.content.duplicate(), channel);
+            } finally {
+                channel.close();
+            }
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel channel) {
+        try {
+            return Transfers.write(this.content.duplicate(), channel);
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+    }
+}
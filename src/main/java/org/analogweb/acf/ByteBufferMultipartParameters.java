@@ -0,0 +1,98 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RESOURCE;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.analogweb.util.logging.Log;
+import org.analogweb.util.logging.Logs;
+
+/**
+ * {@link MultipartBufferParser}により解析された{@link ByteBufferMultipart}を保持する
+ * {@link MultipartParameters}の実装です。
+ * @author snowgoose
+ */
+public class ByteBufferMultipartParameters extends
+        AbstractMultipartParameters<ByteBufferMultipart> {
+
+    private static final Log log = Logs.getLog(ByteBufferMultipartParameters.class);
+    private final List<ByteBufferMultipart> multiparts;
+    private final String encoding;
+    private MultipartIndex<ByteBufferMultipart> params;
+    private MultipartIndex<ByteBufferMultipart> files;
+    private Map<String, String[]> paramMap;
+    private Map<String, ByteBufferMultipart[]> fileMap;
+
+    public ByteBufferMultipartParameters(List<ByteBufferMultipart> multiparts, String encoding) {
+        this.multiparts = multiparts;
+        this.encoding = encoding;
+    }
+
+    @Override
+    public Iterator<ByteBufferMultipart> iterator() {
+        return multiparts.iterator();
+    }
+
+    @Override
+    public String[] getParameter(String name) {
+        extractParameters();
+        return this.params.getStrings(name, encoding);
+    }
+
+    @Override
+    public Collection<String> getParameterNames() {
+        return getParameterMap().keySet();
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        if (this.paramMap == null) {
+            extractParameters();
+            this.paramMap = this.params.asStringMap(encoding);
+        }
+        return this.paramMap;
+    }
+
+    @Override
+    public ByteBufferMultipart[] getMultiparts(String name) {
+        extractParameters();
+        return this.files.get(name);
+    }
+
+    @Override
+    public Collection<String> getMultipartParameterNames() {
+        return asMap().keySet();
+    }
+
+    public Map<String, ByteBufferMultipart[]> asMap() {
+        if (this.fileMap == null) {
+            extractParameters();
+            this.fileMap = this.files.asMap();
+        }
+        return this.fileMap;
+    }
+
+    private void extractParameters() {
+        if (this.params != null) {
+            return;
+        }
+        final MultipartIndex<ByteBufferMultipart> params = new MultipartIndex<ByteBufferMultipart>(
+                ByteBufferMultipart.class);
+        final MultipartIndex<ByteBufferMultipart> files = new MultipartIndex<ByteBufferMultipart>(
+                ByteBufferMultipart.class);
+        for (final ByteBufferMultipart param : this) {
+            if (param.isMultipartFile()) {
+                log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000002", new Object[] { param.getName() });
+                files.add(param);
+            } else {
+                log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000001", new Object[] { param.getName() });
+                params.add(param);
+            }
+        }
+        this.files = files;
+        this.params = params;
+    }
+}
@@ -0,0 +1,35 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+import org.analogweb.Multipart;
+
+/**
+ * ファイルパラメータの内容を、出現順に{@link WritableByteChannel}へ書き出す
+ * {@link PartHandler}です。<br/>
+ * {@link WritableByteChannel}はこのハンドラでは閉じられません。
+ * @author snowgoose
+ */
+public class ChannelPartHandler extends FilePartHandler {
+
+    private final WritableByteChannel channel;
+    private long transferred;
+
+    public ChannelPartHandler(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    protected void handleFile(Multipart part, InputStream content) throws IOException {
+        this.transferred += transfer(part, content, this.channel);
+    }
+
+    /**
+     * 書き出したバイト数の合計を返却します。
+     */
+    public long getTransferred() {
+        return this.transferred;
+    }
+}
@@ -0,0 +1,319 @@
+package org.analogweb.acf;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.analogweb.Headers;
+import org.analogweb.RequestContext;
+import org.analogweb.util.StringUtils;
+
+/**
+ * クライアントごとに、一定の期間内にアップロード可能なバイト数を制限します。<br/>
+ * クライアントはリクエストの属性{@value #CLIENT_KEY_ATTRIBUTE}により識別されます。
+ * 信頼できるプロキシを経由する場合に限り、{@link #setClientKeyHeader(String)}により
+ * プロキシが付与するリクエストヘッダによる識別を指定できます。識別できないリクエストは
+ * 予算の対象となりません。<br/>
+ * 予算を管理するクライアントの数は{@link #setMaxClients(int)}により制限され、
+ * 上限に達している間は新たなクライアントのリクエストは拒否されます。<br/>
+ * バイト数は{@code Content-Length}により、リクエストボディを読み込む前に計上されます。
+ * {@code Content-Length}が不明なリクエストは、期間内の残りのバイト数が存在する限り
+ * 受け付けられ、{@link #meter(RequestContext, InputStream)}により読み込まれたバイト数が
+ * 計上されます。
+ * @author snowgoose
+ */
+public class ClientUploadBudget {
+
+    public static final String CLIENT_KEY_ATTRIBUTE = ClientUploadBudget.class.getCanonicalName()
+            + ".CLIENT_KEY";
+    public static final int DEFAULT_MAX_CLIENTS = 10000;
+    private static final int PURGE_THRESHOLD = 1024;
+    private static final long PURGE_INTERVAL_MILLIS = 1000;
+    private final long maxBytesPerWindow;
+    private final long windowMillis;
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+    private final AtomicLong lastPurged = new AtomicLong();
+    private String clientKeyHeader;
+    private int trustedProxies = 1;
+    private int maxClients = DEFAULT_MAX_CLIENTS;
+
+    /**
+     * @param maxBytesPerWindow 期間内にクライアントごとにアップロード可能なバイト数
+     * @param windowMillis 期間のミリ秒
+     */
+    public ClientUploadBudget(long maxBytesPerWindow, long windowMillis) {
+        this.maxBytesPerWindow = maxBytesPerWindow;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * リクエストボディのバイト数を、クライアントの予算から差し引きます。<br/>
+     * クライアントを識別できないリクエストは差し引かれません。
+     * @param request {@link RequestContext}
+     * @throws UploadRejectedException 予算を超える場合
+     */
+    public void charge(RequestContext request) {
+        final String clientKey = resolveClientKey(request);
+        if (clientKey == null) {
+            return;
+        }
+        charge(clientKey, request.getContentLength(), System.currentTimeMillis());
+    }
+
+    /**
+     * {@code Content-Length}が不明なリクエストのボディを、読み込まれたバイト数を
+     * クライアントの予算から差し引く{@link InputStream}で包みます。<br/>
+     * 予算を超えた時点で、読み込みは{@link UploadRejectedException}により失敗します。
+     * @param request {@link RequestContext}
+     * @param body リクエストボディ
+     * @return {@link InputStream}。計上の必要がない場合は{@code body}
+     */
+    public InputStream meter(RequestContext request, InputStream body) {
+        if (request.getContentLength() >= 0) {
+            // charged up front.
+            return body;
+        }
+        return meter(resolveClientKey(request), body);
+    }
+
+    InputStream meter(String clientKey, InputStream body) {
+        if (clientKey == null) {
+            return body;
+        }
+        return new MeteredInputStream(body, clientKey);
+    }
+
+    void charge(String clientKey, long contentLength, long now) {
+        if (windowOf(clientKey, now).charge(Math.max(contentLength, 0), now) == false) {
+            throw exceeded(clientKey);
+        }
+    }
+
+    /**
+     * 読み込まれたバイト数を計上します。読み込まれたバイト数は、予算を超える場合も
+     * 計上されます。
+     */
+    void consume(String clientKey, long bytes, long now) {
+        if (windowOf(clientKey, now).consume(bytes, now) == false) {
+            throw exceeded(clientKey);
+        }
+    }
+
+    private UploadRejectedException exceeded(String clientKey) {
+        return new UploadRejectedException(String.format(
+                "client [%s] exceeds upload budget (%s bytes per %s ms)", clientKey,
+                maxBytesPerWindow, windowMillis));
+    }
+
+    private Window windowOf(String clientKey, long now) {
+        Window window = windows.get(clientKey);
+        if (window == null) {
+            if (windows.size() >= Math.min(PURGE_THRESHOLD, maxClients)) {
+                purgeIfDue(now);
+            }
+            if (windows.size() >= maxClients) {
+                throw new UploadRejectedException(String.format(
+                        "too many clients are tracked by upload budget (%s)", maxClients));
+            }
+            window = new Window(now);
+            final Window existing = windows.putIfAbsent(clientKey, window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        return window;
+    }
+
+    /**
+     * @param clientKey クライアントの識別子
+     * @return 現在の期間内にアップロード可能な残りのバイト数
+     */
+    public long getRemaining(String clientKey) {
+        final Window window = windows.get(clientKey);
+        if (window == null) {
+            return maxBytesPerWindow;
+        }
+        return window.remaining(System.currentTimeMillis());
+    }
+
+    /**
+     * クライアントの識別子を取得します。
+     * @param request {@link RequestContext}
+     * @return クライアントの識別子。識別できない場合は{@code null}
+     */
+    protected String resolveClientKey(RequestContext request) {
+        final Object attribute = request.getAttribute(CLIENT_KEY_ATTRIBUTE);
+        if (attribute != null && StringUtils.isNotEmpty(attribute.toString())) {
+            return attribute.toString();
+        }
+        final String header = getClientKeyHeader();
+        final Headers headers = request.getRequestHeaders();
+        if (StringUtils.isEmpty(header) || headers == null) {
+            return null;
+        }
+        final List<String> values = headers.getValues(header);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        final List<String> hops = new ArrayList<String>();
+        for (final String value : values) {
+            for (final String hop : value.split(",")) {
+                if (StringUtils.isNotEmpty(hop.trim())) {
+                    hops.add(hop.trim());
+                }
+            }
+        }
+        // entries left of those appended by trusted proxies are given by the client.
+        final int index = hops.size() - trustedProxies;
+        if (index < 0) {
+            return null;
+        }
+        return hops.get(index);
+    }
+
+    /**
+     * 期限切れの期間を削除します。全体の走査は一定の間隔で一度だけ行われます。
+     */
+    private void purgeIfDue(long now) {
+        final long last = lastPurged.get();
+        if (now - last < Math.min(windowMillis, PURGE_INTERVAL_MILLIS)
+                || lastPurged.compareAndSet(last, now) == false) {
+            return;
+        }
+        purge(now);
+    }
+
+    private void purge(long now) {
+        for (final Iterator<Window> i = windows.values().iterator(); i.hasNext();) {
+            if (i.next().isExpired(now)) {
+                i.remove();
+            }
+        }
+    }
+
+    public String getClientKeyHeader() {
+        return this.clientKeyHeader;
+    }
+
+    /**
+     * 信頼できるプロキシが付与する、クライアントを識別するリクエストヘッダ
+     * (例えば{@code X-Forwarded-For})を指定します。<br/>
+     * ヘッダはクライアントにより偽装できるため、全てのリクエストが信頼できるプロキシを
+     * 経由する場合にのみ指定してください。デフォルトはヘッダによる識別を行いません。
+     */
+    public void setClientKeyHeader(String clientKeyHeader) {
+        this.clientKeyHeader = clientKeyHeader;
+    }
+
+    public int getTrustedProxies() {
+        return this.trustedProxies;
+    }
+
+    /**
+     * {@link #setClientKeyHeader(String)}のヘッダに値を付与する、信頼できるプロキシの
+     * 数を指定します。<br/>
+     * 末尾からこの数だけ遡った値をクライアントの識別子とします。デフォルトは{@code 1}です。
+     */
+    public void setTrustedProxies(int trustedProxies) {
+        this.trustedProxies = trustedProxies;
+    }
+
+    public int getMaxClients() {
+        return this.maxClients;
+    }
+
+    /**
+     * 予算を管理するクライアントの最大数を指定します。<br/>
+     * デフォルトは{@value #DEFAULT_MAX_CLIENTS}です。
+     */
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    private final class MeteredInputStream extends FilterInputStream {
+
+        private final String clientKey;
+
+        MeteredInputStream(InputStream in, String clientKey) {
+            super(in);
+            this.clientKey = clientKey;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                consume(clientKey, 1, System.currentTimeMillis());
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                consume(clientKey, read, System.currentTimeMillis());
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            if (skipped > 0) {
+                consume(clientKey, skipped, System.currentTimeMillis());
+            }
+            return skipped;
+        }
+    }
+
+    private final class Window {
+
+        private long started;
+        private long used;
+
+        Window(long started) {
+            this.started = started;
+        }
+
+        synchronized boolean charge(long bytes, long now) {
+            roll(now);
+            if (bytes == 0) {
+                return used < maxBytesPerWindow;
+            }
+            if (used + bytes > maxBytesPerWindow) {
+                return false;
+            }
+            used += bytes;
+            return true;
+        }
+
+        synchronized boolean consume(long bytes, long now) {
+            roll(now);
+            used += bytes;
+            return used <= maxBytesPerWindow;
+        }
+
+        synchronized long remaining(long now) {
+            roll(now);
+            return Math.max(maxBytesPerWindow - used, 0);
+        }
+
+        synchronized boolean isExpired(long now) {
+            return now - started >= windowMillis;
+        }
+
+        private void roll(long now) {
+            if (now - started >= windowMillis) {
+                started = now;
+                used = 0;
+            }
+        }
+    }
+}
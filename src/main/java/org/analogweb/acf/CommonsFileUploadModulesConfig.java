@@ -25,6 +25,7 @@ public class CommonsFileUploadModulesConfig implements PluginModulesConfig {
         log.log(PLUGIN_MESSAGE_RESOURCE, "IACF000001");
         builder.addRequestValueResolverClass(MultipartParameterResolver.class);
         builder.addRequestValueResolverClass(MultipartParameterStreamResolver.class);
+        builder.addApplicationProcessorClass(MultipartCleanupProcessor.class);
         return builder;
     }
 }
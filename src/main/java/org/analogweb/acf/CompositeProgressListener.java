@@ -0,0 +1,36 @@
+package org.analogweb.acf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.fileupload.ProgressListener;
+
+/**
+ * 複数の{@link ProgressListener}に進捗を通知する{@link ProgressListener}です。
+ * @author snowgoose
+ */
+public class CompositeProgressListener implements ProgressListener {
+
+    private final List<ProgressListener> listeners;
+
+    public CompositeProgressListener(ProgressListener... listeners) {
+        this(Arrays.asList(listeners));
+    }
+
+    public CompositeProgressListener(List<ProgressListener> listeners) {
+        this.listeners = new ArrayList<ProgressListener>(listeners.size());
+        for (final ProgressListener listener : listeners) {
+            if (listener != null) {
+                this.listeners.add(listener);
+            }
+        }
+    }
+
+    @Override
+    public void update(long pBytesRead, long pContentLength, int pItems) {
+        for (final ProgressListener listener : listeners) {
+            listener.update(pBytesRead, pContentLength, pItems);
+        }
+    }
+}
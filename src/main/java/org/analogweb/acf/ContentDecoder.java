@@ -0,0 +1,144 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import org.analogweb.util.StringUtils;
+import org.apache.commons.fileupload.FileItemHeaders;
+import org.apache.commons.fileupload.FileUploadBase.FileUploadIOException;
+import org.apache.commons.fileupload.FileUploadException;
+
+/**
+ * {@code Content-Encoding}に従って、圧縮されたリクエストボディやパートを逐次的に
+ * 展開します。<br/>
+ * {@code gzip}(及び{@code x-gzip})と{@code deflate}に対応し、複数の
+ * エンコーディングが指定されている場合は逆順に展開します。
+ * 展開には{@link InflaterPool}から取得した{@link java.util.zip.Inflater}が使用されます。
+ * 圧縮率が{@link #setMaxRatio(long)}を超えるデータは、圧縮爆弾とみなして拒否します。
+ * @author snowgoose
+ */
+public class ContentDecoder {
+
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String CONTENT_TRANSFER_ENCODING = "Content-Transfer-Encoding";
+    public static final long DEFAULT_MAX_RATIO = 100;
+    public static final long DEFAULT_RATIO_THRESHOLD = 1024 * 1024;
+    private final InflaterPool pool;
+    private long maxRatio = DEFAULT_MAX_RATIO;
+    private long ratioThreshold = DEFAULT_RATIO_THRESHOLD;
+    private long maxDecodedSize = -1;
+
+    public ContentDecoder() {
+        this(new InflaterPool());
+    }
+
+    public ContentDecoder(InflaterPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 指定されたエンコーディングに従って展開する{@link InputStream}を返却します。
+     * @param in 圧縮されたデータ
+     * @param contentEncoding {@code Content-Encoding}の値
+     * @return 展開されたデータを読み出す{@link InputStream}。エンコーディングが
+     * 指定されていない場合は{@code in}
+     * @throws IOException サポートされていないエンコーディングが指定された場合など
+     */
+    public InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        return decode(in, contentEncoding, getMaxDecodedSize());
+    }
+
+    InputStream decode(InputStream in, String contentEncoding, long maxBytes)
+            throws IOException {
+        if (isEncoded(contentEncoding) == false) {
+            return in;
+        }
+        final String[] codings = contentEncoding.split(",");
+        InputStream decoded = in;
+        for (int i = codings.length - 1; i >= 0; i--) {
+            final String coding = codings[i].trim().toLowerCase(Locale.ENGLISH);
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                decoded = new InflatingInputStream(decoded, pool, true, maxBytes, getMaxRatio(),
+                        getRatioThreshold());
+            } else if (coding.equals("deflate")) {
+                decoded = new InflatingInputStream(decoded, pool, false, maxBytes, getMaxRatio(),
+                        getRatioThreshold());
+            } else if (coding.isEmpty() == false && coding.equals("identity") == false) {
+                throw new FileUploadIOException(new FileUploadException(String.format(
+                        "unsupported content encoding [%s]", coding)));
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * パートのヘッダから圧縮形式を取得します。<br/>
+     * {@code Content-Encoding}を優先し、指定されていない場合は
+     * {@code Content-Transfer-Encoding}のうち圧縮形式を表す値のみを使用します。
+     * @return 圧縮形式。圧縮されていない場合は{@code null}
+     */
+    public String getPartEncoding(FileItemHeaders headers) {
+        if (headers == null) {
+            return null;
+        }
+        final String encoding = headers.getHeader(CONTENT_ENCODING);
+        if (StringUtils.isNotEmpty(encoding)) {
+            return encoding;
+        }
+        final String transferEncoding = headers.getHeader(CONTENT_TRANSFER_ENCODING);
+        if (StringUtils.isNotEmpty(transferEncoding)) {
+            final String coding = transferEncoding.trim().toLowerCase(Locale.ENGLISH);
+            if (coding.equals("gzip") || coding.equals("x-gzip") || coding.equals("deflate")) {
+                return coding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 展開が必要なエンコーディングの場合は{@code true}
+     */
+    public boolean isEncoded(String contentEncoding) {
+        return StringUtils.isNotEmpty(contentEncoding)
+                && contentEncoding.trim().equalsIgnoreCase("identity") == false;
+    }
+
+    public InflaterPool getInflaterPool() {
+        return this.pool;
+    }
+
+    protected long getMaxRatio() {
+        return this.maxRatio;
+    }
+
+    /**
+     * 許容する圧縮率の上限を指定します。{@code -1}で無制限です。
+     */
+    public void setMaxRatio(long maxRatio) {
+        this.maxRatio = maxRatio;
+    }
+
+    protected long getRatioThreshold() {
+        return this.ratioThreshold;
+    }
+
+    /**
+     * 圧縮率を検査する、展開後のバイト数の下限を指定します。<br/>
+     * 小さなデータは圧縮率が高くなりやすいため、この値を超えるまで検査しません。
+     */
+    public void setRatioThreshold(long ratioThreshold) {
+        this.ratioThreshold = ratioThreshold;
+    }
+
+    protected long getMaxDecodedSize() {
+        return this.maxDecodedSize;
+    }
+
+    /**
+     * 展開後のバイト数の上限を指定します。{@code -1}(デフォルト)で無制限です。
+     */
+    public void setMaxDecodedSize(long maxDecodedSize) {
+        this.maxDecodedSize = maxDecodedSize;
+    }
+}
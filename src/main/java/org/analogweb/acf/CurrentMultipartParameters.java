@@ -21,6 +21,11 @@ class CurrentMultipartParameters {
     }
 
     static void dispose(RequestContext request) {
+        final MultipartParameters<Multipart> params = get(request);
+        if (params == null) {
+            return;
+        }
         request.setAttribute(ATTRIBUTE_NAME, null);
+        AbstractMultipartParameters.dispose(params);
     }
 }
@@ -0,0 +1,117 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileItemHeaders;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.RequestContext;
+
+/**
+ * パートのヘッダ({@code Content-Encoding}など)に従って、圧縮されたパートを展開しながら
+ * 読み出す{@link FileUpload}です。<br/>
+ * パートは{@link FileItemFactory}により一時ファイルなどに書き出される前に展開されます。
+ * 展開後のバイト数は{@link #getFileSizeMax()}によっても制限されます。
+ * @author snowgoose
+ */
+public class DecodingFileUpload extends FileUpload {
+
+    private final ContentDecoder decoder;
+
+    public DecodingFileUpload(ContentDecoder decoder) {
+        super();
+        this.decoder = decoder;
+    }
+
+    public DecodingFileUpload(FileItemFactory fileItemFactory, ContentDecoder decoder) {
+        super(fileItemFactory);
+        this.decoder = decoder;
+    }
+
+    @Override
+    public FileItemIterator getItemIterator(RequestContext ctx) throws FileUploadException,
+            IOException {
+        final FileItemIterator iterator = super.getItemIterator(ctx);
+        return new FileItemIterator() {
+
+            @Override
+            public boolean hasNext() throws FileUploadException, IOException {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public FileItemStream next() throws FileUploadException, IOException {
+                return new DecodingFileItemStream(iterator.next());
+            }
+        };
+    }
+
+    @Override
+    public List<FileItem> parseRequest(RequestContext ctx) throws FileUploadException {
+        // FileUploadBase#parseRequest does not accept decorated FileItemStream.
+        return FileItemParser.parse(this, ctx, null);
+    }
+
+    protected ContentDecoder getContentDecoder() {
+        return this.decoder;
+    }
+
+    private class DecodingFileItemStream implements FileItemStream {
+
+        private final FileItemStream stream;
+
+        DecodingFileItemStream(FileItemStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            final InputStream in = stream.openStream();
+            final String encoding = decoder.getPartEncoding(stream.getHeaders());
+            if (encoding == null) {
+                return in;
+            }
+            long limit = decoder.getMaxDecodedSize();
+            if (getFileSizeMax() >= 0 && (limit < 0 || getFileSizeMax() < limit)) {
+                limit = getFileSizeMax();
+            }
+            return decoder.decode(in, encoding, limit);
+        }
+
+        @Override
+        public String getContentType() {
+            return stream.getContentType();
+        }
+
+        @Override
+        public String getName() {
+            return stream.getName();
+        }
+
+        @Override
+        public String getFieldName() {
+            return stream.getFieldName();
+        }
+
+        @Override
+        public boolean isFormField() {
+            return stream.isFormField();
+        }
+
+        @Override
+        public FileItemHeaders getHeaders() {
+            return stream.getHeaders();
+        }
+
+        @Override
+        public void setHeaders(FileItemHeaders headers) {
+            stream.setHeaders(headers);
+        }
+    }
+}
@@ -14,17 +14,22 @@ public class DefaultFileUploadFactory implements FileUploadFactory<FileUpload> {
     private long fileSizeMax = -1;
     private String headerEncoding;
     private ProgressListener listener;
+    private ContentDecoder partDecoder;
 
     @Override
     public FileUpload createFileUpload() {
-        final FileUpload upload = new FileUpload();
+        final ContentDecoder decoder = getPartDecoder();
+        final FileUpload upload = decoder != null ? new DecodingFileUpload(decoder)
+                : new FileUpload();
         setUpFileUpload(upload);
         return upload;
     }
 
     @Override
     public FileUpload createFileUpload(FileItemFactory fileItemFactory) {
-        final FileUpload upload = new FileUpload(fileItemFactory);
+        final ContentDecoder decoder = getPartDecoder();
+        final FileUpload upload = decoder != null ? new DecodingFileUpload(fileItemFactory,
+                decoder) : new FileUpload(fileItemFactory);
         setUpFileUpload(upload);
         return upload;
     }
@@ -67,4 +72,16 @@ public class DefaultFileUploadFactory implements FileUploadFactory<FileUpload> {
     public void setListener(ProgressListener listener) {
         this.listener = listener;
     }
+
+    protected ContentDecoder getPartDecoder() {
+        return partDecoder;
+    }
+
+    /**
+     * 圧縮されたパートを展開する{@link ContentDecoder}を指定します。<br/>
+     * 指定した場合、{@link DecodingFileUpload}が生成されます。
+     */
+    public void setPartDecoder(ContentDecoder partDecoder) {
+        this.partDecoder = partDecoder;
+    }
 }
@@ -0,0 +1,84 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.analogweb.Multipart;
+import org.analogweb.util.Maps;
+
+/**
+ * ファイルパラメータの内容からダイジェストを算出する{@link PartHandler}です。<br/>
+ * ダイジェストはパラメータ名ごとに、出現順に保持されます。
+ * @author snowgoose
+ */
+public class DigestPartHandler extends FilePartHandler {
+
+    private final String algorithm;
+    private final Map<String, List<byte[]>> digests = Maps.newEmptyHashMap();
+
+    /**
+     * @param algorithm {@link MessageDigest}のアルゴリズム名(SHA-256など)
+     */
+    public DigestPartHandler(String algorithm) {
+        this.algorithm = algorithm;
+        // fail fast on unknown algorithm.
+        createDigest();
+    }
+
+    @Override
+    protected void handleFile(Multipart part, InputStream content) throws IOException {
+        final MessageDigest digest = createDigest();
+        transfer(part, content, new WritableByteChannel() {
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                // nop.
+            }
+
+            @Override
+            public int write(ByteBuffer src) {
+                final int length = src.remaining();
+                digest.update(src);
+                return length;
+            }
+        });
+        List<byte[]> values = this.digests.get(part.getName());
+        if (values == null) {
+            values = new ArrayList<byte[]>(1);
+            this.digests.put(part.getName(), values);
+        }
+        values.add(digest.digest());
+    }
+
+    /**
+     * 指定された名前のファイルパラメータのダイジェストを、出現順に取得します。
+     */
+    public List<byte[]> getDigests(String name) {
+        final List<byte[]> values = this.digests.get(name);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(this.algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.analogweb.acf;
+
+import org.analogweb.Multipart;
+
+/**
+ * 解析中に算出されたダイジェストを参照可能な{@link Multipart}です。<br/>
+ * ダイジェストは内容がメモリや一時ファイルに書き出される際に算出されるため、
+ * 内容を改めて読み込む必要はありません。
+ * @author snowgoose
+ * @see DigestingFileItemFactory
+ */
+public interface DigestedMultipart extends Multipart {
+
+    /**
+     * @param algorithm {@link java.security.MessageDigest}のアルゴリズム名
+     * @return ダイジェスト。算出されていない場合は{@code null}
+     */
+    byte[] getDigest(String algorithm);
+
+    /**
+     * @return CRC32チェックサム。算出されていない場合は{@code -1}
+     */
+    long getChecksum();
+}
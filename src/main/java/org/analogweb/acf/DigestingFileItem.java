@@ -0,0 +1,145 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemHeaders;
+
+/**
+ * 書き込まれた内容からダイジェストを算出し、他の{@link FileItem}に委譲する
+ * {@link FileItem}です。
+ * @author snowgoose
+ */
+class DigestingFileItem implements FileItem {
+
+    private static final long serialVersionUID = -2286315409342712040L;
+    private final FileItem delegate;
+    private final transient PartDigester digester;
+
+    DigestingFileItem(FileItem delegate, PartDigester digester) {
+        this.delegate = delegate;
+        this.digester = digester;
+    }
+
+    FileItem getDelegate() {
+        return this.delegate;
+    }
+
+    PartDigester getDigester() {
+        return this.digester;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new FilterOutputStream(delegate.getOutputStream()) {
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                digester.update(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                digester.update(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                digester.complete();
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return delegate.getInputStream();
+    }
+
+    @Override
+    public String getContentType() {
+        return delegate.getContentType();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return delegate.isInMemory();
+    }
+
+    @Override
+    public long getSize() {
+        return delegate.getSize();
+    }
+
+    @Override
+    public byte[] get() {
+        return delegate.get();
+    }
+
+    @Override
+    public String getString(String encoding) throws UnsupportedEncodingException {
+        return delegate.getString(encoding);
+    }
+
+    @Override
+    public String getString() {
+        return delegate.getString();
+    }
+
+    @Override
+    public void write(File file) throws Exception {
+        delegate.write(file);
+    }
+
+    @Override
+    public void delete() {
+        delegate.delete();
+    }
+
+    @Override
+    public String getFieldName() {
+        return delegate.getFieldName();
+    }
+
+    @Override
+    public void setFieldName(String name) {
+        delegate.setFieldName(name);
+    }
+
+    @Override
+    public boolean isFormField() {
+        return delegate.isFormField();
+    }
+
+    @Override
+    public void setFormField(boolean state) {
+        delegate.setFormField(state);
+    }
+
+    @Override
+    public FileItemHeaders getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public void setHeaders(FileItemHeaders headers) {
+        delegate.setHeaders(headers);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
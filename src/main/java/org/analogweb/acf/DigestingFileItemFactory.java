@@ -0,0 +1,64 @@
+package org.analogweb.acf;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+
+/**
+ * 他の{@link FileItemFactory}が生成する{@link FileItem}への書き込みの過程で、
+ * ダイジェストを算出する{@link FileItemFactory}です。<br/>
+ * 算出されたダイジェストは{@link DigestedMultipart}として参照できます。
+ * デフォルトではファイルパラメータのみが対象です。
+ * @author snowgoose
+ */
+public class DigestingFileItemFactory implements FileItemFactory {
+
+    private final FileItemFactory delegate;
+    private final String[] algorithms;
+    private boolean digestFormFields;
+
+    /**
+     * @param delegate {@link FileItem}を生成する{@link FileItemFactory}
+     * @param algorithms {@link java.security.MessageDigest}のアルゴリズム名
+     * @throws IllegalArgumentException サポートされていないアルゴリズムが指定された場合
+     */
+    public DigestingFileItemFactory(FileItemFactory delegate, String... algorithms) {
+        this.delegate = delegate;
+        this.algorithms = algorithms.clone();
+        // fail fast on unknown algorithm.
+        new PartDigester(algorithms);
+    }
+
+    @Override
+    public FileItem createItem(String fieldName, String contentType, boolean isFormField,
+            String fileName) {
+        final FileItem item = delegate.createItem(fieldName, contentType, isFormField, fileName);
+        if (isFormField && digestFormFields == false) {
+            return item;
+        }
+        return new DigestingFileItem(item, new PartDigester(algorithms));
+    }
+
+    /**
+     * このインスタンスと同じダイジェストを算出する{@link DigestingFileItemFactory}を
+     * 生成します。
+     * @param delegate {@link FileItem}を生成する{@link FileItemFactory}
+     * @return {@link DigestingFileItemFactory}
+     */
+    public DigestingFileItemFactory derive(FileItemFactory delegate) {
+        final DigestingFileItemFactory derived = new DigestingFileItemFactory(delegate,
+                this.algorithms);
+        derived.setDigestFormFields(this.digestFormFields);
+        return derived;
+    }
+
+    public FileItemFactory getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * フォームフィールドのダイジェストも算出するかを指定します。
+     */
+    public void setDigestFormFields(boolean digestFormFields) {
+        this.digestFormFields = digestFormFields;
+    }
+}
@@ -0,0 +1,95 @@
+package org.analogweb.acf;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定長のダイレクトバッファ(チャンク)を再利用するプールです。<br/>
+ * チャンクはスラブと呼ばれる大きなダイレクトバッファから切り出され、
+ * Javaヒープを使用しません。プールが枯渇した場合、{@link #acquire()}は{@code null}を
+ * 返却します。
+ * @author snowgoose
+ */
+public class DirectBufferPool {
+
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    public static final int DEFAULT_CHUNKS_PER_SLAB = 64;
+    private final int chunkSize;
+    private final int chunksPerSlab;
+    private final int maxChunks;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    /**
+     * @param maxBytes プールが確保するダイレクトバッファの合計バイト数の上限
+     */
+    public DirectBufferPool(long maxBytes) {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_PER_SLAB, maxBytes);
+    }
+
+    public DirectBufferPool(int chunkSize, int chunksPerSlab, long maxBytes) {
+        this.chunkSize = chunkSize;
+        this.chunksPerSlab = chunksPerSlab;
+        this.maxChunks = (int) Math.min(Integer.MAX_VALUE, maxBytes / chunkSize);
+    }
+
+    /**
+     * チャンクを取得します。<br/>
+     * 取得したチャンクは書き込み可能な状態(position=0、limit=capacity)です。
+     * @return チャンク。プールが枯渇している場合は{@code null}
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer chunk = free.poll();
+        if (chunk == null) {
+            allocateSlab();
+            chunk = free.poll();
+        }
+        if (chunk != null) {
+            chunk.clear();
+        }
+        return chunk;
+    }
+
+    /**
+     * チャンクをプールに返却します。
+     * @param chunk {@link #acquire()}により取得したチャンク
+     */
+    public void release(ByteBuffer chunk) {
+        free.offer(chunk);
+    }
+
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * 現在プールに保持されている未使用のチャンク数を返却します。
+     */
+    public int getAvailableChunks() {
+        return free.size();
+    }
+
+    public int getAllocatedChunks() {
+        return allocated.get();
+    }
+
+    private void allocateSlab() {
+        int current;
+        int count;
+        do {
+            current = allocated.get();
+            count = Math.min(chunksPerSlab, maxChunks - current);
+            if (count <= 0) {
+                return;
+            }
+        } while (allocated.compareAndSet(current, current + count) == false);
+        final ByteBuffer slab = ByteBuffer.allocateDirect(count * chunkSize);
+        for (int i = 0; i < count; i++) {
+            slab.limit((i + 1) * chunkSize);
+            slab.position(i * chunkSize);
+            free.offer(slab.slice());
+        }
+    }
+}
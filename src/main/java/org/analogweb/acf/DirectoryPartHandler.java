@@ -0,0 +1,58 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.analogweb.Multipart;
+import org.analogweb.util.Maps;
+
+/**
+ * ファイルパラメータの内容を、指定されたディレクトリへ一意な名前のファイルとして
+ * 書き出す{@link PartHandler}です。<br/>
+ * 書き出されたファイルはこのハンドラでは削除されません。
+ * @author snowgoose
+ */
+public class DirectoryPartHandler extends FilePartHandler {
+
+    private final File directory;
+    private final Map<String, List<File>> stored = Maps.newEmptyHashMap();
+
+    public DirectoryPartHandler(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    protected void handleFile(Multipart part, InputStream content) throws IOException {
+        final File file = new File(this.directory, UUID.randomUUID().toString());
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            transfer(part, content, out.getChannel());
+        } finally {
+            out.close();
+        }
+        List<File> files = this.stored.get(part.getName());
+        if (files == null) {
+            files = new ArrayList<File>(1);
+            this.stored.put(part.getName(), files);
+        }
+        files.add(file);
+    }
+
+    /**
+     * 指定された名前のファイルパラメータを書き出したファイルを、出現順に取得します。
+     */
+    public List<File> getFiles(String name) {
+        final List<File> files = this.stored.get(name);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(files);
+    }
+}
@@ -0,0 +1,21 @@
+package org.analogweb.acf;
+
+/**
+ * {@link TrackedDiskFileItemFactory}によるパートの生成に関与するデコレータです。<br/>
+ * デコレータは{@link TrackedDiskFileItemFactory#addDecorator(DiskFileItemDecorator)}
+ * により追加された順に適用されるため、複数の機能を組み合わせることができます。
+ * @author snowgoose
+ * @see MemoryBudgetDecorator
+ * @see ShardingDecorator
+ * @see RecyclingDecorator
+ */
+public interface DiskFileItemDecorator {
+
+    /**
+     * パートの生成前に呼び出されます。
+     * @param spec 生成するパートの設定
+     * @return パートへの書き込みと解放を受け取る{@link DiskFileItemListener}。
+     * 不要な場合は{@code null}
+     */
+    DiskFileItemListener decorate(DiskFileItemSpec spec);
+}
@@ -0,0 +1,27 @@
+package org.analogweb.acf;
+
+import java.io.File;
+
+/**
+ * {@link TrackedDiskFileItemFactory}が生成したパートへの書き込みの完了と、
+ * パートの解放を受け取るリスナです。<br/>
+ * 解放はパートの{@link org.apache.commons.fileupload.FileItem#delete()}、または
+ * 削除されずに回収されたパートの検出時に一度だけ通知されます。回収を検出するため、
+ * 実装はパートへの参照を保持してはなりません。
+ * @author snowgoose
+ */
+public interface DiskFileItemListener {
+
+    /**
+     * パートへの書き込みが完了した際に一度だけ呼び出されます。
+     * @param size パートのバイト数
+     * @param inMemory パートがメモリ上に保持されている場合は{@code true}
+     */
+    void written(long size, boolean inMemory);
+
+    /**
+     * パートが解放された際に呼び出されます。
+     * @param tempFile パートの一時ファイル。存在しない場合があります
+     */
+    void released(File tempFile);
+}
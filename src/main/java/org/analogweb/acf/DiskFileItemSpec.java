@@ -0,0 +1,80 @@
+package org.analogweb.acf;
+
+import java.io.File;
+
+/**
+ * {@link TrackedDiskFileItemFactory}が生成する{@link org.apache.commons.fileupload.disk.DiskFileItem}
+ * の設定です。<br/>
+ * {@link DiskFileItemDecorator}により、閾値や一時ファイルを書き出すディレクトリを変更できます。
+ * @author snowgoose
+ */
+public final class DiskFileItemSpec {
+
+    private final String fieldName;
+    private final String contentType;
+    private final boolean formField;
+    private final String fileName;
+    private int sizeThreshold;
+    private File repository;
+    private File tempFile;
+
+    DiskFileItemSpec(String fieldName, String contentType, boolean formField, String fileName,
+            int sizeThreshold, File repository) {
+        this.fieldName = fieldName;
+        this.contentType = contentType;
+        this.formField = formField;
+        this.fileName = fileName;
+        this.sizeThreshold = sizeThreshold;
+        this.repository = repository;
+    }
+
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    public boolean isFormField() {
+        return this.formField;
+    }
+
+    public String getFileName() {
+        return this.fileName;
+    }
+
+    public int getSizeThreshold() {
+        return this.sizeThreshold;
+    }
+
+    /**
+     * メモリ上に保持するバイト数の閾値を指定します。
+     */
+    public void setSizeThreshold(int sizeThreshold) {
+        this.sizeThreshold = sizeThreshold;
+    }
+
+    public File getRepository() {
+        return this.repository;
+    }
+
+    /**
+     * 一時ファイルを書き出すディレクトリを指定します。
+     */
+    public void setRepository(File repository) {
+        this.repository = repository;
+    }
+
+    public File getTempFile() {
+        return this.tempFile;
+    }
+
+    /**
+     * 使用する一時ファイルを指定します。<br/>
+     * 指定しない場合は、{@link #getRepository()}に新たな一時ファイルが作成されます。
+     */
+    public void setTempFile(File tempFile) {
+        this.tempFile = tempFile;
+    }
+}
@@ -0,0 +1,125 @@
+package org.analogweb.acf;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.analogweb.Multipart;
+
+/**
+ * フォームフィールドの内容を文字列に変換します。<br/>
+ * 変換は{@link Charset}ごとにキャッシュされ、別名や大文字小文字の異なるエンコーディング名は
+ * 同じ{@link Charset}として扱われます。{@link CharsetDecoder}は
+ * スレッドごとに再利用されます。ASCIIと互換性のある文字セットでは、ASCII文字のみで
+ * 構成される値を{@link CharsetDecoder}を使用せずに変換します。
+ * @author snowgoose
+ */
+final class FieldDecoder {
+
+    private static final ConcurrentMap<Charset, FieldDecoder> DECODERS = new ConcurrentHashMap<Charset, FieldDecoder>();
+    // a plain ThreadLocal holding JDK classes only, so pooled threads never pin this classloader.
+    private static final ThreadLocal<Map<Charset, CharsetDecoder>> THREAD_DECODERS = new ThreadLocal<Map<Charset, CharsetDecoder>>();
+    private final Charset charset;
+    private final boolean asciiCompatible;
+
+    private FieldDecoder(Charset charset) {
+        this.charset = charset;
+        this.asciiCompatible = isAsciiCompatible(charset);
+    }
+
+    /**
+     * @param encoding エンコーディング名
+     * @return {@link FieldDecoder}
+     * @throws FileUploadFailureException エンコーディングがサポートされていない場合
+     */
+    static FieldDecoder forEncoding(String encoding) {
+        final Charset charset;
+        try {
+            // keyed by the canonical charset, so aliases never add entries.
+            charset = Charset.forName(encoding);
+        } catch (final IllegalCharsetNameException e) {
+            throw new FileUploadFailureException(new UnsupportedEncodingException(encoding));
+        } catch (final UnsupportedCharsetException e) {
+            throw new FileUploadFailureException(new UnsupportedEncodingException(encoding));
+        }
+        FieldDecoder decoder = DECODERS.get(charset);
+        if (decoder == null) {
+            decoder = new FieldDecoder(charset);
+            final FieldDecoder existing = DECODERS.putIfAbsent(charset, decoder);
+            if (existing != null) {
+                decoder = existing;
+            }
+        }
+        return decoder;
+    }
+
+    String decode(Multipart part) {
+        if (part instanceof BufferedMultipart) {
+            return decode(((BufferedMultipart) part).asReadOnlyBuffer());
+        }
+        return decode(ByteBuffer.wrap(part.getBytes()));
+    }
+
+    String decode(ByteBuffer content) {
+        final int position = content.position();
+        final int length = content.remaining();
+        if (asciiCompatible) {
+            final char[] chars = new char[length];
+            int i = 0;
+            for (byte b; i < length && (b = content.get(position + i)) >= 0; i++) {
+                chars[i] = (char) b;
+            }
+            if (i == length) {
+                return new String(chars);
+            }
+        }
+        try {
+            return getDecoder().decode(content.duplicate()).toString();
+        } catch (final CharacterCodingException e) {
+            // never happens with CodingErrorAction.REPLACE.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CharsetDecoder getDecoder() {
+        Map<Charset, CharsetDecoder> decoders = THREAD_DECODERS.get();
+        if (decoders == null) {
+            decoders = new HashMap<Charset, CharsetDecoder>();
+            THREAD_DECODERS.set(decoders);
+        }
+        CharsetDecoder decoder = decoders.get(charset);
+        if (decoder == null) {
+            decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoders.put(charset, decoder);
+        }
+        return decoder;
+    }
+
+    Charset getCharset() {
+        return this.charset;
+    }
+
+    boolean isAsciiCompatible() {
+        return this.asciiCompatible;
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        final byte[] ascii = new byte[128];
+        final char[] expected = new char[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+            expected[i] = (char) i;
+        }
+        return new String(expected).equals(new String(ascii, charset));
+    }
+}
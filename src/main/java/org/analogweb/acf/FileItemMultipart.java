@@ -3,22 +3,34 @@ package org.analogweb.acf;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
-import org.analogweb.Multipart;
 import org.analogweb.core.ApplicationRuntimeException;
-import org.analogweb.util.IOUtils;
+import org.analogweb.util.ApplicationPropertiesHolder;
 import org.analogweb.util.logging.Log;
 import org.analogweb.util.logging.Logs;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.disk.DiskFileItem;
 
-public class FileItemMultipart implements Multipart {
+public class FileItemMultipart implements BufferedMultipart, TransferableMultipart,
+        MappableMultipart, DigestedMultipart {
 
     private static final Log log = Logs.getLog(FileItemMultipart.class);
     private final FileItem item;
+    // the item actually holding contents.
+    private final FileItem content;
+    private File temporaly;
 
     public FileItemMultipart(FileItem item) {
         this.item = item;
+        this.content = item instanceof DigestingFileItem ? ((DigestingFileItem) item)
+                .getDelegate() : item;
     }
 
     public boolean isMultipartFile() {
@@ -52,28 +64,182 @@ public class FileItemMultipart implements Multipart {
         return item.get();
     }
 
+    public long getSize() {
+        return item.getSize();
+    }
+
+    /**
+     * このパートの内容を読み取り専用の{@link ByteBuffer}として取得します。<br/>
+     * メモリ上に保持されている{@link DiskFileItem}の場合、内容は複製されません。
+     * 一時ファイルに書き出されている場合は、ファイルをマップして参照します。
+     * @return 読み取り専用の{@link ByteBuffer}
+     */
+    @Override
+    public ByteBuffer asReadOnlyBuffer() {
+        if (isMappable() && item.getSize() <= Integer.MAX_VALUE) {
+            return map()[0];
+        }
+        return ByteBuffer.wrap(item.get()).asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean isMappable() {
+        return getStoreLocation() != null;
+    }
+
+    @Override
+    public MappedByteBuffer[] map() {
+        return map(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public MappedByteBuffer[] map(int chunkSize) {
+        final File stored = getStoreLocation();
+        if (stored == null) {
+            throw new IllegalStateException("contents of [" + getName()
+                    + "] are not stored in file.");
+        }
+        try {
+            return Transfers.map(stored.toPath(), chunkSize);
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+    }
+
+    @Override
+    public long transferTo(Path target) {
+        try {
+            final File stored = getStoreLocation();
+            if (stored != null) {
+                Files.move(stored.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+                return Files.size(target);
+            }
+            final FileChannel channel = Transfers.openTarget(target);
+            try {
+                return transferInMemory(channel);
+            } finally {
+                channel.close();
+            }
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel channel) {
+        try {
+            final File stored = getStoreLocation();
+            if (stored != null) {
+                return Transfers.transfer(stored.toPath(), channel);
+            }
+            return transferInMemory(channel);
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+    }
+
+    private long transferInMemory(WritableByteChannel channel) throws IOException {
+        if (content instanceof PooledFileItem) {
+            return ((PooledFileItem) content).writeChunks(channel);
+        }
+        return Transfers.write(ByteBuffer.wrap(item.get()), channel);
+    }
+
+    private File getStoreLocation() {
+        if (item.isInMemory()) {
+            return null;
+        }
+        if (content instanceof DiskFileItem) {
+            return ((DiskFileItem) content).getStoreLocation();
+        } else if (content instanceof PooledFileItem) {
+            return ((PooledFileItem) content).getStoreLocation();
+        }
+        return null;
+    }
+
     @Override
     public String getContentType() {
         return item.getContentType();
     }
 
+    /**
+     * {@link DigestingFileItemFactory}により算出されたダイジェストを取得します。
+     */
+    @Override
+    public byte[] getDigest(String algorithm) {
+        if (item instanceof DigestingFileItem) {
+            return ((DigestingFileItem) item).getDigester().getDigest(algorithm);
+        }
+        return null;
+    }
+
+    @Override
+    public long getChecksum() {
+        if (item instanceof DigestingFileItem) {
+            return ((DigestingFileItem) item).getDigester().getChecksum();
+        }
+        return -1;
+    }
+
+    /**
+     * このパートの内容を保持する一時ファイルを取得します。<br/>
+     * メモリ上に保持されている場合は、内容をパートのリポジトリ、またはアプリケーションの
+     * 一時ディレクトリに新たな一時ファイルとして書き出します。
+     * このファイルは{@link #delete()}により削除されます。
+     * @return 一時ファイル。取得できない場合は{@code null}
+     */
     public File getAsTemporalyFile() {
-        if (item instanceof DiskFileItem) {
-            final DiskFileItem d = ((DiskFileItem) item);
-            final File f = d.getStoreLocation();
+        if (content instanceof DiskFileItem || content instanceof PooledFileItem) {
+            final File f = getStoreLocation();
             if (f != null) {
                 return f;
-            } else {
+            }
+            if (this.temporaly != null) {
+                return this.temporaly;
+            }
+            try {
+                final File temp = File.createTempFile(SpoolSweeper.FILE_PREFIX,
+                        SpoolSweeper.FILE_SUFFIX, getTemporalyDirectory());
+                final FileChannel channel = Transfers.openTarget(temp.toPath());
                 try {
-                    // Force output to file.
-                    IOUtils.copy(d.getInputStream(), d.getOutputStream());
-                    return d.getStoreLocation();
-                } catch (IOException e) {
-                    log.log(CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RESOURCE, "WACF000002",
-                            e, d.getName());
+                    transferInMemory(channel);
+                } finally {
+                    channel.close();
                 }
+                this.temporaly = temp;
+                return temp;
+            } catch (IOException e) {
+                log.log(CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RESOURCE, "WACF000002",
+                        e, item.getName());
             }
         }
         return null;
     }
+
+    private File getTemporalyDirectory() {
+        if (content instanceof PooledFileItem) {
+            final File repository = ((PooledFileItem) content).getRepository();
+            if (repository != null) {
+                return repository;
+            }
+        }
+        try {
+            return ApplicationPropertiesHolder.current().getTempDir();
+        } catch (final IllegalStateException e) {
+            // application is not configured. use java.io.tmpdir.
+            return null;
+        }
+    }
+
+    /**
+     * このパートの内容と、{@link #getAsTemporalyFile()}により生成された一時ファイルを
+     * 削除します。
+     */
+    public void delete() {
+        item.delete();
+        if (this.temporaly != null) {
+            this.temporaly.delete();
+            this.temporaly = null;
+        }
+    }
 }
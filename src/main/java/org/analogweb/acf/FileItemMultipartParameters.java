@@ -2,15 +2,12 @@ package org.analogweb.acf;
 
 import static org.analogweb.acf.CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RESOURCE;
 
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import org.analogweb.util.ArrayUtils;
-import org.analogweb.util.Maps;
 import org.analogweb.util.logging.Log;
 import org.analogweb.util.logging.Logs;
 import org.apache.commons.fileupload.FileItem;
@@ -18,13 +15,16 @@ import org.apache.commons.fileupload.FileItem;
 /**
  * @author snowgooseyk
  */
-public class FileItemMultipartParameters implements MultipartParameters<FileItemMultipart> {
+public class FileItemMultipartParameters extends
+        AbstractMultipartParameters<FileItemMultipart> {
 
     private static final Log log = Logs.getLog(FileItemMultipartParameters.class);
     private final List<FileItemMultipart> multiparts;
     private final String encoding;
-    private Map<String, String[]> params;
-    private Map<String, FileItemMultipart[]> files;
+    private MultipartIndex<FileItemMultipart> params;
+    private MultipartIndex<FileItemMultipart> files;
+    private Map<String, String[]> paramMap;
+    private Map<String, FileItemMultipart[]> fileMap;
 
     public FileItemMultipartParameters(List<FileItem> items, String encoding) {
         this.multiparts = toMultiparts(items);
@@ -32,7 +32,8 @@ public class FileItemMultipartParameters implements MultipartParameters<FileItem
     }
 
     protected List<FileItemMultipart> toMultiparts(List<FileItem> items) {
-        final List<FileItemMultipart> multiparts = new LinkedList<FileItemMultipart>();
+        final List<FileItemMultipart> multiparts = new ArrayList<FileItemMultipart>(
+                items.size());
         for (final FileItem item : items) {
             multiparts.add(new FileItemMultipart(item));
         }
@@ -44,9 +45,17 @@ public class FileItemMultipartParameters implements MultipartParameters<FileItem
         return multiparts.iterator();
     }
 
+    @Override
+    public void dispose() {
+        for (final FileItemMultipart part : this.multiparts) {
+            part.delete();
+        }
+    }
+
     @Override
     public String[] getParameter(String name) {
-        return getParameterMap().get(name);
+        extractParameters();
+        return this.params.getStrings(name, encoding);
     }
 
     @Override
@@ -56,13 +65,17 @@ public class FileItemMultipartParameters implements MultipartParameters<FileItem
 
     @Override
     public Map<String, String[]> getParameterMap() {
-        extractParameters();
-        return this.params;
+        if (this.paramMap == null) {
+            extractParameters();
+            this.paramMap = this.params.asStringMap(encoding);
+        }
+        return this.paramMap;
     }
 
     @Override
     public FileItemMultipart[] getMultiparts(String name) {
-        return asMap().get(name);
+        extractParameters();
+        return this.files.get(name);
     }
 
     @Override
@@ -71,39 +84,31 @@ public class FileItemMultipartParameters implements MultipartParameters<FileItem
     }
 
     public Map<String, FileItemMultipart[]> asMap() {
-        extractParameters();
-        return this.files;
+        if (this.fileMap == null) {
+            extractParameters();
+            this.fileMap = this.files.asMap();
+        }
+        return this.fileMap;
     }
 
     private void extractParameters() {
-        if (this.params != null || this.files != null) {
+        if (this.params != null) {
             return;
         }
-        this.params = Maps.newEmptyHashMap();
-        this.files = Maps.newEmptyHashMap();
+        final MultipartIndex<FileItemMultipart> params = new MultipartIndex<FileItemMultipart>(
+                FileItemMultipart.class);
+        final MultipartIndex<FileItemMultipart> files = new MultipartIndex<FileItemMultipart>(
+                FileItemMultipart.class);
         for (final FileItemMultipart param : this) {
-            final String paramName = param.getName();
             if (param.isMultipartFile()) {
-                log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000002", new Object[] { paramName });
-                if (this.files.containsKey(paramName) == false) {
-                    this.files.put(paramName, new FileItemMultipart[0]);
-                }
-                final FileItemMultipart[] fileArray = this.files.get(paramName);
-                this.files
-                .put(paramName, ArrayUtils.add(FileItemMultipart.class, param, fileArray));
+                log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000002", new Object[] { param.getName() });
+                files.add(param);
             } else {
-                log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000001", new Object[] { paramName });
-                if (this.params.containsKey(paramName) == false) {
-                    this.params.put(paramName, new String[0]);
-                }
-                final String[] array = this.params.get(paramName);
-                try {
-                    this.params.put(paramName, ArrayUtils.add(String.class,
-                            new String(param.getBytes(), encoding), array));
-                } catch (final UnsupportedEncodingException e) {
-                    throw new FileUploadFailureException(e);
-                }
+                log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000001", new Object[] { param.getName() });
+                params.add(param);
             }
         }
+        this.files = files;
+        this.params = params;
     }
 }
@@ -0,0 +1,105 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.RequestContext;
+import org.apache.commons.fileupload.util.Streams;
+
+/**
+ * {@link FileUploadBase#getItemIterator(RequestContext)}から取得したパートを
+ * {@link FileItem}に書き出します。<br/>
+ * {@link FileUploadBase#parseRequest(RequestContext)}と同様に動作しますが、
+ * 装飾された{@link FileItemIterator}を扱うことができます。
+ * @author snowgoose
+ */
+final class FileItemParser {
+
+    private FileItemParser() {
+        // nop.
+    }
+
+    /**
+     * パートが{@link FileItem}に書き出されるたびに通知を受けます。
+     */
+    interface Callback {
+
+        /**
+         * @param item 書き出しが完了した{@link FileItem}
+         * @throws FileUploadException 解析を中断する場合
+         */
+        void parsed(FileItem item) throws FileUploadException;
+    }
+
+    /**
+     * @param fileUpload {@link FileUploadBase}
+     * @param ctx {@link RequestContext}
+     * @param limiter パートを検査する{@link PartLimiter}。検査しない場合は{@code null}
+     * @return {@link FileItem}のリスト
+     */
+    static List<FileItem> parse(FileUploadBase fileUpload, RequestContext ctx,
+            PartLimiter limiter) throws FileUploadException {
+        return parse(fileUpload, ctx, limiter, null);
+    }
+
+    /**
+     * @param callback パートごとに通知を受ける{@link Callback}。不要な場合は{@code null}
+     */
+    static List<FileItem> parse(FileUploadBase fileUpload, RequestContext ctx,
+            PartLimiter limiter, Callback callback) throws FileUploadException {
+        final List<FileItem> items = new ArrayList<FileItem>();
+        boolean successful = false;
+        try {
+            FileItemIterator iterator = fileUpload.getItemIterator(ctx);
+            if (limiter != null) {
+                iterator = limiter.limit(iterator);
+            }
+            final FileItemFactory factory = fileUpload.getFileItemFactory();
+            if (factory == null) {
+                throw new NullPointerException("No FileItemFactory has been set.");
+            }
+            while (iterator.hasNext()) {
+                final FileItemStream item = iterator.next();
+                final FileItem fileItem = factory.createItem(item.getFieldName(),
+                        item.getContentType(), item.isFormField(), item.getName());
+                items.add(fileItem);
+                try {
+                    Streams.copy(item.openStream(), fileItem.getOutputStream(), true);
+                } catch (final FileUploadBase.FileUploadIOException e) {
+                    throw (FileUploadException) e.getCause();
+                } catch (final IOException e) {
+                    throw new FileUploadBase.IOFileUploadException(
+                            "Processing of multipart/form-data request failed. " + e.getMessage(),
+                            e);
+                }
+                fileItem.setHeaders(item.getHeaders());
+                if (callback != null) {
+                    callback.parsed(fileItem);
+                }
+            }
+            successful = true;
+            return items;
+        } catch (final FileUploadBase.FileUploadIOException e) {
+            throw (FileUploadException) e.getCause();
+        } catch (final IOException e) {
+            throw new FileUploadException(e.getMessage(), e);
+        } finally {
+            if (successful == false) {
+                for (final FileItem fileItem : items) {
+                    try {
+                        fileItem.delete();
+                    } catch (final RuntimeException e) {
+                        // ignore it.
+                    }
+                }
+            }
+        }
+    }
+}
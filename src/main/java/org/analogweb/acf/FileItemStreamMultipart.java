@@ -2,22 +2,34 @@ package org.analogweb.acf;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.Arrays;
 
 import org.analogweb.Multipart;
 import org.analogweb.util.IOUtils;
 import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase.FileSizeLimitExceededException;
 
 /**
  * 内部的に{@link FileItemStream}を使用する{@link Multipart}の実装です。<br/>
+ * 内容が展開済みの場合、{@link #getInputStream()}及び{@link #asReadOnlyBuffer()}は
+ * 展開された内容を複製せずに参照します。
  * @author snowgoose
  */
-public class FileItemStreamMultipart implements Multipart {
+public class FileItemStreamMultipart implements BufferedMultipart, TransferableMultipart,
+        DigestedMultipart {
 
     private final FileItemStream item;
     private byte[] extracted;
+    private boolean opened;
+    private boolean released;
+    private PartDigester digester;
 
     public FileItemStreamMultipart(FileItemStream item) {
         this.item = item;
@@ -39,11 +51,20 @@ public class FileItemStreamMultipart implements Multipart {
 
     @Override
     public InputStream getInputStream() {
+        if (this.released) {
+            throw new FileUploadFailureException(new IOException(String.format(
+                    "parameter [%s] has already been consumed", getName())));
+        }
         if (this.extracted != null) {
-            return new ByteArrayInputStream(Arrays.copyOf(this.extracted, this.extracted.length));
+            return new ByteArrayInputStream(this.extracted);
         }
         try {
-            return this.item.openStream();
+            this.opened = true;
+            final InputStream in = this.item.openStream();
+            if (this.digester == null || this.digester.isCompleted()) {
+                return in;
+            }
+            return new DigestingInputStream(in, this.digester);
         } catch (final IOException e) {
             throw new FileUploadFailureException(e);
         }
@@ -59,11 +80,80 @@ public class FileItemStreamMultipart implements Multipart {
         return out.toByteArray();
     }
 
+    /**
+     * このパートの内容を読み取り専用の{@link ByteBuffer}として取得します。<br/>
+     * 内容が展開されていない場合は、展開した上で参照します。
+     * @return 読み取り専用の{@link ByteBuffer}
+     */
+    @Override
+    public ByteBuffer asReadOnlyBuffer() {
+        if (this.extracted == null) {
+            extract();
+        }
+        return ByteBuffer.wrap(this.extracted).asReadOnlyBuffer();
+    }
+
+    /**
+     * このパートの内容を指定されたファイルに書き出します。<br/>
+     * 内容が展開されていない場合、ストリームから直接書き出します。
+     */
+    @Override
+    public long transferTo(Path target) {
+        try {
+            final FileChannel channel = Transfers.openTarget(target);
+            try {
+                return transfer(channel);
+            } finally {
+                channel.close();
+            }
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel channel) {
+        try {
+            return transfer(channel);
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+    }
+
+    private long transfer(WritableByteChannel channel) throws IOException {
+        if (this.extracted != null) {
+            return Transfers.write(ByteBuffer.wrap(this.extracted), channel);
+        }
+        final InputStream in = getInputStream();
+        try {
+            return Transfers.copy(in, channel);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
     @Override
     public String getContentType() {
         return this.item.getContentType();
     }
 
+    /**
+     * 内容を最後まで読み込んだ時点で算出されたダイジェストを取得します。
+     */
+    @Override
+    public byte[] getDigest(String algorithm) {
+        return this.digester == null ? null : this.digester.getDigest(algorithm);
+    }
+
+    @Override
+    public long getChecksum() {
+        return this.digester == null ? -1 : this.digester.getChecksum();
+    }
+
+    void setDigester(PartDigester digester) {
+        this.digester = digester;
+    }
+
     /**
      * このパラメータの内容(アップロードされたファイル)を内部的に展開します。<br/>
      * 実行することによって、何度でもストリームを読み込むことが可能となりますが、
@@ -74,4 +164,106 @@ public class FileItemStreamMultipart implements Multipart {
     void extract() {
         this.extracted = getBytes();
     }
+
+    /**
+     * このパラメータの内容を、最大{@code limit}バイトまで内部的に展開します。
+     * @param limit 展開する最大バイト数。{@code -1}の場合は無制限
+     * @throws FileUploadFailureException 内容が{@code limit}を超える場合
+     */
+    void extract(long limit) {
+        if (limit < 0) {
+            extract();
+            return;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final InputStream in = getInputStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > limit) {
+                    throw new FileUploadFailureException(new FileSizeLimitExceededException(
+                            String.format("parameter [%s] exceeds extraction limit (%s)",
+                                    getName(), limit), total, limit));
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        this.extracted = out.toByteArray();
+    }
+
+    /**
+     * 展開された内容への参照を破棄します。<br/>
+     * 以降、内容を参照すると{@link FileUploadFailureException}がスローされます。
+     */
+    void release() {
+        this.extracted = null;
+        this.opened = true;
+        this.released = true;
+    }
+
+    /**
+     * このパラメータの内容がまだ読み出されておらず、展開可能な場合に{@code true}を返却します。
+     */
+    boolean isExtractable() {
+        return this.extracted == null && this.opened == false;
+    }
+
+    private static final class DigestingInputStream extends FilterInputStream {
+
+        private final PartDigester digester;
+
+        DigestingInputStream(InputStream in, PartDigester digester) {
+            super(in);
+            this.digester = digester;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b == -1) {
+                digester.complete();
+            } else {
+                digester.update(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = in.read(b, off, len);
+            if (read == -1) {
+                digester.complete();
+            } else if (read > 0) {
+                digester.update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must be digested too.
+            final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                final int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
@@ -3,13 +3,14 @@ package org.analogweb.acf;
 import static org.analogweb.acf.CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RESOURCE;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
-import org.analogweb.util.ArrayUtils;
-import org.analogweb.util.Maps;
+import org.analogweb.Multipart;
 import org.analogweb.util.logging.Log;
 import org.analogweb.util.logging.Logs;
 import org.apache.commons.fileupload.FileItemIterator;
@@ -20,46 +21,60 @@ import org.apache.commons.fileupload.FileUploadException;
  * {@link FileItemIterator}を使用して、逐次的に{@link org.analogweb.Multipart}を展開する
  * {@link MultipartParameters}の実装です。<br/>
  * {@link #iterator()}を使用することで、少ない消費リソースで{@link org.analogweb.Multipart}
- * を読み出すことが可能です。
+ * を読み出すことが可能です。<br/>
+ * パラメータの参照時は、リクエストボディを必要な位置までのみ読み進め、読み出したパートを
+ * 索引として保持します。{@link #getFirstParameter(String)}及び
+ * {@link #getFirstMultipart(String)}は、該当するパートが見つかった時点で読み込みを終了します。
  * @author snowgoose
  */
-public class FileItemStreamMultipartParameters implements
-MultipartParameters<FileItemStreamMultipart> {
+public class FileItemStreamMultipartParameters extends
+        AbstractMultipartParameters<FileItemStreamMultipart> {
 
+    public static final long DEFAULT_MAX_EXTRACT_SIZE = 10 * 1024 * 1024;
     private static final Log log = Logs.getLog(FileItemStreamMultipartParameters.class);
     private final FileItemIterator iterator;
     private final String resolvedEncoding;
+    private final List<FileItemStreamMultipart> indexed = new ArrayList<FileItemStreamMultipart>();
+    private final MultipartIndex<FileItemStreamMultipart> params = new MultipartIndex<FileItemStreamMultipart>(
+            FileItemStreamMultipart.class);
+    private final MultipartIndex<FileItemStreamMultipart> files = new MultipartIndex<FileItemStreamMultipart>(
+            FileItemStreamMultipart.class);
+    private FileItemStreamMultipart current;
+    private boolean exhausted;
+    private boolean spoolPassedMultiparts;
+    private long maxExtractSize = DEFAULT_MAX_EXTRACT_SIZE;
+    private String[] digestAlgorithms;
+    private Map<String, String[]> paramMap;
+    private Map<String, FileItemStreamMultipart[]> fileMap;
 
     public FileItemStreamMultipartParameters(FileItemIterator iterator, String encoding) {
         this.iterator = iterator;
         this.resolvedEncoding = encoding;
     }
 
+    /**
+     * 索引済みのパートを返却した後、未読のパートを逐次的に読み出す{@link Iterator}を
+     * 返却します。
+     */
     @Override
     public Iterator<FileItemStreamMultipart> iterator() {
         return new Iterator<FileItemStreamMultipart>() {
 
+            private int position;
+
             @Override
             public boolean hasNext() {
-                try {
-                    return iterator.hasNext();
-                } catch (final FileUploadException e) {
-                    throw new FileUploadFailureException(e);
-                } catch (final IOException e) {
-                    throw new FileUploadFailureException(e);
-                }
+                return position < indexed.size() || hasNextPart();
             }
 
             @Override
             public FileItemStreamMultipart next() {
-                try {
-                    final FileItemStream stream = iterator.next();
-                    return new FileItemStreamMultipart(stream);
-                } catch (final IOException e) {
-                    throw new FileUploadFailureException(e);
-                } catch (final FileUploadException e) {
-                    throw new FileUploadFailureException(e);
+                if (position < indexed.size()) {
+                    return indexed.get(position++);
                 }
+                final FileItemStreamMultipart param = nextPart();
+                position++;
+                return param;
             }
 
             @Override
@@ -69,11 +84,98 @@ MultipartParameters<FileItemStreamMultipart> {
         };
     }
 
-    private Map<String, String[]> params;
+    /**
+     * パートを読み出しながら並列に処理します。<br/>
+     * 読み出したパートは、次のパートを読み出す前に{@link #setMaxExtractSize(long)}を
+     * 上限としてメモリ上に展開されるため、パートNの処理と、パートN+1の読み出しは
+     * 同時に行われます。<br/>
+     * ファイルパラメータは処理を終えた時点で消費され、展開された内容は破棄されます。
+     * 以降、{@link #getMultiparts(String)}などから取得したファイルパラメータの内容を
+     * 参照すると{@link FileUploadFailureException}がスローされます。
+     * @throws FileUploadFailureException パートが展開の上限を超える場合
+     */
+    @Override
+    public <R> List<R> processAll(final PartProcessor<R> processor, Executor executor) {
+        final long limit = this.maxExtractSize;
+        final Iterable<FileItemStreamMultipart> extracting = new Iterable<FileItemStreamMultipart>() {
+
+            @Override
+            public Iterator<FileItemStreamMultipart> iterator() {
+                final Iterator<FileItemStreamMultipart> parts = FileItemStreamMultipartParameters.this
+                        .iterator();
+                return new Iterator<FileItemStreamMultipart>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return parts.hasNext();
+                    }
+
+                    @Override
+                    public FileItemStreamMultipart next() {
+                        final FileItemStreamMultipart part = parts.next();
+                        if (part.isExtractable()) {
+                            part.extract(limit);
+                        }
+                        return part;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+        return new ParallelPartProcessor(executor).processAll(extracting,
+                new PartProcessor<R>() {
+
+                    @Override
+                    public R process(Multipart part) throws IOException {
+                        try {
+                            return processor.process(part);
+                        } finally {
+                            // file parts are read only once, so keep no copy of them.
+                            final FileItemStreamMultipart processed = (FileItemStreamMultipart) part;
+                            if (processed.isMultipartFile()) {
+                                processed.release();
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * 展開済みのパートへの参照を破棄します。
+     */
+    @Override
+    public void dispose() {
+        this.indexed.clear();
+        this.params.clear();
+        this.files.clear();
+        this.paramMap = null;
+        this.fileMap = null;
+        this.current = null;
+        this.exhausted = true;
+    }
 
     @Override
     public String[] getParameter(String name) {
-        return getParameterMap().get(name);
+        readAll();
+        return this.params.getStrings(name, this.resolvedEncoding);
+    }
+
+    /**
+     * 指定された名前のパラメータのうち、最初に出現した値を取得します。<br/>
+     * 該当するパラメータが見つかった時点で、リクエストボディの読み込みを終了します。
+     * @param name パラメータ名
+     * @return パラメータの値。存在しない場合は{@code null}
+     */
+    public String getFirstParameter(String name) {
+        FileItemStreamMultipart value;
+        while ((value = this.params.first(name)) == null && readNext()) {
+            // read until the parameter appears.
+        }
+        return value == null ? null : FieldDecoder.forEncoding(this.resolvedEncoding).decode(value);
     }
 
     @Override
@@ -83,15 +185,32 @@ MultipartParameters<FileItemStreamMultipart> {
 
     @Override
     public Map<String, String[]> getParameterMap() {
-        extractParameters();
-        return this.params;
+        if (this.paramMap == null) {
+            readAll();
+            this.paramMap = this.params.asStringMap(this.resolvedEncoding);
+        }
+        return this.paramMap;
     }
 
-    private Map<String, FileItemStreamMultipart[]> files;
-
     @Override
     public FileItemStreamMultipart[] getMultiparts(String name) {
-        return asMap().get(name);
+        readAll();
+        return this.files.get(name);
+    }
+
+    /**
+     * 指定された名前のファイルパラメータのうち、最初に出現したものを取得します。<br/>
+     * 該当するパートが見つかった時点で、リクエストボディの読み込みを終了します。
+     * 返却されたパートは、以降のパートが読み出されるまでストリームとして参照可能です。
+     * @param name パラメータ名
+     * @return {@link FileItemStreamMultipart}。存在しない場合は{@code null}
+     */
+    public FileItemStreamMultipart getFirstMultipart(String name) {
+        FileItemStreamMultipart value;
+        while ((value = this.files.first(name)) == null && readNext()) {
+            // read until the multipart appears.
+        }
+        return value;
     }
 
     @Override
@@ -100,39 +219,112 @@ MultipartParameters<FileItemStreamMultipart> {
     }
 
     public Map<String, FileItemStreamMultipart[]> asMap() {
-        extractParameters();
-        return this.files;
+        if (this.fileMap == null) {
+            readAll();
+            this.fileMap = this.files.asMap();
+        }
+        return this.fileMap;
     }
 
-    private void extractParameters() {
-        if (this.params != null || this.files != null) {
-            return;
+    /**
+     * 読み進める際に通過したファイルパラメータの内容を、メモリ上に展開して保持するか
+     * 指定します。<br/>
+     * {@code false}(デフォルト)の場合、通過したファイルパラメータは索引に記録されますが、
+     * その内容は読み捨てられます。
+     */
+    public void setSpoolPassedMultiparts(boolean spoolPassedMultiparts) {
+        this.spoolPassedMultiparts = spoolPassedMultiparts;
+    }
+
+    /**
+     * {@link #processAll(PartProcessor, Executor)}がメモリ上に展開するパートごとの
+     * 最大バイト数を指定します。<br/>
+     * デフォルトは{@value #DEFAULT_MAX_EXTRACT_SIZE}バイトです。{@code -1}の場合は無制限です。
+     */
+    public void setMaxExtractSize(long maxExtractSize) {
+        this.maxExtractSize = maxExtractSize;
+    }
+
+    /**
+     * ファイルパラメータの内容を読み込む過程で算出するダイジェストのアルゴリズムを
+     * 指定します。<br/>
+     * 算出されたダイジェストは、内容を最後まで読み込んだ後に
+     * {@link DigestedMultipart#getDigest(String)}により参照できます。
+     * @throws IllegalArgumentException サポートされていないアルゴリズムが指定された場合
+     */
+    public void setDigestAlgorithms(String... digestAlgorithms) {
+        // fail fast on unknown algorithm.
+        new PartDigester(digestAlgorithms);
+        this.digestAlgorithms = digestAlgorithms.clone();
+    }
+
+    private void readAll() {
+        while (readNext()) {
+            // read all parts.
         }
-        this.params = Maps.newEmptyHashMap();
-        this.files = Maps.newEmptyHashMap();
-        for (final FileItemStreamMultipart param : this) {
-            final String paramName = param.getName();
-            if (param.isMultipartFile()) {
-                log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000002", new Object[] { paramName });
-                if (this.files.containsKey(paramName) == false) {
-                    this.files.put(paramName, new FileItemStreamMultipart[0]);
-                }
-                final FileItemStreamMultipart[] fileArray = this.files.get(paramName);
-                this.files.put(paramName,
-                        ArrayUtils.add(FileItemStreamMultipart.class, param, fileArray));
-            } else {
-                log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000001", new Object[] { paramName });
-                if (this.params.containsKey(paramName) == false) {
-                    this.params.put(paramName, new String[0]);
-                }
-                final String[] array = this.params.get(paramName);
-                try {
-                    this.params.put(paramName, ArrayUtils.add(String.class,
-                            new String(param.getBytes(), resolvedEncoding), array));
-                } catch (final UnsupportedEncodingException e) {
-                    throw new FileUploadFailureException(e);
-                }
+    }
+
+    private boolean readNext() {
+        if (hasNextPart() == false) {
+            return false;
+        }
+        nextPart();
+        return true;
+    }
+
+    private boolean hasNextPart() {
+        if (this.exhausted) {
+            return false;
+        }
+        passCurrent();
+        try {
+            if (this.iterator.hasNext()) {
+                return true;
             }
+        } catch (final FileUploadException e) {
+            throw new FileUploadFailureException(e);
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+        this.exhausted = true;
+        return false;
+    }
+
+    private FileItemStreamMultipart nextPart() {
+        passCurrent();
+        final FileItemStream stream;
+        try {
+            stream = this.iterator.next();
+        } catch (final FileUploadException e) {
+            throw new FileUploadFailureException(e);
+        } catch (final IOException e) {
+            throw new FileUploadFailureException(e);
+        }
+        final FileItemStreamMultipart param = new FileItemStreamMultipart(stream);
+        this.current = param;
+        this.indexed.add(param);
+        final String paramName = param.getName();
+        if (param.isMultipartFile()) {
+            log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000002", new Object[] { paramName });
+            if (this.digestAlgorithms != null) {
+                param.setDigester(new PartDigester(this.digestAlgorithms));
+            }
+            this.files.add(param);
+        } else {
+            log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000001", new Object[] { paramName });
+            // form fields are always kept.
+            param.extract();
+            this.params.add(param);
+        }
+        return param;
+    }
+
+    private void passCurrent() {
+        final FileItemStreamMultipart passed = this.current;
+        this.current = null;
+        if (this.spoolPassedMultiparts && passed != null && passed.isExtractable()) {
+            // the stream of passed part will be closed by next iteration.
+            passed.extract();
         }
     }
 }
@@ -0,0 +1,51 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+import org.analogweb.Multipart;
+import org.analogweb.util.IOUtils;
+
+/**
+ * ファイルパラメータのみを処理する{@link PartHandler}です。<br/>
+ * パートの内容はメモリ上に展開されず、ストリームから逐次的に読み出されます。
+ * @author snowgoose
+ */
+public abstract class FilePartHandler implements PartHandler {
+
+    @Override
+    public void handle(Multipart part) throws IOException {
+        if (part.getResourceName() == null) {
+            // form field.
+            return;
+        }
+        final InputStream in = part.getInputStream();
+        try {
+            handleFile(part, in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * ファイルパラメータの内容を処理します。
+     * @param part {@link Multipart}
+     * @param content パートの内容を読み出す{@link InputStream}
+     * @throws IOException パートの読み込みに失敗した場合
+     */
+    protected abstract void handleFile(Multipart part, InputStream content) throws IOException;
+
+    /**
+     * パートの内容を{@link WritableByteChannel}に書き出します。<br/>
+     * {@link ByteBufferMultipart}の場合は、保持しているバッファを直接書き出します。
+     * @return 書き出したバイト数
+     */
+    protected long transfer(Multipart part, InputStream content, WritableByteChannel channel)
+            throws IOException {
+        if (part instanceof ByteBufferMultipart) {
+            return Transfers.write(((ByteBufferMultipart) part).asReadOnlyBuffer(), channel);
+        }
+        return Transfers.copy(content, channel);
+    }
+}
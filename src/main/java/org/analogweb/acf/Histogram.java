@@ -0,0 +1,67 @@
+package org.analogweb.acf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 値を2のべき乗ごとの区間に集計する、スレッドセーフなヒストグラムです。<br/>
+ * パーセンタイルは該当する区間の上限値として近似されます。
+ * @author snowgoose
+ */
+public class Histogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        final long v = Math.max(0, value);
+        final int bucket = v <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(v - 1);
+        buckets.incrementAndGet(Math.min(bucket, buckets.length() - 1));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long current;
+        while (v > (current = max.get()) && max.compareAndSet(current, v) == false) {
+            // retry.
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long c = count.get();
+        return c == 0 ? 0 : (double) sum.get() / c;
+    }
+
+    /**
+     * 指定されたパーセンタイルに該当する区間の上限値を返却します。
+     * @param percentile 0から1の値
+     * @return 区間の上限値。値が記録されていない場合は{@code 0}
+     */
+    public long getPercentile(double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(total * percentile));
+        long accumulated = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            accumulated += buckets.get(i);
+            if (accumulated >= target) {
+                return i >= 63 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,100 @@
+package org.analogweb.acf;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 計測値をメモリ上に集計する{@link UploadMetrics}の実装です。
+ * @author snowgoose
+ */
+public class InMemoryUploadMetrics implements UploadMetrics {
+
+    private final Histogram parseTime = new Histogram();
+    private final Histogram bytesIn = new Histogram();
+    private final Histogram partsPerRequest = new Histogram();
+    private final Histogram resolveTime = new Histogram();
+    private final Histogram spilledSize = new Histogram();
+    private final AtomicLong parseFailures = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong spoolUsage = new AtomicLong();
+
+    @Override
+    public void parsed(long elapsedNanos, long contentLength, boolean succeeded) {
+        parseTime.record(elapsedNanos);
+        if (contentLength >= 0) {
+            bytesIn.record(contentLength);
+        }
+        if (succeeded == false) {
+            parseFailures.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void partsParsed(int parts) {
+        partsPerRequest.record(parts);
+    }
+
+    @Override
+    public void resolved(long elapsedNanos) {
+        resolveTime.record(elapsedNanos);
+    }
+
+    @Override
+    public void rejected() {
+        rejections.incrementAndGet();
+    }
+
+    @Override
+    public void spilled(long size) {
+        spilledSize.record(size);
+    }
+
+    @Override
+    public void spoolUsageChanged(long delta) {
+        spoolUsage.addAndGet(delta);
+    }
+
+    /**
+     * リクエストボディの解析に要したナノ秒の分布を返却します。
+     */
+    public Histogram getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * 解析したリクエストボディのバイト数の分布を返却します。
+     */
+    public Histogram getBytesIn() {
+        return bytesIn;
+    }
+
+    public Histogram getPartsPerRequest() {
+        return partsPerRequest;
+    }
+
+    public Histogram getResolveTime() {
+        return resolveTime;
+    }
+
+    /**
+     * 一時ファイルに書き出されたパートのバイト数の分布を返却します。
+     * 記録数が書き出されたパートの数となります。
+     */
+    public Histogram getSpilledSize() {
+        return spilledSize;
+    }
+
+    public long getParseFailures() {
+        return parseFailures.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * 現在一時ファイルが使用しているバイト数を返却します。
+     */
+    public long getSpoolUsage() {
+        return spoolUsage.get();
+    }
+}
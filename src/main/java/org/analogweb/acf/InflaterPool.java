@@ -0,0 +1,64 @@
+package org.analogweb.acf;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * {@link Inflater}を再利用するプールです。<br/>
+ * {@link Inflater}はネイティブのメモリを確保するため、リクエストごとに生成せず
+ * 再利用します。上限を超えて返却された{@link Inflater}は破棄されます。
+ * @author snowgoose
+ */
+public class InflaterPool {
+
+    public static final int DEFAULT_MAX_IDLE = 16;
+    private final int maxIdle;
+    private final Queue<Inflater> raw = new ConcurrentLinkedQueue<Inflater>();
+    private final Queue<Inflater> zlib = new ConcurrentLinkedQueue<Inflater>();
+    private final AtomicInteger idle = new AtomicInteger();
+
+    public InflaterPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param maxIdle プールに保持する{@link Inflater}の上限
+     */
+    public InflaterPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @param nowrap ZLIBヘッダを持たない(GZIP形式の)データを展開する場合は{@code true}
+     * @return {@link Inflater}
+     */
+    public Inflater acquire(boolean nowrap) {
+        final Inflater inflater = (nowrap ? raw : zlib).poll();
+        if (inflater == null) {
+            return new Inflater(nowrap);
+        }
+        idle.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * {@link Inflater}を返却します。
+     * @param inflater {@link #acquire(boolean)}により取得した{@link Inflater}
+     * @param nowrap 取得時に指定した値
+     */
+    public void release(Inflater inflater, boolean nowrap) {
+        if (idle.incrementAndGet() > maxIdle) {
+            idle.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        (nowrap ? raw : zlib).offer(inflater);
+    }
+
+    public int getIdleCount() {
+        return idle.get();
+    }
+}
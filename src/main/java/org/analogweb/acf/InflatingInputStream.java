@@ -0,0 +1,198 @@
+package org.analogweb.acf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.apache.commons.fileupload.FileUploadBase.FileUploadIOException;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
+
+/**
+ * {@link InflaterPool}から取得した{@link Inflater}により、GZIP及びDEFLATE形式の
+ * データを展開する{@link InputStream}です。<br/>
+ * 展開後のバイト数と圧縮率が上限を超えた場合、
+ * {@link SizeLimitExceededException}を原因とする{@link FileUploadIOException}となります。
+ * @author snowgoose
+ */
+class InflatingInputStream extends InflaterInputStream {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private final InflaterPool pool;
+    private final boolean gzip;
+    private final long maxBytes;
+    private final long maxRatio;
+    private final long ratioThreshold;
+    private final CRC32 crc = new CRC32();
+    private long inflated;
+    private boolean eof;
+    private boolean closed;
+
+    /**
+     * @param in 圧縮されたデータ
+     * @param pool {@link InflaterPool}
+     * @param gzip GZIP形式の場合は{@code true}、ZLIB形式(DEFLATE)の場合は{@code false}
+     * @param maxBytes 展開後のバイト数の上限。{@code -1}で無制限
+     * @param maxRatio 圧縮率の上限。{@code -1}で無制限
+     * @param ratioThreshold 圧縮率を検査する展開後のバイト数の下限
+     */
+    InflatingInputStream(InputStream in, InflaterPool pool, boolean gzip, long maxBytes,
+            long maxRatio, long ratioThreshold) throws IOException {
+        super(in, pool.acquire(gzip), 8192);
+        this.pool = pool;
+        this.gzip = gzip;
+        this.maxBytes = maxBytes;
+        this.maxRatio = maxRatio;
+        this.ratioThreshold = ratioThreshold;
+        if (gzip) {
+            try {
+                readHeader();
+            } catch (final IOException e) {
+                close();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (eof) {
+            return -1;
+        }
+        final int read = super.read(b, off, len);
+        if (read == -1) {
+            eof = true;
+            if (gzip) {
+                readTrailer();
+            }
+            return -1;
+        }
+        if (gzip) {
+            crc.update(b, off, read);
+        }
+        inflated += read;
+        checkLimits();
+        return read;
+    }
+
+    private void checkLimits() throws IOException {
+        if (maxBytes >= 0 && inflated > maxBytes) {
+            throw new FileUploadIOException(new SizeLimitExceededException(String.format(
+                    "the decompressed content (%s) exceeds the configured maximum (%s)",
+                    inflated, maxBytes), inflated, maxBytes));
+        }
+        if (maxRatio >= 0 && inflated > ratioThreshold) {
+            final long compressed = Math.max(inf.getBytesRead(), 1);
+            if (inflated / compressed > maxRatio) {
+                throw new FileUploadIOException(new SizeLimitExceededException(String.format(
+                        "the decompression ratio of content (%s/%s) exceeds the configured maximum (%s)",
+                        inflated, compressed, maxRatio), inflated, compressed * maxRatio));
+            }
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            // not ended by super.close() since the inflater was given.
+            pool.release(inf, gzip);
+        }
+    }
+
+    private void readHeader() throws IOException {
+        if (readUShort(in) != 0x8b1f) {
+            throw new ZipException("not in GZIP format");
+        }
+        if (readUByte(in) != 8) {
+            throw new ZipException("unsupported compression method");
+        }
+        final int flags = readUByte(in);
+        // MTIME, XFL and OS.
+        skipBytes(in, 6);
+        if ((flags & FEXTRA) == FEXTRA) {
+            skipBytes(in, readUShort(in));
+        }
+        if ((flags & FNAME) == FNAME) {
+            while (readUByte(in) != 0) {
+                // skip file name.
+            }
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            while (readUByte(in) != 0) {
+                // skip comment.
+            }
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            skipBytes(in, 2);
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        final byte[] trailer = new byte[8];
+        final int remaining = Math.min(inf.getRemaining(), trailer.length);
+        System.arraycopy(buf, len - inf.getRemaining(), trailer, 0, remaining);
+        for (int i = remaining; i < trailer.length; i++) {
+            trailer[i] = (byte) readUByte(in);
+        }
+        final long expectedCrc = readUInt(trailer, 0);
+        final long expectedSize = readUInt(trailer, 4);
+        if (expectedCrc != crc.getValue() || expectedSize != (inf.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("corrupt GZIP trailer");
+        }
+    }
+
+    private static long readUInt(byte[] b, int off) {
+        return (b[off] & 0xffL) | (b[off + 1] & 0xffL) << 8 | (b[off + 2] & 0xffL) << 16
+                | (b[off + 3] & 0xffL) << 24;
+    }
+
+    private static int readUShort(InputStream in) throws IOException {
+        return readUByte(in) | readUByte(in) << 8;
+    }
+
+    private static int readUByte(InputStream in) throws IOException {
+        final int b = in.read();
+        if (b == -1) {
+            throw new EOFException("unexpected end of GZIP stream");
+        }
+        return b;
+    }
+
+    private static void skipBytes(InputStream in, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readUByte(in);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.analogweb.acf;
+
+import java.nio.MappedByteBuffer;
+
+import org.analogweb.Multipart;
+
+/**
+ * 一時ファイルに書き出された内容を、メモリマップされた{@link MappedByteBuffer}として
+ * 参照可能な{@link Multipart}です。<br/>
+ * 2GBを超える内容は、複数の{@link MappedByteBuffer}に分割してマップされます。
+ * @author snowgoose
+ */
+public interface MappableMultipart extends Multipart {
+
+    /**
+     * このパートの内容が一時ファイルに書き出されており、マップ可能な場合に{@code true}を
+     * 返却します。
+     */
+    boolean isMappable();
+
+    /**
+     * このパートの内容を読み取り専用でマップします。
+     * @return 内容の先頭から順に分割された{@link MappedByteBuffer}
+     * @throws IllegalStateException 内容が一時ファイルに書き出されていない場合
+     * @throws FileUploadFailureException マップに失敗した場合
+     */
+    MappedByteBuffer[] map();
+
+    /**
+     * このパートの内容を、指定されたサイズ毎に分割して読み取り専用でマップします。
+     * @param chunkSize 分割するバイト数
+     * @return 内容の先頭から順に分割された{@link MappedByteBuffer}
+     * @throws IllegalStateException 内容が一時ファイルに書き出されていない場合
+     * @throws FileUploadFailureException マップに失敗した場合
+     */
+    MappedByteBuffer[] map(int chunkSize);
+}
@@ -0,0 +1,119 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * パート毎にメモリ上に保持する閾値を決定する{@link DiskFileItemDecorator}です。<br/>
+ * 閾値はこれまでに受け付けたパートのサイズの分布から算出され、すべてのパートが
+ * メモリ上に保持するバイト数の合計は、指定された上限(メモリバジェット)を超えません。
+ * バジェットが不足している場合、パートは閾値に関わらず一時ファイルに書き出されます。
+ * 書き込みの完了時に使用しなかった予約を返却し、残りの予約はパートの解放時に返却されます。
+ * @author snowgoose
+ */
+public class MemoryBudgetDecorator implements DiskFileItemDecorator {
+
+    public static final int DEFAULT_MAX_SIZE_THRESHOLD = 1024 * 1024;
+    private static final int MIN_SAMPLES = 32;
+    private final long memoryBudget;
+    private final AtomicLong reserved = new AtomicLong();
+    private final Histogram histogram = new Histogram();
+    private volatile int minSizeThreshold;
+    private volatile int maxSizeThreshold = DEFAULT_MAX_SIZE_THRESHOLD;
+    private volatile double percentile = 0.9;
+
+    /**
+     * @param memoryBudget すべてのパートがメモリ上に保持するバイト数の合計の上限
+     * @param minSizeThreshold 閾値の下限
+     */
+    public MemoryBudgetDecorator(long memoryBudget, int minSizeThreshold) {
+        this.memoryBudget = memoryBudget;
+        this.minSizeThreshold = minSizeThreshold;
+    }
+
+    @Override
+    public DiskFileItemListener decorate(DiskFileItemSpec spec) {
+        // the threshold of the factory is an upper bound.
+        final int threshold = reserve(Math.min(getSizeThreshold(), spec.getSizeThreshold()));
+        spec.setSizeThreshold(threshold);
+        return new DiskFileItemListener() {
+
+            private long held = threshold;
+
+            @Override
+            public synchronized void written(long size, boolean inMemory) {
+                histogram.record(size);
+                // keep only the bytes actually held in memory.
+                final long used = inMemory ? size : 0;
+                release(this.held - used);
+                this.held = used;
+            }
+
+            @Override
+            public synchronized void released(File tempFile) {
+                release(this.held);
+                this.held = 0;
+            }
+        };
+    }
+
+    /**
+     * 現在の閾値を返却します。<br/>
+     * 十分な数のパートを受け付けるまでは、閾値の上限を返却します。
+     */
+    public int getSizeThreshold() {
+        if (histogram.getCount() < MIN_SAMPLES) {
+            return maxSizeThreshold;
+        }
+        final long upper = histogram.getPercentile(percentile);
+        return (int) Math.max(minSizeThreshold, Math.min(maxSizeThreshold, upper));
+    }
+
+    /**
+     * メモリ上に保持されているパートが予約しているバイト数の合計を返却します。
+     */
+    public long getReservedBytes() {
+        return reserved.get();
+    }
+
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    public void setMinSizeThreshold(int minSizeThreshold) {
+        this.minSizeThreshold = minSizeThreshold;
+    }
+
+    public void setMaxSizeThreshold(int maxSizeThreshold) {
+        this.maxSizeThreshold = maxSizeThreshold;
+    }
+
+    /**
+     * 閾値の算出に使用するパーセンタイル(0から1)を指定します。デフォルトは{@code 0.9}です。
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * バジェットから最大{@code requested}バイトを予約し、予約できたバイト数を返却します。
+     */
+    private int reserve(int requested) {
+        long current;
+        long granted;
+        do {
+            current = reserved.get();
+            granted = Math.max(0, Math.min(requested, memoryBudget - current));
+            if (granted == 0) {
+                return 0;
+            }
+        } while (reserved.compareAndSet(current, current + granted) == false);
+        return (int) granted;
+    }
+
+    private void release(long bytes) {
+        if (bytes > 0) {
+            reserved.addAndGet(-bytes);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.analogweb.acf;
+
+/**
+ * 名前付きのメーターに計測値を記録する、メトリクスライブラリへの接続点です。<br/>
+ * {@link MeterSinkUploadMetrics}と組み合わせて、Micrometerなどの
+ * メトリクスライブラリに計測値を連携する際に実装します。
+ * @author snowgoose
+ */
+public interface MeterSink {
+
+    void increment(String name, long amount);
+
+    void recordNanos(String name, long nanos);
+
+    void record(String name, long value);
+
+    /**
+     * ゲージの値を変化させます。
+     */
+    void add(String name, long delta);
+}
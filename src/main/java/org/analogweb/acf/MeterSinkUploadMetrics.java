@@ -0,0 +1,59 @@
+package org.analogweb.acf;
+
+/**
+ * 計測値を名前付きのメーターとして{@link MeterSink}に記録する{@link UploadMetrics}の
+ * 実装です。
+ * @author snowgoose
+ */
+public class MeterSinkUploadMetrics implements UploadMetrics {
+
+    public static final String PARSE_TIME = "upload.parse.time";
+    public static final String PARSE_FAILURES = "upload.parse.failures";
+    public static final String BYTES_IN = "upload.bytes.in";
+    public static final String PARTS = "upload.parts";
+    public static final String RESOLVE_TIME = "upload.resolve.time";
+    public static final String REJECTIONS = "upload.rejections";
+    public static final String SPILLED = "upload.spilled";
+    public static final String SPOOL_USAGE = "upload.spool.usage";
+    private final MeterSink sink;
+
+    public MeterSinkUploadMetrics(MeterSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void parsed(long elapsedNanos, long contentLength, boolean succeeded) {
+        sink.recordNanos(PARSE_TIME, elapsedNanos);
+        if (contentLength >= 0) {
+            sink.record(BYTES_IN, contentLength);
+        }
+        if (succeeded == false) {
+            sink.increment(PARSE_FAILURES, 1);
+        }
+    }
+
+    @Override
+    public void partsParsed(int parts) {
+        sink.record(PARTS, parts);
+    }
+
+    @Override
+    public void resolved(long elapsedNanos) {
+        sink.recordNanos(RESOLVE_TIME, elapsedNanos);
+    }
+
+    @Override
+    public void rejected() {
+        sink.increment(REJECTIONS, 1);
+    }
+
+    @Override
+    public void spilled(long size) {
+        sink.record(SPILLED, size);
+    }
+
+    @Override
+    public void spoolUsageChanged(long delta) {
+        sink.add(SPOOL_USAGE, delta);
+    }
+}
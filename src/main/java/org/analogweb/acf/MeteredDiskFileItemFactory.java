@@ -0,0 +1,15 @@
+package org.analogweb.acf;
+
+import java.io.File;
+
+/**
+ * 一時ファイルへの書き出しを{@link UploadMetrics}に記録する{@link TrackedDiskFileItemFactory}です。
+ * @author snowgoose
+ */
+public class MeteredDiskFileItemFactory extends TrackedDiskFileItemFactory {
+
+    public MeteredDiskFileItemFactory(int sizeThreshold, File repository, UploadMetrics metrics) {
+        super(sizeThreshold, repository);
+        setMetrics(metrics);
+    }
+}
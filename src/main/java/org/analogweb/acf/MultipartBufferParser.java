@@ -0,0 +1,155 @@
+package org.analogweb.acf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.analogweb.util.StringUtils;
+import org.apache.commons.fileupload.MultipartStream;
+import org.apache.commons.fileupload.MultipartStream.MalformedStreamException;
+import org.apache.commons.fileupload.util.FileItemHeadersImpl;
+
+/**
+ * メモリ上に展開されたリクエストボディ({@link ByteBuffer})を解析し、
+ * {@link ByteBufferMultipart}を生成するパーサーです。<br/>
+ * 各パートの内容はリクエストボディのスライスとして扱われ、コピーされません。
+ * 境界の探索には{@link BoundaryFinder}を使用します。
+ * 各パートのヘッダは、{@link MultipartStream#HEADER_PART_SIZE_MAX}バイトまでに
+ * 制限されます。
+ * @author snowgoose
+ */
+public class MultipartBufferParser {
+
+    private static final byte CR = 0x0D;
+    private static final byte LF = 0x0A;
+    private static final byte DASH = 0x2D;
+    private final BoundaryFinder delimiter;
+    private final byte[] boundary;
+    private final String headerEncoding;
+
+    public MultipartBufferParser(byte[] boundary, String headerEncoding) {
+        this.boundary = boundary;
+        final byte[] pattern = new byte[boundary.length + 4];
+        pattern[0] = CR;
+        pattern[1] = LF;
+        pattern[2] = DASH;
+        pattern[3] = DASH;
+        System.arraycopy(boundary, 0, pattern, 4, boundary.length);
+        this.delimiter = new BoundaryFinder(pattern);
+        this.headerEncoding = StringUtils.isNotEmpty(headerEncoding) ? headerEncoding
+                : PartHeaders.DEFAULT_HEADER_ENCODING;
+    }
+
+    /**
+     * リクエストボディを解析します。<br/>
+     * 指定された{@link ByteBuffer}の位置(position)や上限(limit)は変更されません。
+     * @param body リクエストボディ
+     * @return 解析された{@link ByteBufferMultipart}
+     * @throws MalformedStreamException リクエストボディの形式が不正である場合
+     */
+    public List<ByteBufferMultipart> parse(ByteBuffer body) throws MalformedStreamException {
+        final List<ByteBufferMultipart> parts = new ArrayList<ByteBufferMultipart>();
+        final int limit = body.limit();
+        int cursor = findFirstBoundary(body, body.position(), limit);
+        while (true) {
+            cursor += 2 + boundary.length;
+            if (cursor + 2 > limit) {
+                throw new MalformedStreamException("Stream ended unexpectedly");
+            }
+            if (body.get(cursor) == DASH && body.get(cursor + 1) == DASH) {
+                // close delimiter.
+                return parts;
+            }
+            cursor = skipLineEnd(body, cursor, limit);
+            final int headerEnd = findHeaderEnd(body, cursor, limit);
+            final FileItemHeadersImpl headers = PartHeaders.parse(body, cursor, headerEnd,
+                    this.headerEncoding);
+            final int contentStart = headerEnd + 2;
+            final int contentEnd = this.delimiter.indexOf(body, contentStart, limit);
+            if (contentEnd < 0) {
+                throw new MalformedStreamException("Stream ended unexpectedly");
+            }
+            parts.add(createMultipart(headers, slice(body, contentStart, contentEnd)));
+            cursor = contentEnd + 2;
+        }
+    }
+
+    protected ByteBufferMultipart createMultipart(FileItemHeadersImpl headers, ByteBuffer content) {
+        return new ByteBufferMultipart(PartHeaders.getFieldName(headers),
+                PartHeaders.getFileName(headers), headers.getHeader("Content-Type"), headers,
+                content);
+    }
+
+    private int findFirstBoundary(ByteBuffer body, int from, int limit)
+            throws MalformedStreamException {
+        // the first boundary is not preceded by CRLF unless a preamble exists.
+        if (startsWithBoundary(body, from, limit)) {
+            return from;
+        }
+        final int found = this.delimiter.indexOf(body, from, limit);
+        if (found < 0) {
+            throw new MalformedStreamException("Boundary not found");
+        }
+        return found + 2;
+    }
+
+    private boolean startsWithBoundary(ByteBuffer body, int from, int limit) {
+        if (from + 2 + boundary.length > limit) {
+            return false;
+        }
+        if (body.get(from) != DASH || body.get(from + 1) != DASH) {
+            return false;
+        }
+        for (int i = 0; i < boundary.length; i++) {
+            if (body.get(from + 2 + i) != boundary[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipLineEnd(ByteBuffer body, int cursor, int limit)
+            throws MalformedStreamException {
+        int i = cursor;
+        // skip transport padding.
+        while (i < limit && (body.get(i) == ' ' || body.get(i) == '\t')) {
+            i++;
+        }
+        if (i + 1 < limit && body.get(i) == CR && body.get(i + 1) == LF) {
+            return i + 2;
+        }
+        throw new MalformedStreamException("Unexpected characters follow a boundary");
+    }
+
+    /**
+     * ヘッダの終端(空行のCRLF)の位置を返却します。<br/>
+     * {@link MultipartStream}と同様に、ヘッダの大きさを制限します。
+     */
+    private int findHeaderEnd(ByteBuffer body, int from, int limit)
+            throws MalformedStreamException {
+        if (from + 1 < limit && body.get(from) == CR && body.get(from + 1) == LF) {
+            // no headers.
+            return from;
+        }
+        final int end = (int) Math.min(limit, (long) from + MultipartStream.HEADER_PART_SIZE_MAX);
+        for (int i = from; i + 3 < end; i++) {
+            if (body.get(i) == CR && body.get(i + 1) == LF && body.get(i + 2) == CR
+                    && body.get(i + 3) == LF) {
+                return i + 2;
+            }
+        }
+        if (end < limit) {
+            throw new MalformedStreamException(String.format(
+                    "Header section has more than %s bytes (maybe it is not properly terminated)",
+                    MultipartStream.HEADER_PART_SIZE_MAX));
+        }
+        throw new MalformedStreamException("Header section has no terminator");
+    }
+
+    private ByteBuffer slice(ByteBuffer body, int from, int to) {
+        final ByteBuffer duplicate = body.duplicate();
+        duplicate.limit(to);
+        duplicate.position(from);
+        return duplicate.slice();
+    }
+}
@@ -0,0 +1,33 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RESOURCE;
+
+import org.analogweb.RequestContext;
+import org.analogweb.ResponseContext;
+import org.analogweb.core.AbstractApplicationProcessor;
+import org.analogweb.util.logging.Log;
+import org.analogweb.util.logging.Logs;
+
+/**
+ * リクエストの処理の完了時に、そのリクエストで解析された{@link MultipartParameters}を
+ * 破棄し、一時ファイルを削除する{@link org.analogweb.ApplicationProcessor}です。<br/>
+ * 記録されている{@link UploadProgress}も完了させます。
+ * @author snowgoose
+ */
+public class MultipartCleanupProcessor extends AbstractApplicationProcessor {
+
+    private static final Log log = Logs.getLog(MultipartCleanupProcessor.class);
+
+    @Override
+    public void afterCompletion(RequestContext request, ResponseContext response, Exception e) {
+        final UploadProgress progress = UploadProgress.get(request);
+        if (progress != null) {
+            progress.complete();
+        }
+        try {
+            CurrentMultipartParameters.dispose(request);
+        } catch (final RuntimeException ex) {
+            log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000006", ex);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.analogweb.acf;
+
+import java.nio.ByteBuffer;
+
+import org.apache.commons.fileupload.FileItemHeaders;
+
+/**
+ * {@link MultipartPushParser}が発行するイベントを受け取るハンドラです。
+ * @author snowgoose
+ */
+public interface MultipartEventHandler {
+
+    /**
+     * パートのヘッダが解析された際に呼び出されます。
+     * @param headers パートのヘッダ
+     */
+    void onPartStart(FileItemHeaders headers);
+
+    /**
+     * パートの内容の一部が読み込まれた際に呼び出されます。<br/>
+     * 指定される{@link ByteBuffer}は、このメソッドの呼び出し中のみ有効です。
+     * @param data パートの内容の一部
+     */
+    void onPartData(ByteBuffer data);
+
+    /**
+     * パートの内容が終端に達した際に呼び出されます。
+     */
+    void onPartEnd();
+
+    /**
+     * 終端の境界が検出された際に呼び出されます。
+     */
+    void onComplete();
+}
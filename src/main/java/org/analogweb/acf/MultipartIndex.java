@@ -0,0 +1,298 @@
+package org.analogweb.acf;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.analogweb.Multipart;
+
+/**
+ * パラメータ名ごとに{@link Multipart}を索引するオープンアドレス法のハッシュ表です。<br/>
+ * パートは出現順に一つの配列に保持され、同じ名前のパートは次のパートの位置により
+ * 連結されます。名前ごとの配列は参照された時点で生成され、キャッシュされます。
+ * 同じ名前のパートが多数含まれる場合でも、追加は定数時間で行われます。
+ * @author snowgoose
+ */
+final class MultipartIndex<T extends Multipart> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_PARTS = 8;
+    private final Class<T> type;
+    // parts in order of appearance and the position of next part with the same name.
+    private T[] parts;
+    private int[] nextOf;
+    private int size;
+    // open addressing table. positions are stored as (position + 1), 0 means empty slot.
+    private String[] names;
+    private int[] firsts;
+    private int[] lasts;
+    private int[] counts;
+    private Object[] materialized;
+    private String[][] decoded;
+    private int[] order;
+    private int nameCount;
+
+    @SuppressWarnings("unchecked")
+    MultipartIndex(Class<T> type) {
+        this.type = type;
+        this.parts = (T[]) Array.newInstance(type, INITIAL_PARTS);
+        this.nextOf = new int[INITIAL_PARTS];
+        allocateTable(INITIAL_CAPACITY);
+    }
+
+    private void allocateTable(int capacity) {
+        this.names = new String[capacity];
+        this.firsts = new int[capacity];
+        this.lasts = new int[capacity];
+        this.counts = new int[capacity];
+        this.materialized = new Object[capacity];
+        this.decoded = new String[capacity][];
+        this.order = new int[capacity / 2];
+    }
+
+    void add(T part) {
+        if (size == parts.length) {
+            parts = Arrays.copyOf(parts, size * 2);
+            nextOf = Arrays.copyOf(nextOf, size * 2);
+        }
+        final int position = size++;
+        parts[position] = part;
+        nextOf[position] = 0;
+        final String name = part.getName();
+        int slot = slotOf(name);
+        if (firsts[slot] == 0) {
+            if (nameCount + 1 > names.length / 2) {
+                rehash();
+                slot = slotOf(name);
+            }
+            names[slot] = name;
+            firsts[slot] = position + 1;
+            order[nameCount++] = slot;
+        } else {
+            nextOf[lasts[slot] - 1] = position + 1;
+            materialized[slot] = null;
+            decoded[slot] = null;
+        }
+        lasts[slot] = position + 1;
+        counts[slot]++;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean contains(String name) {
+        return firsts[slotOf(name)] != 0;
+    }
+
+    /**
+     * @return 最初に出現したパート。存在しない場合は{@code null}
+     */
+    T first(String name) {
+        final int first = firsts[slotOf(name)];
+        return first == 0 ? null : parts[first - 1];
+    }
+
+    /**
+     * @return 指定した名前のパートの配列。存在しない場合は{@code null}
+     */
+    @SuppressWarnings("unchecked")
+    T[] get(String name) {
+        final int slot = slotOf(name);
+        if (firsts[slot] == 0) {
+            return null;
+        }
+        T[] values = (T[]) materialized[slot];
+        if (values == null) {
+            values = (T[]) Array.newInstance(type, counts[slot]);
+            int position = firsts[slot];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = parts[position - 1];
+                position = nextOf[position - 1];
+            }
+            materialized[slot] = values;
+        }
+        return values;
+    }
+
+    /**
+     * 指定した名前のパートの内容を、文字列として取得します。<br/>
+     * 内容は最初に参照された時点で変換され、キャッシュされます。
+     * @return 文字列の配列。存在しない場合は{@code null}
+     * @throws FileUploadFailureException エンコーディングがサポートされていない場合
+     */
+    String[] getStrings(String name, String encoding) {
+        final int slot = slotOf(name);
+        if (firsts[slot] == 0) {
+            return null;
+        }
+        String[] values = decoded[slot];
+        if (values == null) {
+            final FieldDecoder decoder = FieldDecoder.forEncoding(encoding);
+            values = new String[counts[slot]];
+            int position = firsts[slot];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = decoder.decode(parts[position - 1]);
+                position = nextOf[position - 1];
+            }
+            decoded[slot] = values;
+        }
+        return values;
+    }
+
+    /**
+     * パラメータ名を出現順に返却します。
+     */
+    List<String> names() {
+        final int count = this.nameCount;
+        return new AbstractList<String>() {
+
+            @Override
+            public String get(int index) {
+                if (index >= count) {
+                    throw new IndexOutOfBoundsException(String.valueOf(index));
+                }
+                return names[order[index]];
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    Map<String, T[]> asMap() {
+        final Map<String, T[]> map = new LinkedHashMap<String, T[]>(nameCount * 2);
+        for (final String name : names()) {
+            map.put(name, get(name));
+        }
+        return map;
+    }
+
+    /**
+     * パートの内容を文字列として参照する{@link Map}を返却します。<br/>
+     * 値は{@link Map#get(Object)}などにより参照された時点で変換されます。
+     */
+    Map<String, String[]> asStringMap(final String encoding) {
+        final List<String> names = names();
+        return new AbstractMap<String, String[]>() {
+
+            @Override
+            public String[] get(Object key) {
+                return key instanceof String || key == null ? getStrings((String) key, encoding)
+                        : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return (key instanceof String || key == null) && contains((String) key);
+            }
+
+            @Override
+            public int size() {
+                return names.size();
+            }
+
+            @Override
+            public Set<Map.Entry<String, String[]>> entrySet() {
+                return new AbstractSet<Map.Entry<String, String[]>>() {
+
+                    @Override
+                    public Iterator<Map.Entry<String, String[]>> iterator() {
+                        final Iterator<String> keys = names.iterator();
+                        return new Iterator<Map.Entry<String, String[]>>() {
+
+                            @Override
+                            public boolean hasNext() {
+                                return keys.hasNext();
+                            }
+
+                            @Override
+                            public Map.Entry<String, String[]> next() {
+                                final String name = keys.next();
+                                return new AbstractMap.SimpleImmutableEntry<String, String[]>(
+                                        name, null) {
+
+                                    private static final long serialVersionUID = 1L;
+
+                                    @Override
+                                    public String[] getValue() {
+                                        return getStrings(name, encoding);
+                                    }
+                                };
+                            }
+
+                            @Override
+                            public void remove() {
+                                throw new UnsupportedOperationException();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return names.size();
+                    }
+                };
+            }
+        };
+    }
+
+    void clear() {
+        Arrays.fill(parts, 0, size, null);
+        this.size = 0;
+        this.nameCount = 0;
+        allocateTable(INITIAL_CAPACITY);
+    }
+
+    private int slotOf(String name) {
+        final int mask = names.length - 1;
+        int slot = hash(name) & mask;
+        while (firsts[slot] != 0 && equals(names[slot], name) == false) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        final String[] oldNames = this.names;
+        final int[] oldFirsts = this.firsts;
+        final int[] oldLasts = this.lasts;
+        final int[] oldCounts = this.counts;
+        final Object[] oldMaterialized = this.materialized;
+        final String[][] oldDecoded = this.decoded;
+        final int[] oldOrder = this.order;
+        allocateTable(oldNames.length * 2);
+        for (int i = 0; i < nameCount; i++) {
+            final int old = oldOrder[i];
+            final int slot = slotOf(oldNames[old]);
+            names[slot] = oldNames[old];
+            firsts[slot] = oldFirsts[old];
+            lasts[slot] = oldLasts[old];
+            counts[slot] = oldCounts[old];
+            materialized[slot] = oldMaterialized[old];
+            decoded[slot] = oldDecoded[old];
+            order[i] = slot;
+        }
+    }
+
+    private static int hash(String name) {
+        if (name == null) {
+            return 0;
+        }
+        final int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -21,4 +21,35 @@ import org.analogweb.util.StringUtils;
 public @interface MultipartParam {
 
     String value() default StringUtils.EMPTY;
+
+    /**
+     * このパラメータを含むリクエストボディの最大バイト数です。<br/>
+     * {@code Content-Length}が上限を超えるリクエストは、ボディを読み込む前に拒否されます。
+     * {@code -1}(デフォルト)で{@link MultipartParameterResolver}の設定に従います。
+     */
+    long maxRequestSize() default -1;
+
+    /**
+     * パートごとの最大バイト数です。{@code -1}(デフォルト)で
+     * {@link MultipartParameterResolver}の設定に従います。
+     */
+    long maxFileSize() default -1;
+
+    /**
+     * リクエストに含まれるパートの最大数です。{@code -1}(デフォルト)で
+     * {@link MultipartParameterResolver}の設定に従います。
+     */
+    int maxParts() default -1;
+
+    /**
+     * 同じ名前のパートの最大数です。{@code -1}(デフォルト)で
+     * {@link MultipartParameterResolver}の設定に従います。
+     */
+    int maxPartsPerField() default -1;
+
+    /**
+     * パートごとのヘッダの最大バイト数です。{@code -1}(デフォルト)で
+     * {@link MultipartParameterResolver}の設定に従います。
+     */
+    int maxHeaderSize() default -1;
 }
@@ -0,0 +1,36 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.analogweb.Multipart;
+import org.analogweb.RequestContext;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadException;
+
+/**
+ * commons-fileuploadの{@link org.apache.commons.fileupload.MultipartStream}を使用せず、
+ * {@link MultipartBufferParser}によりリクエストボディを解析する
+ * {@link MultipartParameterResolver}です。<br/>
+ * リクエストボディは一度だけ{@link ByteBuffer}に読み込まれ、各パートはそのスライスとして
+ * 扱われます。一時ファイルは使用されないため、リクエストボディの大きさは
+ * {@link FileUpload#getSizeMax()}により、指定されていない場合は
+ * {@link #setMaxBufferedSize(long)}により制限されます。
+ * @author snowgoose
+ */
+public class MultipartParameterBufferResolver extends MultipartParameterResolver {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T extends Multipart> MultipartParameters<T> createMultipartParameters(
+            RequestContext request, org.apache.commons.fileupload.RequestContext context,
+            FileUpload fileUpload, String resolvedEncoding) throws FileUploadException, IOException {
+        return (MultipartParameters<T>) createBufferedMultipartParameters(request, context,
+                fileUpload, resolvedEncoding);
+    }
+
+    @Override
+    protected boolean isSpoolingStrategy(UploadRouteConfig route) {
+        return route.getStrategy() == UploadStrategy.SPOOLING;
+    }
+}
@@ -4,10 +4,32 @@ import static org.analogweb.acf.CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RE
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.analogweb.InvocationMetadata;
 import org.analogweb.MediaType;
@@ -18,23 +40,44 @@ import org.analogweb.core.ParameterValueResolver;
 import org.analogweb.core.SpecificMediaTypeRequestValueResolver;
 import org.analogweb.util.ApplicationPropertiesHolder;
 import org.analogweb.util.ArrayUtils;
-import org.analogweb.util.ClassUtils;
 import org.analogweb.util.StringUtils;
 import org.analogweb.util.logging.Log;
 import org.analogweb.util.logging.Logs;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadBase.FileSizeLimitExceededException;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
 import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.ParameterParser;
+import org.apache.commons.fileupload.ProgressListener;
+import org.apache.commons.fileupload.UploadContext;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.io.FileCleaningTracker;
 
 public class MultipartParameterResolver extends ParameterValueResolver implements SpecificMediaTypeRequestValueResolver {
 
     private static final Log log = Logs.getLog(MultipartParameterResolver.class);
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final long DEFAULT_MAX_BUFFERED_SIZE = 16 * 1024 * 1024;
+    private UploadMetrics uploadMetrics = new InMemoryUploadMetrics();
     private FileItemFactory fileItemFactory = createFileItemFactory();
     private FileUploadFactory<? extends FileUpload> fileUploadFactory = new DefaultFileUploadFactory();
     private final String defaultEncoding = "UTF-8";
+    private ExecutorService parsingExecutor;
+    private ExecutorService spoolingExecutor;
+    private UploadAdmissionController admissionController;
+    private long maxByteArraySize = -1;
+    private long maxBufferedSize = DEFAULT_MAX_BUFFERED_SIZE;
+    private UploadProgressRegistry progressRegistry;
+    private volatile FileUpload sharedFileUpload;
+    private ContentDecoder contentDecoder = new ContentDecoder();
+    private UploadQuota uploadQuota = UploadQuota.UNLIMITED;
+    private ClientUploadBudget clientBudget;
+    private SpoolSweeper spoolSweeper;
+    private final ConcurrentMap<Class<?>, MultipartValueType> valueTypes = new ConcurrentHashMap<Class<?>, MultipartValueType>();
+    private final ConcurrentMap<InvocationMetadata, UploadRouteConfig> routes = new ConcurrentHashMap<InvocationMetadata, UploadRouteConfig>();
 
     @Override
     public boolean supports(MediaType mediaType) {
@@ -47,20 +90,14 @@ public class MultipartParameterResolver extends ParameterValueResolver implement
         MultipartParameters<Multipart> parameters = CurrentMultipartParameters.get(request);
         if (parameters == null) {
             if (isMultipartContentOnCurrentRequest(request)) {
-                log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000001");
-                final FileUpload fileUpload = getFileUpload(getFileItemFactory());
-                log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000002", new Object[] { fileUpload });
-                final String encoding = resolveEncoding(request);
-                log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000003", new Object[] { encoding });
-                try {
-                    parameters = createMultipartParameters(request, createRequestContext(request),
-                            fileUpload, encoding);
-                    CurrentMultipartParameters.put(request, parameters);
-                } catch (final FileUploadException e) {
-                    throw new FileUploadFailureException(e);
-                } catch (final IOException e) {
-                    throw new FileUploadFailureException(e);
+                final UploadRouteConfig route = getRouteConfig(metadata, annotations);
+                if (valueTypeOf(requiredType) == MultipartValueType.FUTURE
+                        && isSpoolingStrategy(route)) {
+                    parameters = spoolMultipartParameters(request, route);
+                } else {
+                    parameters = parseMultipartParameters(request, route);
                 }
+                CurrentMultipartParameters.put(request, parameters);
             } else {
                 log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000009",
                         new Object[] { request.getContentType() });
@@ -69,54 +106,628 @@ public class MultipartParameterResolver extends ParameterValueResolver implement
         }
         log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000009", new Object[] { parameters, name,
                 requiredType });
-        if (isEqualsType(Iterable.class, requiredType)) {
+        if (valueTypeOf(requiredType) == MultipartValueType.ITERABLE) {
+            return parameters;
+        }
+        final long started = System.nanoTime();
+        try {
+            return resolveParameterizedValue(request, metadata, name, requiredType, annotations,
+                    parameters);
+        } finally {
+            getUploadMetrics().resolved(System.nanoTime() - started);
+        }
+    }
+
+    protected MultipartParameters<Multipart> parseMultipartParameters(final RequestContext request) {
+        return parseMultipartParameters(request, new UploadRouteConfig(getUploadQuota(), null));
+    }
+
+    /**
+     * エンドポイントごとの{@link UploadRouteConfig}を適用して、リクエストを解析します。<br/>
+     * {@code Content-Length}が上限を超えるリクエストは、ボディを読み込む前に拒否されます。
+     */
+    protected MultipartParameters<Multipart> parseMultipartParameters(
+            final RequestContext request, final UploadRouteConfig route) {
+        log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000001");
+        final FileUpload fileUpload = getFileUpload(route);
+        log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000002", new Object[] { fileUpload });
+        checkQuota(request, route.getQuota(), fileUpload);
+        final String encoding = resolveEncoding(request);
+        log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000003", new Object[] { encoding });
+        final UploadAdmissionController.Admission admission = acquireAdmission(request);
+        final UploadProgress progress;
+        try {
+            progress = startProgress(request, fileUpload);
+        } catch (final RuntimeException e) {
+            release(admission);
+            throw e;
+        }
+        final long started = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            final MultipartParameters<Multipart> parameters = invokeParsing(admission,
+                    new Callable<MultipartParameters<Multipart>>() {
+
+                        @Override
+                        public MultipartParameters<Multipart> call() throws Exception {
+                            if (progress == null) {
+                                return createMultipartParameters(request, fileUpload, encoding,
+                                        route);
+                            }
+                            progress.bind(Thread.currentThread());
+                            try {
+                                return createMultipartParameters(request, fileUpload, encoding,
+                                        route);
+                            } finally {
+                                progress.unbind();
+                            }
+                        }
+                    });
+            succeeded = true;
             return parameters;
+        } finally {
+            if (progress != null && succeeded == false) {
+                progress.complete();
+            }
+            getUploadMetrics().parsed(System.nanoTime() - started, request.getContentLength(),
+                    succeeded);
+        }
+    }
+
+    /**
+     * リクエストボディのパートを、バックグラウンドで{@link FileItem}に書き出しながら
+     * 解析します。<br/>
+     * 書き出しは{@link #setSpoolingExecutor(ExecutorService)}により指定された
+     * {@link ExecutorService}で実行され、このメソッドはリクエストボディの読み込みを
+     * 待たずに{@link SpoolingMultipartParameters}を返却します。
+     * @throws UploadRejectedException 書き出しを開始できなかった場合
+     */
+    @SuppressWarnings("unchecked")
+    protected MultipartParameters<Multipart> spoolMultipartParameters(
+            final RequestContext request, final UploadRouteConfig route) {
+        log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000001");
+        final FileUpload fileUpload = getFileUpload(route);
+        log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000002", new Object[] { fileUpload });
+        checkQuota(request, route.getQuota(), fileUpload);
+        final String encoding = resolveEncoding(request);
+        log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000003", new Object[] { encoding });
+        final UploadAdmissionController.Admission admission = acquireAdmission(request);
+        final UploadProgress progress;
+        try {
+            progress = startProgress(request, fileUpload);
+        } catch (final RuntimeException e) {
+            release(admission);
+            throw e;
+        }
+        final SpoolingMultipartParameters parameters = new SpoolingMultipartParameters(encoding);
+        final org.apache.commons.fileupload.RequestContext context = SpoolingMultipartParameters
+                .capture(createRequestContext(request));
+        final long contentLength = request.getContentLength();
+        final PartLimiter limiter = PartLimiter.of(UploadQuota.get(request));
+        final long started = System.nanoTime();
+        final Runnable spooling = new Runnable() {
+
+            @Override
+            public void run() {
+                boolean succeeded = false;
+                if (progress != null) {
+                    progress.bind(Thread.currentThread());
+                }
+                try {
+                    final int parts = parameters.spool(fileUpload, context, limiter);
+                    log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000003", parts);
+                    getUploadMetrics().partsParsed(parts);
+                    succeeded = true;
+                } catch (final FileUploadException e) {
+                    if (parameters.isDisposed() == false) {
+                        log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000008", e, e.getMessage());
+                    }
+                } catch (final RuntimeException e) {
+                    log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000008", e, e.getMessage());
+                } finally {
+                    if (progress != null) {
+                        progress.unbind();
+                        if (succeeded == false) {
+                            progress.complete();
+                        }
+                    }
+                    if (admission != null) {
+                        admission.release();
+                    }
+                    getUploadMetrics().parsed(System.nanoTime() - started, contentLength,
+                            succeeded);
+                }
+            }
+        };
+        try {
+            getSpoolingExecutor().execute(spooling);
+        } catch (final RejectedExecutionException e) {
+            parameters.failed(e);
+            if (progress != null) {
+                progress.complete();
+            }
+            if (admission != null) {
+                admission.release();
+            }
+            getUploadMetrics().rejected();
+            log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000004", e, e.getMessage());
+            throw new UploadRejectedException("spooling executor rejected the upload");
+        }
+        final Object spooled = parameters;
+        return (MultipartParameters<Multipart>) spooled;
+    }
+
+    /**
+     * {@link Future}型のパラメータを、バックグラウンドでの書き出しにより解決するかを
+     * 返却します。<br/>
+     * {@link UploadStrategy#SPOOLING}または{@link UploadStrategy#DEFAULT}が指定された
+     * エンドポイントで有効です。
+     */
+    protected boolean isSpoolingStrategy(UploadRouteConfig route) {
+        return route.getStrategy() == UploadStrategy.SPOOLING
+                || route.getStrategy() == UploadStrategy.DEFAULT;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MultipartParameters<Multipart> createMultipartParameters(RequestContext request,
+            FileUpload fileUpload, String encoding, UploadRouteConfig route)
+            throws FileUploadException, IOException {
+        final org.apache.commons.fileupload.RequestContext context = createRequestContext(request);
+        final MultipartParameters<? extends Multipart> parameters;
+        switch (route.getStrategy()) {
+        case SPOOLING:
+            parameters = createSpooledMultipartParameters(request, context, fileUpload, encoding);
+            break;
+        case BUFFERED:
+            parameters = createBufferedMultipartParameters(request, context, fileUpload, encoding);
+            break;
+        case STREAMING:
+            parameters = createStreamingMultipartParameters(request, context, fileUpload,
+                    encoding);
+            break;
+        default:
+            parameters = createMultipartParameters(request, context, fileUpload, encoding);
+            break;
+        }
+        if (route.isEagerDecoding()) {
+            for (final String name : parameters.getParameterNames()) {
+                parameters.getParameter(name);
+            }
+        }
+        return (MultipartParameters<Multipart>) parameters;
+    }
+
+    /**
+     * エンドポイントごとの{@link UploadRouteConfig}を取得します。<br/>
+     * 設定は{@link InvocationMetadata}ごとに一度だけ解決され、キャッシュされます。
+     */
+    protected UploadRouteConfig getRouteConfig(InvocationMetadata metadata,
+            Annotation[] annotations) {
+        if (metadata == null) {
+            return createRouteConfig(null, annotations);
+        }
+        UploadRouteConfig route = routes.get(metadata);
+        if (route == null) {
+            route = createRouteConfig(metadata, annotations);
+            final UploadRouteConfig existing = routes.putIfAbsent(metadata, route);
+            if (existing != null) {
+                route = existing;
+            }
+        }
+        return route;
+    }
+
+    /**
+     * 処理対象のメソッドに付与された{@link UploadConfig}と、全てのパラメータに付与された
+     * {@link MultipartParam}の上限から{@link UploadRouteConfig}を生成します。<br/>
+     * メソッドが特定できない場合は、指定されたパラメータのアノテーションのみを使用します。
+     */
+    protected UploadRouteConfig createRouteConfig(InvocationMetadata metadata,
+            Annotation[] annotations) {
+        final Method method = findInvocationMethod(metadata);
+        if (method == null) {
+            return new UploadRouteConfig(resolveUploadQuota(metadata, annotations), null);
+        }
+        UploadQuota quota = getUploadQuota();
+        final Map<String, Class<?>> futureTypes = new HashMap<String, Class<?>>();
+        final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        final Type[] parameterTypes = method.getGenericParameterTypes();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            final MultipartParam param = findMultipartParam(parameterAnnotations[i]);
+            quota = quota.narrow(UploadQuota.of(param));
+            final Class<?> futureType = futureTypeOf(parameterTypes[i]);
+            if (param != null && futureType != null && StringUtils.isNotEmpty(param.value())) {
+                futureTypes.put(param.value(), futureType);
+            }
+        }
+        return new UploadRouteConfig(quota, findUploadConfig(method), futureTypes);
+    }
+
+    private static Class<?> futureTypeOf(Type type) {
+        if (type instanceof ParameterizedType) {
+            final ParameterizedType parameterized = (ParameterizedType) type;
+            final Type[] arguments = parameterized.getActualTypeArguments();
+            if (parameterized.getRawType() == Future.class && arguments.length == 1
+                    && arguments[0] instanceof Class) {
+                return (Class<?>) arguments[0];
+            }
+        }
+        return null;
+    }
+
+    private static Method findInvocationMethod(InvocationMetadata metadata) {
+        if (metadata == null || metadata.getInvocationClass() == null
+                || StringUtils.isEmpty(metadata.getMethodName())) {
+            return null;
+        }
+        final Class<?> type = metadata.getInvocationClass();
+        try {
+            return type.getMethod(metadata.getMethodName(), metadata.getArgumentTypes());
+        } catch (final NoSuchMethodException e) {
+            try {
+                return type.getDeclaredMethod(metadata.getMethodName(),
+                        metadata.getArgumentTypes());
+            } catch (final NoSuchMethodException ignore) {
+                return null;
+            }
+        } catch (final SecurityException e) {
+            return null;
+        }
+    }
+
+    private static UploadConfig findUploadConfig(Method method) {
+        final UploadConfig config = method.getAnnotation(UploadConfig.class);
+        if (config != null) {
+            return config;
+        }
+        for (final Annotation annotation : method.getAnnotations()) {
+            final UploadConfig meta = annotation.annotationType().getAnnotation(
+                    UploadConfig.class);
+            if (meta != null) {
+                return meta;
+            }
+        }
+        return null;
+    }
+
+    private static MultipartParam findMultipartParam(Annotation[] annotations) {
+        if (annotations == null) {
+            return null;
         }
-        return resolveParameterizedValue(request, metadata, name, requiredType, annotations,
-                parameters);
+        for (final Annotation annotation : annotations) {
+            if (annotation instanceof MultipartParam) {
+                return (MultipartParam) annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * リクエストボディを読み込む前に、{@code Content-Length}とクライアントごとの予算を
+     * 検査します。
+     * @throws FileUploadFailureException {@code Content-Length}が上限を超えている場合
+     * @throws UploadRejectedException クライアントの予算を超えている場合
+     */
+    protected void checkQuota(RequestContext request, UploadQuota quota, FileUpload fileUpload) {
+        final long contentLength = request.getContentLength();
+        try {
+            quota.checkContentLength(contentLength, fileUpload.getSizeMax());
+        } catch (final SizeLimitExceededException e) {
+            getUploadMetrics().rejected();
+            log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000007", contentLength, e.getPermittedSize());
+            throw new FileUploadFailureException(e);
+        }
+        if (quota.hasPartLimits()) {
+            UploadQuota.put(request, quota);
+        }
+        final ClientUploadBudget budget = getClientBudget();
+        if (budget == null) {
+            return;
+        }
+        try {
+            budget.charge(request);
+        } catch (final UploadRejectedException e) {
+            getUploadMetrics().rejected();
+            log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000004", e, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * 全体の{@link UploadQuota}に、パラメータに付与された{@link MultipartParam}の
+     * 上限を組み合わせます。
+     */
+    protected UploadQuota resolveUploadQuota(InvocationMetadata metadata, Annotation[] annotations) {
+        return getUploadQuota().narrow(UploadQuota.of(findMultipartParam(annotations)));
+    }
+
+    protected UploadAdmissionController.Admission acquireAdmission(RequestContext request) {
+        final UploadAdmissionController controller = getAdmissionController();
+        if (controller == null) {
+            return null;
+        }
+        try {
+            return controller.acquire(request.getContentLength());
+        } catch (final UploadRejectedException e) {
+            getUploadMetrics().rejected();
+            log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000004", e, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * {@link #setProgressRegistry(UploadProgressRegistry)}が指定されている場合、
+     * リクエストの進捗の記録を開始します。<br/>
+     * {@link FileUploadFactory}により設定された{@link ProgressListener}にも、
+     * 引き続き進捗が通知されます。記録された進捗は、リクエストの処理の完了時に
+     * {@link MultipartCleanupProcessor}により削除されます。
+     */
+    protected UploadProgress startProgress(RequestContext request, FileUpload fileUpload) {
+        final UploadProgressRegistry registry = getProgressRegistry();
+        if (registry == null) {
+            return null;
+        }
+        final UploadProgress progress = registry.start(request);
+        final ProgressListener listener = fileUpload.getProgressListener();
+        if (listener == null) {
+            fileUpload.setProgressListener(progress);
+        } else {
+            fileUpload.setProgressListener(new CompositeProgressListener(listener, progress));
+        }
+        return progress;
+    }
+
+    /**
+     * リクエストの解析を実行します。<br/>
+     * {@link #setParsingExecutor(ExecutorService)}が指定されている場合、解析と一時ファイルへの
+     * 書き出しはその{@link ExecutorService}で実行されます。解析を待機しているスレッドが
+     * 割り込まれた場合、解析は取り消されます。{@link UploadAdmissionController.Admission}は
+     * 解析が実際に終了した時点で返却されます。
+     */
+    private MultipartParameters<Multipart> invokeParsing(
+            final UploadAdmissionController.Admission admission,
+            final Callable<MultipartParameters<Multipart>> parsing) {
+        final ExecutorService executor = getParsingExecutor();
+        if (executor == null) {
+            try {
+                return parsing.call();
+            } catch (final Exception e) {
+                return rethrow(e);
+            } finally {
+                release(admission);
+            }
+        }
+        // either the task or the caller releases the admission.
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        Future<MultipartParameters<Multipart>> future = null;
+        try {
+            future = executor.submit(new Callable<MultipartParameters<Multipart>>() {
+
+                @Override
+                public MultipartParameters<Multipart> call() throws Exception {
+                    if (claimed.compareAndSet(false, true) == false) {
+                        // cancelled before started.
+                        return null;
+                    }
+                    try {
+                        final MultipartParameters<Multipart> parameters = parsing.call();
+                        if (cancelled.get()) {
+                            // nobody receives parsed parameters.
+                            AbstractMultipartParameters.dispose(parameters);
+                        }
+                        return parameters;
+                    } finally {
+                        release(admission);
+                    }
+                }
+            });
+            return future.get();
+        } catch (final ExecutionException e) {
+            return rethrow(e.getCause());
+        } catch (final InterruptedException e) {
+            cancelled.set(true);
+            if (future.cancel(true) == false) {
+                disposeQuietly(future);
+            }
+            Thread.currentThread().interrupt();
+            throw new FileUploadFailureException(new InterruptedIOException());
+        } catch (final Exception e) {
+            return rethrow(e);
+        } finally {
+            if (claimed.compareAndSet(false, true)) {
+                release(admission);
+            }
+        }
+    }
+
+    private static void disposeQuietly(Future<MultipartParameters<Multipart>> completed) {
+        try {
+            final MultipartParameters<Multipart> parameters = completed.get();
+            if (parameters != null) {
+                AbstractMultipartParameters.dispose(parameters);
+            }
+        } catch (final ExecutionException e) {
+            // nothing to dispose.
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void release(UploadAdmissionController.Admission admission) {
+        if (admission != null) {
+            admission.release();
+        }
+    }
+
+    private <T> T rethrow(Throwable e) {
+        if (e instanceof FileUploadException) {
+            throw new FileUploadFailureException((FileUploadException) e);
+        } else if (e instanceof IOException) {
+            throw new FileUploadFailureException((IOException) e);
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new FileUploadFailureException(new IOException(e));
     }
 
     protected Object resolveParameterizedValue(RequestContext request, InvocationMetadata metadata,
             String name, Class<?> requiredType, Annotation[] annotations,
             MultipartParameters<Multipart> parameters) {
+        if (valueTypeOf(requiredType) == MultipartValueType.FUTURE) {
+            return resolveFutureValue(name, getRouteConfig(metadata, annotations), parameters);
+        }
+        final Object streamParameters = parameters;
+        if (streamParameters instanceof FileItemStreamMultipartParameters) {
+            return resolveStreamingValue(name, requiredType,
+                    (FileItemStreamMultipartParameters) streamParameters);
+        }
         final Multipart[] value = parameters.getMultiparts(name);
         if (ArrayUtils.isNotEmpty(value)) {
             log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000004", new Object[] { name, value });
-            if (isEqualsType(ClassUtils.forNameQuietly("[L" + File.class.getName() + ";"),
-                    requiredType)) {
+            final Multipart mp = value[0];
+            switch (valueTypeOf(requiredType)) {
+            case FILES:
                 final List<File> files = new ArrayList<File>();
-                for (final Multipart mp : value) {
+                for (final Multipart each : value) {
                     File f;
-                    if (mp instanceof FileItemMultipart
-                            && (f = ((FileItemMultipart) mp).getAsTemporalyFile()) != null) {
+                    if (each instanceof FileItemMultipart
+                            && (f = ((FileItemMultipart) each).getAsTemporalyFile()) != null) {
                         files.add(f);
                     }
                 }
                 return files.toArray(new File[files.size()]);
-            } else if (isEqualsType(
-                    ClassUtils.forNameQuietly("[L" + Multipart.class.getName() + ";"), requiredType)) {
+            case MULTIPARTS:
                 return value;
-            }
-            final Multipart mp = value[0];
-            if (isEqualsType(InputStream.class, requiredType)) {
+            case INPUT_STREAM:
                 return mp.getInputStream();
-            } else if (isEqualsType(File.class, requiredType)) {
+            case FILE:
                 File f;
                 if (mp instanceof FileItemMultipart
                         && (f = ((FileItemMultipart) mp).getAsTemporalyFile()) != null) {
                     return f;
                 }
-            } else if (isEqualsType(byte[].class, requiredType)) {
+                break;
+            case BYTES:
+                checkByteArraySize(name, mp);
                 return mp.getBytes();
-            } else if (isEqualsType(Multipart.class, requiredType)) {
+            case MULTIPART:
                 return mp;
-            } else {
+            default:
                 throw new UnsupportedParameterTypeException(name, requiredType);
             }
         }
         return super.resolveValue(request, metadata, name, requiredType, annotations);
     }
 
+    /**
+     * {@link Future}型のパラメータを解決します。<br/>
+     * バックグラウンドで書き出されている場合、{@link Future}は該当するパートの書き出しの
+     * 完了時に完了します。それ以外の場合は、既に完了した{@link Future}を返却します。
+     * 値の型は{@link Future}の型引数により{@link Multipart}、{@link File}、
+     * {@link InputStream}、{@code byte[]}から選択され、指定されていない場合は
+     * {@link Multipart}となります。
+     */
+    protected Object resolveFutureValue(final String name, UploadRouteConfig route,
+            final MultipartParameters<Multipart> parameters) {
+        final Class<?> futureType = route.getFutureType(name) == null ? Multipart.class : route
+                .getFutureType(name);
+        final MultipartValueType valueType = valueTypeOf(futureType);
+        switch (valueType) {
+        case MULTIPART:
+        case FILE:
+        case INPUT_STREAM:
+        case BYTES:
+            break;
+        default:
+            throw new UnsupportedParameterTypeException(name, futureType);
+        }
+        final PartProcessor<Object> processor = new PartProcessor<Object>() {
+
+            @Override
+            public Object process(Multipart part) {
+                return toFutureValue(name, valueType, part);
+            }
+        };
+        final Object current = parameters;
+        if (current instanceof SpoolingMultipartParameters) {
+            return ((SpoolingMultipartParameters) current).getFuture(name, processor);
+        }
+        final FutureTask<Object> completed = new FutureTask<Object>(new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                final Multipart part;
+                if (current instanceof FileItemStreamMultipartParameters) {
+                    part = ((FileItemStreamMultipartParameters) current).getFirstMultipart(name);
+                } else {
+                    final Multipart[] value = parameters.getMultiparts(name);
+                    part = ArrayUtils.isNotEmpty(value) ? value[0] : null;
+                }
+                return part == null ? null : processor.process(part);
+            }
+        });
+        completed.run();
+        return completed;
+    }
+
+    private Object toFutureValue(String name, MultipartValueType valueType, Multipart part) {
+        switch (valueType) {
+        case FILE:
+            if (part instanceof FileItemMultipart) {
+                return ((FileItemMultipart) part).getAsTemporalyFile();
+            }
+            return null;
+        case INPUT_STREAM:
+            return part.getInputStream();
+        case BYTES:
+            checkByteArraySize(name, part);
+            return part.getBytes();
+        default:
+            return part;
+        }
+    }
+
+    /**
+     * 逐次的に読み出されるパートから、最初に出現した該当パートを
+     * {@link Multipart}または{@link InputStream}として解決します。
+     * @throws UnsupportedParameterTypeException パートが存在しないか、解決できない型の場合
+     */
+    protected Object resolveStreamingValue(String name, Class<?> requiredType,
+            FileItemStreamMultipartParameters parameters) {
+        final FileItemStreamMultipart mp = parameters.getFirstMultipart(name);
+        if (mp != null) {
+            final MultipartValueType valueType = valueTypeOf(requiredType);
+            if (valueType == MultipartValueType.MULTIPART) {
+                return mp;
+            } else if (valueType == MultipartValueType.INPUT_STREAM) {
+                return mp.getInputStream();
+            }
+        }
+        throw new UnsupportedParameterTypeException(name, requiredType);
+    }
+
+    private void checkByteArraySize(String name, Multipart mp) {
+        final long limit = getMaxByteArraySize();
+        if (limit < 0) {
+            return;
+        }
+        long size = -1;
+        if (mp instanceof FileItemMultipart) {
+            size = ((FileItemMultipart) mp).getSize();
+        } else if (mp instanceof ByteBufferMultipart) {
+            size = ((ByteBufferMultipart) mp).getSize();
+        }
+        if (size > limit) {
+            log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000005", name, size, limit);
+            throw new FileUploadFailureException(new FileSizeLimitExceededException(
+                    String.format("parameter [%s] (%s) exceeds byte[] resolution limit (%s)",
+                            name, size, limit), size, limit));
+        }
+    }
+
     protected boolean isMultipartContentOnCurrentRequest(RequestContext request) {
         final String method = request.getRequestMethod();
         if (StringUtils.isEmpty(method) || method.equalsIgnoreCase("POST") == false) {
@@ -137,28 +748,278 @@ public class MultipartParameterResolver extends ParameterValueResolver implement
         return this.defaultEncoding;
     }
 
+    /**
+     * {@link UploadStrategy#DEFAULT}が指定されたエンドポイントのリクエストを解析します。<br/>
+     * デフォルトでは、{@link UploadStrategy#SPOOLING}として解析されます。
+     */
     @SuppressWarnings("unchecked")
     protected <T extends Multipart> MultipartParameters<T> createMultipartParameters(
             RequestContext request, org.apache.commons.fileupload.RequestContext context,
             FileUpload fileUpload, String resolvedEncoding) throws FileUploadException, IOException {
-        final List<FileItem> fileItems = fileUpload.parseRequest(context);
+        return (MultipartParameters<T>) createSpooledMultipartParameters(request, context,
+                fileUpload, resolvedEncoding);
+    }
+
+    protected FileItemMultipartParameters createSpooledMultipartParameters(RequestContext request,
+            org.apache.commons.fileupload.RequestContext context, FileUpload fileUpload,
+            String resolvedEncoding) throws FileUploadException, IOException {
+        final PartLimiter limiter = PartLimiter.of(UploadQuota.get(request));
+        final List<FileItem> fileItems = limiter == null ? fileUpload.parseRequest(context)
+                : FileItemParser.parse(fileUpload, context, limiter);
         log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000003", fileItems.size());
-        return (MultipartParameters<T>) new FileItemMultipartParameters(fileItems, resolvedEncoding);
+        getUploadMetrics().partsParsed(fileItems.size());
+        return new FileItemMultipartParameters(fileItems, resolvedEncoding);
+    }
+
+    /**
+     * {@link MultipartBufferParser}により、リクエストボディ全体をメモリ上で解析します。
+     * @see MultipartParameterBufferResolver
+     */
+    protected ByteBufferMultipartParameters createBufferedMultipartParameters(
+            RequestContext request, org.apache.commons.fileupload.RequestContext context,
+            FileUpload fileUpload, String resolvedEncoding) throws FileUploadException, IOException {
+        final byte[] boundary = getBoundary(context.getContentType());
+        if (boundary == null) {
+            throw new FileUploadException(
+                    "the request was rejected because no multipart boundary was found");
+        }
+        final long sizeMax = fileUpload.getSizeMax() >= 0 ? fileUpload.getSizeMax()
+                : getMaxBufferedSize();
+        final ByteBuffer body = readBody(context, sizeMax);
+        final String headerEncoding = StringUtils.isNotEmpty(fileUpload.getHeaderEncoding()) ? fileUpload
+                .getHeaderEncoding() : resolvedEncoding;
+        final List<ByteBufferMultipart> parts = new MultipartBufferParser(boundary,
+                headerEncoding).parse(body);
+        final PartLimiter limiter = PartLimiter.of(UploadQuota.get(request));
+        final long fileSizeMax = fileUpload.getFileSizeMax();
+        for (final ByteBufferMultipart part : parts) {
+            if (limiter != null) {
+                limiter.check(part.getName(), part.getHeaders());
+            }
+            if (fileSizeMax >= 0 && part.getSize() > fileSizeMax) {
+                // same as the limit applied to each item by FileUploadBase.
+                final FileSizeLimitExceededException e = new FileSizeLimitExceededException(
+                        String.format("The field %s exceeds its maximum permitted size of %s bytes.",
+                                part.getName(), fileSizeMax), part.getSize(), fileSizeMax);
+                e.setFieldName(part.getName());
+                e.setFileName(part.getResourceName());
+                throw e;
+            }
+        }
+        log.log(PLUGIN_MESSAGE_RESOURCE, "TACF000010", parts.size(), body.remaining());
+        getUploadMetrics().partsParsed(parts.size());
+        return new ByteBufferMultipartParameters(parts, resolvedEncoding);
+    }
+
+    /**
+     * リクエストボディを逐次的に読み出す{@link FileItemStreamMultipartParameters}を
+     * 生成します。
+     * @see MultipartParameterStreamResolver
+     */
+    protected FileItemStreamMultipartParameters createStreamingMultipartParameters(
+            RequestContext request, org.apache.commons.fileupload.RequestContext context,
+            FileUpload fileUpload, String resolvedEncoding) throws FileUploadException, IOException {
+        FileItemIterator iterator = fileUpload.getItemIterator(context);
+        final PartLimiter limiter = PartLimiter.of(UploadQuota.get(request));
+        if (limiter != null) {
+            iterator = limiter.limit(iterator);
+        }
+        final FileItemStreamMultipartParameters parameters = new FileItemStreamMultipartParameters(
+                iterator, resolvedEncoding);
+        if (getMaxByteArraySize() >= 0) {
+            parameters.setMaxExtractSize(getMaxByteArraySize());
+        }
+        return parameters;
+    }
+
+    protected byte[] getBoundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        final ParameterParser parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        final Map<String, String> params = parser.parse(contentType, new char[] { ';', ',' });
+        final String boundary = params.get("boundary");
+        if (StringUtils.isEmpty(boundary)) {
+            return null;
+        }
+        try {
+            return boundary.getBytes("ISO-8859-1");
+        } catch (final UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    protected ByteBuffer readBody(org.apache.commons.fileupload.RequestContext context,
+            long sizeMax) throws IOException, SizeLimitExceededException {
+        final long contentLength = context instanceof UploadContext ? ((UploadContext) context)
+                .contentLength() : context.getContentLength();
+        if (sizeMax >= 0 && contentLength > sizeMax) {
+            throw new SizeLimitExceededException(String.format(
+                    "the request was rejected because its size (%s) exceeds the configured maximum (%s)",
+                    contentLength, sizeMax), contentLength, sizeMax);
+        }
+        byte[] buffer = new byte[contentLength > 0 && contentLength < Integer.MAX_VALUE ? (int) contentLength
+                : DEFAULT_BUFFER_SIZE];
+        int length = 0;
+        final InputStream in = context.getInputStream();
+        try {
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (sizeMax >= 0 && length > sizeMax) {
+                    throw new SizeLimitExceededException(String.format(
+                            "the request was rejected because its size exceeds the configured maximum (%s)",
+                            sizeMax), length, sizeMax);
+                }
+                if (length == buffer.length) {
+                    if (contentLength > 0 && length == contentLength) {
+                        break;
+                    }
+                    final long capacity = Math.min((long) buffer.length * 2,
+                            sizeMax >= 0 ? sizeMax + 1 : Integer.MAX_VALUE - 8);
+                    if (capacity <= buffer.length) {
+                        throw new SizeLimitExceededException(String.format(
+                                "the request was rejected because its size exceeds the buffer limit (%s)",
+                                buffer.length), length, buffer.length);
+                    }
+                    final byte[] extended = new byte[(int) capacity];
+                    System.arraycopy(buffer, 0, extended, 0, length);
+                    buffer = extended;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return ByteBuffer.wrap(buffer, 0, length);
     }
 
+    /**
+     * {@link org.apache.commons.fileupload.RequestContext}を生成します。<br/>
+     * {@link ClientUploadBudget}が指定されている場合、{@code Content-Length}が不明な
+     * リクエストボディは読み込まれたバイト数が計上されます。
+     */
     protected org.apache.commons.fileupload.RequestContext createRequestContext(
-            RequestContext request) {
-        return new AnalogwebRequestContext(request);
+            final RequestContext request) {
+        final ClientUploadBudget budget = getClientBudget();
+        if (budget == null || request.getContentLength() >= 0) {
+            return new AnalogwebRequestContext(request, getContentDecoder());
+        }
+        // resolved here, the body may be read after the request has completed.
+        final String clientKey = budget.resolveClientKey(request);
+        return new AnalogwebRequestContext(request, getContentDecoder()) {
+
+            @Override
+            protected InputStream getRequestBody() throws IOException {
+                return budget.meter(clientKey, super.getRequestBody());
+            }
+        };
     }
 
     protected FileItemFactory getFileItemFactory() {
         return this.fileItemFactory;
     }
 
-    protected FileItemFactory createFileItemFactory() {
-        File tmpDir = ApplicationPropertiesHolder.current()
-                .getTempDir();
-        if (tmpDir.exists() == false) {
+    /**
+     * {@link UploadRouteConfig}に従って、リクエストの解析に使用する{@link FileUpload}を
+     * 取得します。<br/>
+     * エンドポイント固有の設定が存在しない場合は、全てのリクエストで共有される
+     * {@link FileUpload}を使用します。
+     */
+    protected FileUpload getFileUpload(UploadRouteConfig route) {
+        final UploadQuota quota = route.getQuota();
+        if (getProgressRegistry() != null) {
+            // ProgressListener is bound to each request.
+            final FileUpload fileUpload = getFileUpload(getFileItemFactory(route));
+            quota.applyTo(fileUpload);
+            return fileUpload;
+        }
+        if (route.hasSpoolingConfig() == false && quota.narrows(getSharedFileUpload()) == false) {
+            return getSharedFileUpload();
+        }
+        FileUpload fileUpload = route.getFileUpload();
+        if (fileUpload == null) {
+            fileUpload = getFileUpload(getFileItemFactory(route));
+            quota.applyTo(fileUpload);
+            route.setFileUpload(fileUpload);
+        }
+        return fileUpload;
+    }
+
+    /**
+     * {@link UploadConfig#sizeThreshold()}または{@link UploadConfig#repository()}が
+     * 指定されたエンドポイントには、固有の{@link FileItemFactory}を生成します。<br/>
+     * エンドポイント固有のディレクトリは、{@link #setSpoolSweeper(SpoolSweeper)}により
+     * 指定された{@link SpoolSweeper}の対象に追加されます。
+     */
+    protected FileItemFactory getFileItemFactory(UploadRouteConfig route) {
+        if (route.hasSpoolingConfig() == false) {
+            return getFileItemFactory();
+        }
+        FileItemFactory factory = route.getFileItemFactory();
+        if (factory == null) {
+            final File repository = route.getRepository();
+            if (repository != null) {
+                prepareRepository(repository);
+                if (getSpoolSweeper() != null) {
+                    getSpoolSweeper().addDirectory(repository);
+                }
+            }
+            factory = deriveFileItemFactory(getFileItemFactory(), route);
+            route.setFileItemFactory(factory);
+        }
+        return factory;
+    }
+
+    /**
+     * 全てのリクエストで共有される{@link FileItemFactory}から、エンドポイント固有の
+     * {@link FileItemFactory}を生成します。<br/>
+     * エンドポイントに指定されていない設定は、共有される{@link FileItemFactory}から
+     * 引き継がれます。設定を適用できない{@link FileItemFactory}は、そのまま使用されます。
+     * @param shared 全てのリクエストで共有される{@link FileItemFactory}
+     * @param route {@link UploadRouteConfig}
+     * @return {@link FileItemFactory}
+     */
+    protected FileItemFactory deriveFileItemFactory(FileItemFactory shared,
+            UploadRouteConfig route) {
+        final int sizeThreshold = route.getSizeThreshold();
+        final File repository = route.getRepository();
+        if (shared instanceof DigestingFileItemFactory) {
+            final DigestingFileItemFactory digesting = (DigestingFileItemFactory) shared;
+            return digesting.derive(deriveFileItemFactory(digesting.getDelegate(), route));
+        } else if (shared instanceof TrackedDiskFileItemFactory) {
+            return ((TrackedDiskFileItemFactory) shared).derive(sizeThreshold, repository);
+        } else if (shared instanceof PooledFileItemFactory) {
+            return ((PooledFileItemFactory) shared).derive(sizeThreshold, repository);
+        } else if (shared instanceof DiskFileItemFactory) {
+            final DiskFileItemFactory disk = (DiskFileItemFactory) shared;
+            final DiskFileItemFactory derived = new DiskFileItemFactory(
+                    sizeThreshold >= 0 ? sizeThreshold : disk.getSizeThreshold(),
+                    repository != null ? repository : disk.getRepository());
+            derived.setFileCleaningTracker(disk.getFileCleaningTracker());
+            return derived;
+        } else if (shared == null) {
+            return createFileItemFactory(sizeThreshold >= 0 ? sizeThreshold
+                    : DiskFileItemFactory.DEFAULT_SIZE_THRESHOLD, repository != null ? repository
+                    : ApplicationPropertiesHolder.current().getTempDir());
+        }
+        log.log(CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RESOURCE, "WACF000009", shared
+                .getClass().getName());
+        return shared;
+    }
+
+    protected FileItemFactory createFileItemFactory(int sizeThreshold, File repository) {
+        prepareRepository(repository);
+        final DiskFileItemFactory factory = new MeteredDiskFileItemFactory(sizeThreshold,
+                repository, getUploadMetrics());
+        // temp files are deleted on request completion by MultipartCleanupProcessor.
+        // the tracker deletes them in case the processor is not installed.
+        factory.setFileCleaningTracker(SharedFileCleaningTracker.INSTANCE);
+        return factory;
+    }
+
+    private void prepareRepository(File tmpDir) {
+        if (tmpDir != null && tmpDir.exists() == false) {
             try {
                 boolean created = tmpDir.mkdirs();
                 if (created == false) {
@@ -170,10 +1031,25 @@ public class MultipartParameterResolver extends ParameterValueResolver implement
                         tmpDir.getPath());
             }
         }
-        final DiskFileItemFactory factory = new DiskFileItemFactory(
-                DiskFileItemFactory.DEFAULT_SIZE_THRESHOLD, tmpDir);
-        factory.setFileCleaningTracker(new FileCleaningTracker());
-        return factory;
+    }
+
+    protected FileItemFactory createFileItemFactory() {
+        final File tmpDir = ApplicationPropertiesHolder.current().getTempDir();
+        return createFileItemFactory(DiskFileItemFactory.DEFAULT_SIZE_THRESHOLD, tmpDir);
+    }
+
+    /**
+     * 全てのリクエストで共有される{@link FileUpload}を取得します。<br/>
+     * {@link FileUpload}は設定後に変更されないため、リクエストごとの
+     * {@link ProgressListener}を必要としない場合は同じインスタンスを再利用します。
+     */
+    protected FileUpload getSharedFileUpload() {
+        FileUpload upload = this.sharedFileUpload;
+        if (upload == null) {
+            upload = getFileUpload(getFileItemFactory());
+            this.sharedFileUpload = upload;
+        }
+        return upload;
     }
 
     protected FileUpload getFileUpload(FileItemFactory fileItemFactory) {
@@ -184,18 +1060,229 @@ public class MultipartParameterResolver extends ParameterValueResolver implement
         }
     }
 
-    private boolean isEqualsType(Class<?> clazz, Class<?> other) {
+    MultipartValueType valueTypeOf(Class<?> requiredType) {
+        if (requiredType == null) {
+            return MultipartValueType.OTHER;
+        }
+        MultipartValueType valueType = valueTypes.get(requiredType);
+        if (valueType == null) {
+            valueType = MultipartValueType.of(requiredType);
+            valueTypes.put(requiredType, valueType);
+        }
+        return valueType;
+    }
+
+    protected boolean isEqualsType(Class<?> clazz, Class<?> other) {
         if (clazz == null || other == null) {
             return false;
         }
         return (clazz == other) || clazz.getCanonicalName().equals(other.getCanonicalName());
     }
 
+    protected ExecutorService getParsingExecutor() {
+        return this.parsingExecutor;
+    }
+
+    /**
+     * バックグラウンドでの書き出しに使用する{@link ExecutorService}を取得します。<br/>
+     * 指定されていない場合は{@link #getParsingExecutor()}を、それも指定されていない場合は
+     * 共有のデーモンスレッドのプールを使用します。共有のプールのスレッド数と待機できる
+     * 書き出しの数には上限があり、上限を超えたアップロードは拒否されます。
+     */
+    protected ExecutorService getSpoolingExecutor() {
+        if (this.spoolingExecutor != null) {
+            return this.spoolingExecutor;
+        }
+        final ExecutorService parsing = getParsingExecutor();
+        return parsing != null ? parsing : SharedSpoolingExecutor.INSTANCE;
+    }
+
+    protected UploadAdmissionController getAdmissionController() {
+        return this.admissionController;
+    }
+
+    public UploadMetrics getUploadMetrics() {
+        return this.uploadMetrics;
+    }
+
+    protected long getMaxBufferedSize() {
+        return this.maxBufferedSize;
+    }
+
+    protected long getMaxByteArraySize() {
+        return this.maxByteArraySize;
+    }
+
+    protected UploadQuota getUploadQuota() {
+        return this.uploadQuota;
+    }
+
+    protected ClientUploadBudget getClientBudget() {
+        return this.clientBudget;
+    }
+
+    protected ContentDecoder getContentDecoder() {
+        return this.contentDecoder;
+    }
+
+    public UploadProgressRegistry getProgressRegistry() {
+        return this.progressRegistry;
+    }
+
+    /**
+     * {@link FileItemFactory}を指定します。<br/>
+     * {@link TrackedDiskFileItemFactory}に{@link UploadMetrics}が指定されていない場合、
+     * {@link #getUploadMetrics()}に記録されます。
+     */
     public void setFileItemFactory(FileItemFactory fileItemFactory) {
+        if (fileItemFactory instanceof TrackedDiskFileItemFactory
+                && ((TrackedDiskFileItemFactory) fileItemFactory).getMetrics() == null) {
+            ((TrackedDiskFileItemFactory) fileItemFactory).setMetrics(getUploadMetrics());
+        }
         this.fileItemFactory = fileItemFactory;
+        this.sharedFileUpload = null;
+        this.routes.clear();
     }
 
     public void setFileUploadFactory(FileUploadFactory<? extends FileUpload> fileUploadFactory) {
         this.fileUploadFactory = fileUploadFactory;
+        this.sharedFileUpload = null;
+        this.routes.clear();
+    }
+
+    /**
+     * リクエストの解析に使用する{@link ExecutorService}を指定します。<br/>
+     * 指定しない場合、リクエストを処理しているスレッドで解析されます。
+     */
+    public void setParsingExecutor(ExecutorService parsingExecutor) {
+        this.parsingExecutor = parsingExecutor;
+    }
+
+    /**
+     * {@link Future}型のパラメータを解決する際に、バックグラウンドでパートを書き出す
+     * {@link ExecutorService}を指定します。<br/>
+     * 同時に処理するアップロードの数は{@link UploadAdmissionController}により
+     * 制限してください。
+     */
+    public void setSpoolingExecutor(ExecutorService spoolingExecutor) {
+        this.spoolingExecutor = spoolingExecutor;
+    }
+
+    /**
+     * 同時に処理するアップロードを制限する{@link UploadAdmissionController}を指定します。
+     */
+    public void setAdmissionController(UploadAdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * リクエストボディをメモリ上に読み込んで解析する場合に、{@link FileUpload#getSizeMax()}が
+     * 無制限であれば適用されるリクエストボディの最大バイト数を指定します。<br/>
+     * デフォルトは{@value #DEFAULT_MAX_BUFFERED_SIZE}バイトです。
+     */
+    public void setMaxBufferedSize(long maxBufferedSize) {
+        this.maxBufferedSize = maxBufferedSize;
+    }
+
+    /**
+     * {@code byte[]}として解決可能なパラメータの最大バイト数を指定します。<br/>
+     * 上限を超えるパラメータは解決されず、{@link FileUploadFailureException}となります。
+     * 大きなパラメータには{@link MappableMultipart}や{@link TransferableMultipart}を
+     * 使用してください。{@code -1}(デフォルト)で無制限です。
+     */
+    public void setMaxByteArraySize(long maxByteArraySize) {
+        this.maxByteArraySize = maxByteArraySize;
+    }
+
+    /**
+     * {@code Content-Encoding}が指定されたリクエストボディを展開する{@link ContentDecoder}を
+     * 指定します。<br/>
+     * {@code null}を指定すると、リクエストボディは展開されません。
+     */
+    public void setContentDecoder(ContentDecoder contentDecoder) {
+        this.contentDecoder = contentDecoder;
+    }
+
+    /**
+     * 全てのリクエストに適用される{@link UploadQuota}を指定します。<br/>
+     * {@link MultipartParam}により上限が指定されたパラメータでは、それぞれ厳しい方の
+     * 上限が適用されます。
+     */
+    public void setUploadQuota(UploadQuota uploadQuota) {
+        this.uploadQuota = uploadQuota == null ? UploadQuota.UNLIMITED : uploadQuota;
+        this.routes.clear();
+    }
+
+    protected SpoolSweeper getSpoolSweeper() {
+        return this.spoolSweeper;
+    }
+
+    /**
+     * 古い一時ファイルを削除する{@link SpoolSweeper}を指定します。<br/>
+     * エンドポイント固有の一時ファイルのディレクトリは、この{@link SpoolSweeper}の対象に
+     * 追加されます。削除の開始と停止は、{@link SpoolSweeper}に対して行います。
+     */
+    public void setSpoolSweeper(SpoolSweeper spoolSweeper) {
+        this.spoolSweeper = spoolSweeper;
+    }
+
+    /**
+     * クライアントごとのアップロードの予算を管理する{@link ClientUploadBudget}を指定します。<br/>
+     * 指定しない場合、予算は管理されません。
+     */
+    public void setClientBudget(ClientUploadBudget clientBudget) {
+        this.clientBudget = clientBudget;
+    }
+
+    /**
+     * アップロードの進捗を記録する{@link UploadProgressRegistry}を指定します。<br/>
+     * 指定しない場合、進捗は記録されません。
+     */
+    public void setProgressRegistry(UploadProgressRegistry progressRegistry) {
+        this.progressRegistry = progressRegistry;
+    }
+
+    /**
+     * 計測値を記録する{@link UploadMetrics}を指定します。<br/>
+     * デフォルトでは{@link InMemoryUploadMetrics}に記録されます。
+     */
+    public void setUploadMetrics(UploadMetrics uploadMetrics) {
+        this.uploadMetrics = uploadMetrics;
+        if (this.fileItemFactory instanceof TrackedDiskFileItemFactory) {
+            ((TrackedDiskFileItemFactory) this.fileItemFactory).setMetrics(uploadMetrics);
+        }
+    }
+
+    private static final class SharedFileCleaningTracker {
+
+        static final FileCleaningTracker INSTANCE = new FileCleaningTracker();
+    }
+
+    private static final class SharedSpoolingExecutor {
+
+        static final int MAX_THREADS = Math.max(8,
+                Runtime.getRuntime().availableProcessors() * 4);
+        static final int MAX_QUEUED = MAX_THREADS * 4;
+        static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            // rejected uploads are reported by spoolMultipartParameters.
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(MAX_QUEUED),
+                    new ThreadFactory() {
+
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            final Thread thread = new Thread(r, "multipart-spooling-"
+                                    + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
     }
 }
@@ -1,6 +1,7 @@
 package org.analogweb.acf;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 
 import org.analogweb.InvocationMetadata;
@@ -10,23 +11,71 @@ import org.apache.commons.fileupload.FileUpload;
 import org.apache.commons.fileupload.FileUploadException;
 
 /**
+ * リクエストボディを逐次的に読み出す{@link MultipartParameterResolver}です。<br/>
+ * {@link Multipart}及び{@link InputStream}型のパラメータには、最初に出現した該当パートが
+ * メモリ上に展開されることなく、ストリームのまま解決されます。このストリームは、
+ * 以降のパートが読み出されるまでの間のみ有効です。
  * @author snowgooseyk
  */
 public class MultipartParameterStreamResolver extends MultipartParameterResolver {
 
+    private String[] digestAlgorithms;
+
     @Override
     protected Object resolveParameterizedValue(RequestContext request, InvocationMetadata metadata,
             String name, Class<?> requiredType, Annotation[] annotations,
             MultipartParameters<Multipart> parameters) {
+        final Object streamParameters = parameters;
+        if (valueTypeOf(requiredType) == MultipartValueType.FUTURE) {
+            return super.resolveParameterizedValue(request, metadata, name, requiredType,
+                    annotations, parameters);
+        }
+        if (streamParameters instanceof FileItemStreamMultipartParameters) {
+            return resolveStreamingValue(name, requiredType,
+                    (FileItemStreamMultipartParameters) streamParameters);
+        }
+        if (getRouteConfig(metadata, annotations).getStrategy() != UploadStrategy.DEFAULT) {
+            // parsed by the strategy specified on the route.
+            return super.resolveParameterizedValue(request, metadata, name, requiredType,
+                    annotations, parameters);
+        }
         throw new UnsupportedParameterTypeException(name, requiredType);
     }
 
+    @Override
+    protected boolean isSpoolingStrategy(UploadRouteConfig route) {
+        return route.getStrategy() == UploadStrategy.SPOOLING;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     protected <T extends Multipart> MultipartParameters<T> createMultipartParameters(
             RequestContext request, org.apache.commons.fileupload.RequestContext context,
             FileUpload fileUpload, String resolvedEncoding) throws FileUploadException, IOException {
-        return (MultipartParameters<T>) new FileItemStreamMultipartParameters(
-                fileUpload.getItemIterator(context), resolvedEncoding);
+        return (MultipartParameters<T>) createStreamingMultipartParameters(request, context,
+                fileUpload, resolvedEncoding);
+    }
+
+    @Override
+    protected FileItemStreamMultipartParameters createStreamingMultipartParameters(
+            RequestContext request, org.apache.commons.fileupload.RequestContext context,
+            FileUpload fileUpload, String resolvedEncoding) throws FileUploadException, IOException {
+        final FileItemStreamMultipartParameters parameters = super
+                .createStreamingMultipartParameters(request, context, fileUpload,
+                        resolvedEncoding);
+        if (this.digestAlgorithms != null) {
+            parameters.setDigestAlgorithms(this.digestAlgorithms);
+        }
+        return parameters;
+    }
+
+    /**
+     * ファイルパラメータの読み込みの過程で算出するダイジェストのアルゴリズムを指定します。
+     * @see FileItemStreamMultipartParameters#setDigestAlgorithms(String...)
+     */
+    public void setDigestAlgorithms(String... digestAlgorithms) {
+        // fail fast on unknown algorithm.
+        new PartDigester(digestAlgorithms);
+        this.digestAlgorithms = digestAlgorithms.clone();
     }
 }
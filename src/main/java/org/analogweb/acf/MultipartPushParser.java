@@ -0,0 +1,235 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import org.analogweb.util.StringUtils;
+import org.apache.commons.fileupload.MultipartStream.MalformedStreamException;
+import org.apache.commons.fileupload.util.FileItemHeadersImpl;
+
+/**
+ * 任意の単位に分割されたリクエストボディを逐次的に受け取り、解析結果を
+ * {@link MultipartEventHandler}へ通知するプッシュ型のパーサーです。<br/>
+ * 入力を待ってスレッドをブロックすることがないため、ノンブロッキングな
+ * {@link ReadableByteChannel}から読み込んだデータをそのまま渡すことが可能です。
+ * 境界が入力の区切りをまたぐ場合に備え、未処理のデータは内部のバッファに保持されます。
+ * @author snowgoose
+ */
+public class MultipartPushParser {
+
+    private static final int HEADER_PART_SIZE_MAX = 10240;
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final byte CR = 0x0D;
+    private static final byte LF = 0x0A;
+    private static final byte DASH = 0x2D;
+
+    private enum State {
+        PREAMBLE, DELIMITER, HEADERS, BODY, EPILOGUE
+    }
+
+    private final BoundaryFinder delimiter;
+    private final BoundaryFinder headerTerminator = new BoundaryFinder(new byte[] { CR, LF, CR,
+            LF });
+    private final MultipartEventHandler handler;
+    private final String headerEncoding;
+    private ByteBuffer pending;
+    private State state = State.PREAMBLE;
+
+    public MultipartPushParser(byte[] boundary, String headerEncoding,
+            MultipartEventHandler handler) {
+        final byte[] pattern = new byte[boundary.length + 4];
+        pattern[0] = CR;
+        pattern[1] = LF;
+        pattern[2] = DASH;
+        pattern[3] = DASH;
+        System.arraycopy(boundary, 0, pattern, 4, boundary.length);
+        this.delimiter = new BoundaryFinder(pattern);
+        this.headerEncoding = StringUtils.isNotEmpty(headerEncoding) ? headerEncoding
+                : PartHeaders.DEFAULT_HEADER_ENCODING;
+        this.handler = handler;
+        this.pending = ByteBuffer.allocate(Math.max(INITIAL_BUFFER_SIZE, pattern.length * 2));
+        // the first boundary is not preceded by CRLF.
+        this.pending.put(CR).put(LF);
+        this.pending.flip();
+    }
+
+    /**
+     * リクエストボディの一部を解析します。<br/>
+     * 指定された{@link ByteBuffer}の残りの内容はすべて消費されます。
+     * @param chunk リクエストボディの一部
+     * @throws MalformedStreamException リクエストボディの形式が不正である場合
+     */
+    public void feed(ByteBuffer chunk) throws MalformedStreamException {
+        if (this.state == State.EPILOGUE) {
+            chunk.position(chunk.limit());
+            return;
+        }
+        append(chunk);
+        boolean progress = true;
+        while (progress) {
+            switch (this.state) {
+            case PREAMBLE:
+                progress = skipPreamble();
+                break;
+            case DELIMITER:
+                progress = readDelimiterSuffix();
+                break;
+            case HEADERS:
+                progress = readHeaders();
+                break;
+            case BODY:
+                progress = readBody();
+                break;
+            default:
+                progress = false;
+            }
+        }
+    }
+
+    /**
+     * {@link ReadableByteChannel}から読み込み可能なデータを読み込み、解析します。<br/>
+     * ノンブロッキングモードの{@link java.nio.channels.SelectableChannel}の場合、
+     * 読み込み可能なデータが無ければ{@code 0}を返却します。
+     * @param channel 読み込み対象の{@link ReadableByteChannel}
+     * @param buffer 読み込みに使用するバッファ
+     * @return 読み込んだバイト数。終端に達した場合は{@code -1}
+     * @throws IOException 読み込みに失敗した場合、またはリクエストボディの形式が不正である場合
+     */
+    public int read(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        final int read = channel.read(buffer);
+        if (read < 0) {
+            complete();
+            return read;
+        }
+        buffer.flip();
+        feed(buffer);
+        return read;
+    }
+
+    /**
+     * リクエストボディの終端に達したことを通知します。
+     * @throws MalformedStreamException 終端の境界が検出されていない場合
+     */
+    public void complete() throws MalformedStreamException {
+        if (isComplete() == false) {
+            throw new MalformedStreamException("Stream ended unexpectedly");
+        }
+    }
+
+    public boolean isComplete() {
+        return this.state == State.EPILOGUE;
+    }
+
+    private void append(ByteBuffer chunk) {
+        this.pending.compact();
+        if (this.pending.remaining() < chunk.remaining()) {
+            final ByteBuffer extended = ByteBuffer.allocate(Math.max(this.pending.capacity() * 2,
+                    this.pending.position() + chunk.remaining()));
+            this.pending.flip();
+            extended.put(this.pending);
+            this.pending = extended;
+        }
+        this.pending.put(chunk);
+        this.pending.flip();
+    }
+
+    private boolean skipPreamble() {
+        final int found = this.delimiter.indexOf(pending, pending.position(), pending.limit());
+        if (found >= 0) {
+            pending.position(found + delimiter.length());
+            this.state = State.DELIMITER;
+            return true;
+        }
+        pending.position(Math.max(pending.position(), pending.limit() - delimiter.length() + 1));
+        return false;
+    }
+
+    private boolean readDelimiterSuffix() throws MalformedStreamException {
+        final int from = pending.position();
+        final int limit = pending.limit();
+        if (limit - from < 2) {
+            return false;
+        }
+        if (pending.get(from) == DASH && pending.get(from + 1) == DASH) {
+            // close delimiter.
+            pending.position(limit);
+            this.state = State.EPILOGUE;
+            this.handler.onComplete();
+            return false;
+        }
+        int i = from;
+        // skip transport padding.
+        while (i < limit && (pending.get(i) == ' ' || pending.get(i) == '\t')) {
+            i++;
+        }
+        if (i + 1 >= limit) {
+            return false;
+        }
+        if (pending.get(i) != CR || pending.get(i + 1) != LF) {
+            throw new MalformedStreamException("Unexpected characters follow a boundary");
+        }
+        pending.position(i + 2);
+        this.state = State.HEADERS;
+        return true;
+    }
+
+    private boolean readHeaders() throws MalformedStreamException {
+        final int from = pending.position();
+        final int limit = pending.limit();
+        if (limit - from < 2) {
+            return false;
+        }
+        if (pending.get(from) == CR && pending.get(from + 1) == LF) {
+            // no headers.
+            this.handler.onPartStart(new FileItemHeadersImpl());
+            pending.position(from + 2);
+            this.state = State.BODY;
+            return true;
+        }
+        final int found = this.headerTerminator.indexOf(pending, from, limit);
+        if (found < 0) {
+            if (limit - from > HEADER_PART_SIZE_MAX) {
+                throw new MalformedStreamException(String.format(
+                        "Header section has more than %s bytes (maybe it is not properly terminated)",
+                        HEADER_PART_SIZE_MAX));
+            }
+            return false;
+        }
+        this.handler.onPartStart(PartHeaders.parse(pending, from, found + 2, headerEncoding));
+        pending.position(found + 4);
+        this.state = State.BODY;
+        return true;
+    }
+
+    private boolean readBody() {
+        final int from = pending.position();
+        final int limit = pending.limit();
+        final int found = this.delimiter.indexOf(pending, from, limit);
+        if (found >= 0) {
+            emit(from, found);
+            this.handler.onPartEnd();
+            pending.position(found + delimiter.length());
+            this.state = State.DELIMITER;
+            return true;
+        }
+        // retain bytes that may be a part of the delimiter.
+        final int safe = limit - delimiter.length() + 1;
+        if (safe > from) {
+            emit(from, safe);
+            pending.position(safe);
+        }
+        return false;
+    }
+
+    private void emit(int from, int to) {
+        if (to <= from) {
+            return;
+        }
+        final ByteBuffer data = this.pending.asReadOnlyBuffer();
+        data.limit(to);
+        data.position(from);
+        this.handler.onPartData(data);
+    }
+}
@@ -0,0 +1,41 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.Future;
+
+import org.analogweb.Multipart;
+
+/**
+ * {@link MultipartParameterResolver}が解決する値の型の分類です。<br/>
+ * 型の比較はクラスの正規名により行われるため、分類した結果は型ごとに
+ * キャッシュして使用します。
+ * @author snowgoose
+ */
+enum MultipartValueType {
+
+    ITERABLE(Iterable.class), FILES(File[].class), MULTIPARTS(Multipart[].class), INPUT_STREAM(
+            InputStream.class), FILE(File.class), BYTES(byte[].class), MULTIPART(Multipart.class), FUTURE(
+            Future.class), OTHER(null);
+
+    private final Class<?> type;
+
+    private MultipartValueType(Class<?> type) {
+        this.type = type;
+    }
+
+    static MultipartValueType of(Class<?> requiredType) {
+        if (requiredType == null) {
+            return OTHER;
+        }
+        for (final MultipartValueType valueType : values()) {
+            final Class<?> type = valueType.type;
+            if (type != null
+                    && (type == requiredType || type.getCanonicalName().equals(
+                            requiredType.getCanonicalName()))) {
+                return valueType;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,161 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.analogweb.Multipart;
+
+/**
+ * パートを{@link Executor}により並列に処理します。<br/>
+ * パートの読み出しは呼び出し元のスレッドで行われ、読み出したパートから順に処理が
+ * 開始されます。同時に処理されるパートの数は制限され、上限に達した場合は
+ * 処理の完了を待ってから次のパートを読み出します。{@link Executor}が処理を
+ * 受け付けない場合や、{@value #ACQUIRE_TIMEOUT_MILLIS}ミリ秒以内に処理の完了を
+ * 確認できない場合は、呼び出し元のスレッドで処理します。そのため、{@link Executor}の
+ * スレッドから呼び出された場合も処理は停止しません。<br/>
+ * いずれかの処理が失敗した時点で、以降のパートは読み出されません。
+ * @author snowgoose
+ */
+public class ParallelPartProcessor {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = Runtime.getRuntime().availableProcessors() * 2;
+    static final long ACQUIRE_TIMEOUT_MILLIS = 1000;
+    private final Executor executor;
+    private final int maxInFlight;
+
+    /**
+     * 共有の{@link ForkJoinPool}を使用する{@link ParallelPartProcessor}を生成します。
+     */
+    public ParallelPartProcessor() {
+        this(null);
+    }
+
+    /**
+     * @param executor パートを処理する{@link Executor}。{@code null}の場合は共有の
+     * {@link ForkJoinPool}
+     */
+    public ParallelPartProcessor(Executor executor) {
+        this(executor, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param executor パートを処理する{@link Executor}。{@code null}の場合は共有の
+     * {@link ForkJoinPool}
+     * @param maxInFlight 同時に処理するパートの上限
+     */
+    public ParallelPartProcessor(Executor executor, int maxInFlight) {
+        this.executor = executor != null ? executor : SharedPool.INSTANCE;
+        this.maxInFlight = Math.max(maxInFlight, 1);
+    }
+
+    /**
+     * すべてのパートを処理し、結果をパートの出現順に返却します。<br/>
+     * いずれかの処理が失敗した場合、以降のパートは読み出されず、未完了の処理は
+     * 取り消されます。
+     * @param parts 処理するパート
+     * @param processor {@link PartProcessor}
+     * @return 処理結果
+     * @throws FileUploadFailureException パートの読み込みに失敗した場合
+     */
+    public <R> List<R> processAll(Iterable<? extends Multipart> parts,
+            final PartProcessor<R> processor) {
+        final Semaphore permits = new Semaphore(maxInFlight);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<FutureTask<R>> tasks = new ArrayList<FutureTask<R>>();
+        boolean completed = false;
+        try {
+            final Iterator<? extends Multipart> i = parts.iterator();
+            while (failure.get() == null && i.hasNext()) {
+                final boolean acquired = permits.tryAcquire(ACQUIRE_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                if (failure.get() != null) {
+                    if (acquired) {
+                        permits.release();
+                    }
+                    break;
+                }
+                final Multipart part = i.next();
+                final FutureTask<R> task = new FutureTask<R>(new Callable<R>() {
+
+                    @Override
+                    public R call() throws Exception {
+                        try {
+                            return processor.process(part);
+                        } catch (final Exception e) {
+                            failure.compareAndSet(null, e);
+                            throw e;
+                        } catch (final Error e) {
+                            failure.compareAndSet(null, e);
+                            throw e;
+                        } finally {
+                            if (acquired) {
+                                permits.release();
+                            }
+                        }
+                    }
+                });
+                tasks.add(task);
+                if (acquired == false) {
+                    // the executor may be occupied by the caller itself.
+                    task.run();
+                    continue;
+                }
+                try {
+                    executor.execute(task);
+                } catch (final RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+            if (failure.get() != null) {
+                return rethrow(failure.get());
+            }
+            final List<R> results = new ArrayList<R>(tasks.size());
+            for (final FutureTask<R> task : tasks) {
+                // runs the task here if the executor has not started it yet.
+                task.run();
+                results.add(task.get());
+            }
+            completed = true;
+            return results;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileUploadFailureException(new InterruptedIOException());
+        } catch (final ExecutionException e) {
+            return rethrow(e.getCause());
+        } finally {
+            if (completed == false) {
+                for (final FutureTask<R> task : tasks) {
+                    task.cancel(true);
+                }
+            }
+        }
+    }
+
+    private static <R> R rethrow(Throwable e) {
+        if (e instanceof IOException) {
+            throw new FileUploadFailureException((IOException) e);
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new FileUploadFailureException(new IOException(e));
+    }
+
+    private static final class SharedPool {
+
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+}
@@ -0,0 +1,90 @@
+package org.analogweb.acf;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * パートの内容が流れる過程で、ダイジェストとCRC32チェックサムを算出します。<br/>
+ * 算出結果は{@link #complete()}の後に参照できます。
+ * @author snowgoose
+ */
+public class PartDigester {
+
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    private final byte[][] results;
+    private final CRC32 crc = new CRC32();
+    private volatile boolean completed;
+
+    /**
+     * @param algorithms {@link MessageDigest}のアルゴリズム名(SHA-256など)
+     * @throws IllegalArgumentException サポートされていないアルゴリズムが指定された場合
+     */
+    public PartDigester(String... algorithms) {
+        this.algorithms = algorithms.clone();
+        this.digests = new MessageDigest[algorithms.length];
+        this.results = new byte[algorithms.length][];
+        for (int i = 0; i < algorithms.length; i++) {
+            try {
+                this.digests[i] = MessageDigest.getInstance(algorithms[i]);
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    public void update(byte[] b, int off, int len) {
+        for (final MessageDigest digest : digests) {
+            digest.update(b, off, len);
+        }
+        crc.update(b, off, len);
+    }
+
+    public void update(int b) {
+        for (final MessageDigest digest : digests) {
+            digest.update((byte) b);
+        }
+        crc.update(b);
+    }
+
+    /**
+     * 算出を完了します。複数回呼び出しても一度だけ完了します。
+     */
+    public synchronized void complete() {
+        if (completed) {
+            return;
+        }
+        for (int i = 0; i < digests.length; i++) {
+            results[i] = digests[i].digest();
+        }
+        completed = true;
+    }
+
+    public boolean isCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * @param algorithm アルゴリズム名
+     * @return ダイジェスト。完了していないか、指定されていないアルゴリズムの場合は{@code null}
+     */
+    public byte[] getDigest(String algorithm) {
+        if (completed == false) {
+            return null;
+        }
+        for (int i = 0; i < algorithms.length; i++) {
+            if (algorithms[i].equalsIgnoreCase(algorithm)) {
+                return results[i].clone();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return CRC32チェックサム。完了していない場合は{@code -1}
+     */
+    public long getChecksum() {
+        return completed ? crc.getValue() : -1;
+    }
+}
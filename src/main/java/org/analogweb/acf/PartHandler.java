@@ -0,0 +1,22 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+
+import org.analogweb.Multipart;
+
+/**
+ * {@link AbstractMultipartParameters#forEachPart(PartHandler)}により、リクエストに含まれる
+ * パートを出現順に受け取るハンドラです。<br/>
+ * {@link MultipartParameterStreamResolver}を使用している場合、受け取った
+ * {@link Multipart}のストリームは、次のパートが読み出されるまでの間のみ有効です。
+ * @author snowgoose
+ */
+public interface PartHandler {
+
+    /**
+     * パートを処理します。
+     * @param part {@link Multipart}
+     * @throws IOException パートの読み込みに失敗した場合
+     */
+    void handle(Multipart part) throws IOException;
+}
@@ -0,0 +1,92 @@
+package org.analogweb.acf;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Map;
+
+import org.analogweb.util.StringUtils;
+import org.apache.commons.fileupload.FileItemHeaders;
+import org.apache.commons.fileupload.MultipartStream.MalformedStreamException;
+import org.apache.commons.fileupload.ParameterParser;
+import org.apache.commons.fileupload.util.FileItemHeadersImpl;
+
+/**
+ * マルチパートの各パートのヘッダを解析するユーティリティです。
+ * @author snowgoose
+ */
+final class PartHeaders {
+
+    static final String DEFAULT_HEADER_ENCODING = "ISO-8859-1";
+
+    private PartHeaders() {
+        // nop.
+    }
+
+    static FileItemHeadersImpl parse(ByteBuffer buffer, int from, int to, String encoding)
+            throws MalformedStreamException {
+        final FileItemHeadersImpl headers = new FileItemHeadersImpl();
+        if (from >= to) {
+            return headers;
+        }
+        final byte[] bytes = new byte[to - from];
+        ((ByteBuffer) buffer.duplicate().position(from)).get(bytes);
+        final String section;
+        try {
+            section = new String(bytes, encoding);
+        } catch (final UnsupportedEncodingException e) {
+            throw new MalformedStreamException(e.getMessage());
+        }
+        String current = null;
+        for (final String line : section.split("\r\n")) {
+            if (line.length() == 0) {
+                continue;
+            }
+            if (current != null && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                // folded header line.
+                current = current + ' ' + line.trim();
+                continue;
+            }
+            addHeader(headers, current);
+            current = line;
+        }
+        addHeader(headers, current);
+        return headers;
+    }
+
+    private static void addHeader(FileItemHeadersImpl headers, String line) {
+        if (line == null) {
+            return;
+        }
+        final int colon = line.indexOf(':');
+        if (colon < 0) {
+            return;
+        }
+        headers.addHeader(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+    }
+
+    static String getFieldName(FileItemHeaders headers) {
+        final Map<String, String> params = parseDisposition(headers);
+        return params == null ? null : params.get("name");
+    }
+
+    static String getFileName(FileItemHeaders headers) {
+        final Map<String, String> params = parseDisposition(headers);
+        if (params == null || params.containsKey("filename") == false) {
+            return null;
+        }
+        final String fileName = params.get("filename");
+        return fileName == null ? StringUtils.EMPTY : fileName.trim();
+    }
+
+    private static Map<String, String> parseDisposition(FileItemHeaders headers) {
+        final String disposition = headers.getHeader("Content-Disposition");
+        if (disposition == null
+                || disposition.toLowerCase(Locale.ENGLISH).startsWith("form-data") == false) {
+            return null;
+        }
+        final ParameterParser parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        return parser.parse(disposition, ';');
+    }
+}
@@ -0,0 +1,29 @@
+package org.analogweb.acf;
+
+import org.apache.commons.fileupload.FileUploadException;
+
+/**
+ * パートの数やパートのヘッダのバイト数が、{@link UploadQuota}により指定された
+ * 上限を超えたことを表します。
+ * @author snowgoose
+ */
+public class PartLimitExceededException extends FileUploadException {
+
+    private static final long serialVersionUID = 3318146472043720575L;
+    private final long actual;
+    private final long permitted;
+
+    public PartLimitExceededException(String message, long actual, long permitted) {
+        super(message);
+        this.actual = actual;
+        this.permitted = permitted;
+    }
+
+    public long getActualSize() {
+        return this.actual;
+    }
+
+    public long getPermittedSize() {
+        return this.permitted;
+    }
+}
@@ -0,0 +1,101 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.fileupload.FileItemHeaders;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+
+/**
+ * {@link UploadQuota}に従って、パートの数とパートのヘッダのバイト数を検査します。<br/>
+ * パートは出現した時点で、その内容を読み込む前に検査されます。
+ * @author snowgoose
+ */
+final class PartLimiter {
+
+    private final UploadQuota quota;
+    private final Map<String, int[]> fieldCounts = new HashMap<String, int[]>();
+    private int parts;
+
+    private PartLimiter(UploadQuota quota) {
+        this.quota = quota;
+    }
+
+    /**
+     * @return {@link PartLimiter}。パートに関する上限が指定されていない場合は{@code null}
+     */
+    static PartLimiter of(UploadQuota quota) {
+        if (quota == null || quota.hasPartLimits() == false) {
+            return null;
+        }
+        return new PartLimiter(quota);
+    }
+
+    void check(String fieldName, FileItemHeaders headers) throws PartLimitExceededException {
+        parts++;
+        final int maxParts = quota.getMaxParts();
+        if (maxParts >= 0 && parts > maxParts) {
+            throw new PartLimitExceededException(String.format(
+                    "the request was rejected because the number of parts exceeds the configured maximum (%s)",
+                    maxParts), parts, maxParts);
+        }
+        final int maxPartsPerField = quota.getMaxPartsPerField();
+        if (maxPartsPerField >= 0) {
+            int[] count = fieldCounts.get(fieldName);
+            if (count == null) {
+                count = new int[1];
+                fieldCounts.put(fieldName, count);
+            }
+            if (++count[0] > maxPartsPerField) {
+                throw new PartLimitExceededException(String.format(
+                        "the request was rejected because the number of parts named [%s] exceeds the configured maximum (%s)",
+                        fieldName, maxPartsPerField), count[0], maxPartsPerField);
+            }
+        }
+        final int maxHeaderSize = quota.getMaxHeaderSize();
+        if (maxHeaderSize >= 0) {
+            final long size = sizeOf(headers);
+            if (size > maxHeaderSize) {
+                throw new PartLimitExceededException(String.format(
+                        "the request was rejected because header size of part [%s] (%s) exceeds the configured maximum (%s)",
+                        fieldName, size, maxHeaderSize), size, maxHeaderSize);
+            }
+        }
+    }
+
+    FileItemIterator limit(final FileItemIterator iterator) {
+        return new FileItemIterator() {
+
+            @Override
+            public boolean hasNext() throws FileUploadException, IOException {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public FileItemStream next() throws FileUploadException, IOException {
+                final FileItemStream item = iterator.next();
+                check(item.getFieldName(), item.getHeaders());
+                return item;
+            }
+        };
+    }
+
+    private static long sizeOf(FileItemHeaders headers) {
+        if (headers == null) {
+            return 0;
+        }
+        long size = 0;
+        for (final Iterator<String> names = headers.getHeaderNames(); names.hasNext();) {
+            final String name = names.next();
+            for (final Iterator<String> values = headers.getHeaders(name); values.hasNext();) {
+                // "name: value\r\n"
+                size += name.length() + values.next().length() + 4;
+            }
+        }
+        return size;
+    }
+}
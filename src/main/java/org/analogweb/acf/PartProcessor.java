@@ -0,0 +1,23 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+
+import org.analogweb.Multipart;
+
+/**
+ * {@link AbstractMultipartParameters#processAll(PartProcessor, java.util.concurrent.Executor)}
+ * により、パートを並列に処理して結果を返却する処理です。<br/>
+ * 複数のスレッドから同時に呼び出されるため、スレッドセーフに実装してください。
+ * @author snowgoose
+ * @param <R> 処理結果の型
+ */
+public interface PartProcessor<R> {
+
+    /**
+     * パートを処理します。
+     * @param part {@link Multipart}
+     * @return 処理結果
+     * @throws IOException パートの読み込みに失敗した場合
+     */
+    R process(Multipart part) throws IOException;
+}
@@ -0,0 +1,451 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.analogweb.util.IOUtils;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemHeaders;
+import org.apache.commons.fileupload.ParameterParser;
+
+/**
+ * {@link DirectBufferPool}から取得したチャンクに内容を保持する{@link FileItem}の実装です。<br/>
+ * 内容が閾値を超えた場合、またはプールが枯渇した場合は一時ファイルに書き出されます。
+ * チャンクは参照カウントにより管理され、{@link #delete()}の実行後、
+ * 開いている{@link InputStream}がすべて閉じられた時点でプールに返却されます。
+ * 削除されずに回収されたパートのチャンクは{@link PhantomReference}により検出され、
+ * 次のパートの生成時に返却されます。
+ * {@link #delete()}の実行後は、{@link #get()}及び{@link #getString()}は空の内容を返却し、
+ * {@link #getInputStream()}は{@link IOException}となります。
+ * @author snowgoose
+ */
+public class PooledFileItem implements FileItem {
+
+    private static final long serialVersionUID = 6410529043263254915L;
+    private static final String DEFAULT_CHARSET = "ISO-8859-1";
+    private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<Object>();
+    private static final Set<Owner> TRACKED = Collections
+            .newSetFromMap(new ConcurrentHashMap<Owner, Boolean>());
+    private final transient DirectBufferPool pool;
+    private final transient Content content;
+    private final transient List<ByteBuffer> chunks;
+    private final transient Owner owner;
+    private final int sizeThreshold;
+    private final File repository;
+    private String fieldName;
+    private final String contentType;
+    private boolean formField;
+    private final String fileName;
+    private long size;
+    private File storeLocation;
+    private FileItemHeaders headers;
+    private boolean deleted;
+
+    public PooledFileItem(DirectBufferPool pool, String fieldName, String contentType,
+            boolean isFormField, String fileName, int sizeThreshold, File repository) {
+        this.pool = pool;
+        this.fieldName = fieldName;
+        this.contentType = contentType;
+        this.formField = isFormField;
+        this.fileName = fileName;
+        this.sizeThreshold = sizeThreshold;
+        this.repository = repository;
+        this.content = new Content(pool);
+        this.chunks = this.content.chunks;
+        this.owner = new Owner(this, this.content);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (retainContent() == false) {
+            throw new IOException("item [" + fieldName + "] has been deleted");
+        }
+        if (isInMemory() == false) {
+            release();
+            return new FileInputStream(this.storeLocation);
+        }
+        final List<InputStream> streams = new ArrayList<InputStream>(chunks.size());
+        for (final ByteBuffer chunk : chunks) {
+            final ByteBuffer readable = chunk.duplicate();
+            readable.flip();
+            streams.add(new ByteBufferInputStream(readable));
+        }
+        return new ContentInputStream(streams, this.content);
+    }
+
+    @Override
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    @Override
+    public String getName() {
+        return this.fileName;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return this.storeLocation == null;
+    }
+
+    @Override
+    public long getSize() {
+        return this.size;
+    }
+
+    @Override
+    public byte[] get() {
+        if (retainContent() == false) {
+            return new byte[0];
+        }
+        final byte[] bytes;
+        try {
+            bytes = new byte[(int) this.size];
+            if (isInMemory()) {
+                int offset = 0;
+                for (final ByteBuffer chunk : chunks) {
+                    final ByteBuffer readable = chunk.duplicate();
+                    readable.flip();
+                    final int length = readable.remaining();
+                    readable.get(bytes, offset, length);
+                    offset += length;
+                }
+                return bytes;
+            }
+        } finally {
+            release();
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(this.storeLocation);
+            int offset = 0;
+            int read;
+            while (offset < bytes.length
+                    && (read = in.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            return bytes;
+        } catch (final IOException e) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @Override
+    public String getString(String encoding) throws UnsupportedEncodingException {
+        return new String(get(), encoding);
+    }
+
+    @Override
+    public String getString() {
+        final String charset = getCharSet();
+        try {
+            return getString(charset != null ? charset : DEFAULT_CHARSET);
+        } catch (final UnsupportedEncodingException e) {
+            return new String(get());
+        }
+    }
+
+    private String getCharSet() {
+        if (this.contentType == null) {
+            return null;
+        }
+        final ParameterParser parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        final Map<String, String> params = parser.parse(this.contentType, ';');
+        return params.get("charset");
+    }
+
+    @Override
+    public void write(File file) throws Exception {
+        if (isInMemory()) {
+            final FileOutputStream out = new FileOutputStream(file);
+            try {
+                writeChunks(out.getChannel());
+            } finally {
+                out.close();
+            }
+            return;
+        }
+        if (this.storeLocation.renameTo(file) == false) {
+            final FileInputStream in = new FileInputStream(this.storeLocation);
+            final FileOutputStream out = new FileOutputStream(file);
+            try {
+                in.getChannel().transferTo(0, this.size, out.getChannel());
+            } finally {
+                IOUtils.closeQuietly(in);
+                out.close();
+            }
+        }
+    }
+
+    long writeChunks(WritableByteChannel channel) throws IOException {
+        if (retainContent() == false) {
+            throw new IOException("item [" + fieldName + "] has been deleted");
+        }
+        try {
+            long written = 0;
+            for (final ByteBuffer chunk : chunks) {
+                final ByteBuffer readable = chunk.duplicate();
+                readable.flip();
+                written += Transfers.write(readable, channel);
+            }
+            return written;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void delete() {
+        synchronized (this) {
+            this.deleted = true;
+        }
+        owner.release();
+        if (this.storeLocation != null && this.storeLocation.exists()) {
+            this.storeLocation.delete();
+        }
+    }
+
+    @Override
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    @Override
+    public void setFieldName(String name) {
+        this.fieldName = name;
+    }
+
+    @Override
+    public boolean isFormField() {
+        return this.formField;
+    }
+
+    @Override
+    public void setFormField(boolean state) {
+        this.formField = state;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new PooledOutputStream();
+    }
+
+    @Override
+    public FileItemHeaders getHeaders() {
+        return this.headers;
+    }
+
+    @Override
+    public void setHeaders(FileItemHeaders headers) {
+        this.headers = headers;
+    }
+
+    /**
+     * 一時ファイルに書き出されている場合、そのファイルを返却します。
+     * @return 一時ファイル。メモリ上に保持されている場合は{@code null}
+     */
+    public File getStoreLocation() {
+        return this.storeLocation;
+    }
+
+    /**
+     * @return 一時ファイルを作成するディレクトリ。指定されていない場合は{@code null}
+     */
+    public File getRepository() {
+        return this.repository;
+    }
+
+    void retain() {
+        this.content.retain();
+    }
+
+    /**
+     * 内容を参照する間、チャンクがプールに返却されないよう参照を取得します。
+     * @return 既に{@link #delete()}されている場合は{@code false}
+     */
+    private synchronized boolean retainContent() {
+        if (this.deleted) {
+            return false;
+        }
+        retain();
+        return true;
+    }
+
+    void release() {
+        this.content.release();
+    }
+
+    /**
+     * 削除されずに回収されたパートのチャンクをプールに返却します。
+     */
+    static void expunge() {
+        Reference<?> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            ((Owner) collected).release();
+        }
+    }
+
+    /**
+     * チャンクと、その参照カウントです。パート自身を参照しないため、パートが回収された
+     * 後も開いている{@link InputStream}が閉じられるまでチャンクは保持されます。
+     */
+    private static final class Content {
+
+        private final DirectBufferPool pool;
+        private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Content(DirectBufferPool pool) {
+            this.pool = pool;
+        }
+
+        void retain() {
+            this.references.incrementAndGet();
+        }
+
+        void release() {
+            if (this.references.decrementAndGet() == 0) {
+                releaseChunks();
+            }
+        }
+
+        synchronized void releaseChunks() {
+            for (final ByteBuffer chunk : chunks) {
+                pool.release(chunk);
+            }
+            chunks.clear();
+        }
+    }
+
+    /**
+     * パートが保持する{@link Content}への参照です。
+     */
+    private static final class Owner extends PhantomReference<Object> {
+
+        private final Content content;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Owner(Object item, Content content) {
+            super(item, COLLECTED);
+            this.content = content;
+            TRACKED.add(this);
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true) == false) {
+                return;
+            }
+            TRACKED.remove(this);
+            clear();
+            content.release();
+        }
+    }
+
+    private static final class ContentInputStream extends SequenceInputStream {
+
+        private final Content content;
+        private boolean closed;
+
+        ContentInputStream(List<InputStream> streams, Content content) {
+            super(Collections.enumeration(streams));
+            this.content = content;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (closed == false) {
+                closed = true;
+                content.release();
+            }
+        }
+    }
+
+    private class PooledOutputStream extends OutputStream {
+
+        private OutputStream spilled;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spilled == null && size + len > sizeThreshold) {
+                spill();
+            }
+            if (spilled != null) {
+                spilled.write(b, off, len);
+                size += len;
+                return;
+            }
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+                if (chunk == null || chunk.hasRemaining() == false) {
+                    chunk = pool.acquire();
+                    if (chunk == null) {
+                        // pool exhausted.
+                        spill();
+                        spilled.write(b, offset, remaining);
+                        size += remaining;
+                        return;
+                    }
+                    chunks.add(chunk);
+                }
+                final int length = Math.min(remaining, chunk.remaining());
+                chunk.put(b, offset, length);
+                offset += length;
+                remaining -= length;
+                size += length;
+            }
+        }
+
+        private void spill() throws IOException {
+            final File file = SpoolSweeper.newFile(repository);
+            final FileOutputStream out = new FileOutputStream(file);
+            writeChunks(out.getChannel());
+            content.releaseChunks();
+            storeLocation = file;
+            spilled = out;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (spilled != null) {
+                spilled.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spilled != null) {
+                spilled.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.analogweb.acf;
+
+import java.io.File;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+
+/**
+ * {@link PooledFileItem}を生成する{@link FileItemFactory}の実装です。<br/>
+ * 閾値以下のパートは{@link DirectBufferPool}のチャンクに保持され、Javaヒープを使用しません。
+ * @author snowgoose
+ */
+public class PooledFileItemFactory implements FileItemFactory {
+
+    public static final int DEFAULT_SIZE_THRESHOLD = 256 * 1024;
+    private final DirectBufferPool pool;
+    private final int sizeThreshold;
+    private final File repository;
+
+    public PooledFileItemFactory(DirectBufferPool pool, File repository) {
+        this(pool, DEFAULT_SIZE_THRESHOLD, repository);
+    }
+
+    public PooledFileItemFactory(DirectBufferPool pool, int sizeThreshold, File repository) {
+        this.pool = pool;
+        this.sizeThreshold = sizeThreshold;
+        this.repository = repository;
+    }
+
+    @Override
+    public FileItem createItem(String fieldName, String contentType, boolean isFormField,
+            String fileName) {
+        PooledFileItem.expunge();
+        return new PooledFileItem(pool, fieldName, contentType, isFormField, fileName,
+                sizeThreshold, repository);
+    }
+
+    /**
+     * このインスタンスと{@link DirectBufferPool}を共有する{@link PooledFileItemFactory}を
+     * 生成します。
+     * @param sizeThreshold メモリ上に保持するパートの最大バイト数。{@code -1}の場合はこのインスタンスの閾値
+     * @param repository 一時ファイルを書き出すディレクトリ。{@code null}の場合はこのインスタンスのディレクトリ
+     * @return {@link PooledFileItemFactory}
+     */
+    public PooledFileItemFactory derive(int sizeThreshold, File repository) {
+        return new PooledFileItemFactory(pool, sizeThreshold >= 0 ? sizeThreshold
+                : this.sizeThreshold, repository != null ? repository : this.repository);
+    }
+
+    public int getSizeThreshold() {
+        return this.sizeThreshold;
+    }
+
+    public File getRepository() {
+        return this.repository;
+    }
+
+    public DirectBufferPool getPool() {
+        return this.pool;
+    }
+}
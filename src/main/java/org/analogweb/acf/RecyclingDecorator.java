@@ -0,0 +1,41 @@
+package org.analogweb.acf;
+
+import java.io.File;
+
+/**
+ * {@link TempFilePool}の一時ファイルを使用する{@link DiskFileItemDecorator}です。<br/>
+ * パートの一時ファイルは、パートの解放時にプールに返却されます。
+ * @author snowgoose
+ */
+public class RecyclingDecorator implements DiskFileItemDecorator {
+
+    private final TempFilePool pool;
+
+    public RecyclingDecorator(TempFilePool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public DiskFileItemListener decorate(DiskFileItemSpec spec) {
+        final File file = pool.acquire();
+        spec.setRepository(pool.getDirectory());
+        spec.setTempFile(file);
+        return new DiskFileItemListener() {
+
+            @Override
+            public void written(long size, boolean inMemory) {
+                // nothing to do.
+            }
+
+            @Override
+            public void released(File tempFile) {
+                // renamed by the pool, so the item deletes nothing but cached content.
+                pool.release(file);
+            }
+        };
+    }
+
+    public TempFilePool getPool() {
+        return this.pool;
+    }
+}
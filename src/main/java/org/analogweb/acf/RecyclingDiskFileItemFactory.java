@@ -0,0 +1,24 @@
+package org.analogweb.acf;
+
+import org.apache.commons.fileupload.FileItem;
+
+/**
+ * {@link TempFilePool}の一時ファイルを再利用する{@link TrackedDiskFileItemFactory}です。<br/>
+ * パートの一時ファイルは{@link FileItem#delete()}によりプールに返却されます。
+ * @author snowgoose
+ * @see RecyclingDecorator
+ */
+public class RecyclingDiskFileItemFactory extends TrackedDiskFileItemFactory {
+
+    private final TempFilePool pool;
+
+    public RecyclingDiskFileItemFactory(int sizeThreshold, TempFilePool pool) {
+        super(sizeThreshold, pool.getDirectory());
+        this.pool = pool;
+        addDecorator(new RecyclingDecorator(pool));
+    }
+
+    public TempFilePool getPool() {
+        return this.pool;
+    }
+}
@@ -0,0 +1,30 @@
+package org.analogweb.acf;
+
+import java.util.List;
+
+/**
+ * 一時ファイルを複数の{@link SpoolDirectory}に振り分ける{@link TrackedDiskFileItemFactory}です。
+ * @author snowgoose
+ * @see ShardingDecorator
+ */
+public class ShardedDiskFileItemFactory extends TrackedDiskFileItemFactory {
+
+    private final ShardingDecorator sharding;
+
+    public ShardedDiskFileItemFactory(int sizeThreshold, List<SpoolDirectory> directories) {
+        super(sizeThreshold, null);
+        this.sharding = new ShardingDecorator(directories);
+        addDecorator(this.sharding);
+    }
+
+    /**
+     * 一時ファイルを書き出す{@link SpoolDirectory}を選択します。
+     */
+    protected SpoolDirectory select() {
+        return this.sharding.select();
+    }
+
+    public List<SpoolDirectory> getDirectories() {
+        return this.sharding.getDirectories();
+    }
+}
@@ -0,0 +1,84 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一時ファイルを複数の{@link SpoolDirectory}に振り分ける{@link DiskFileItemDecorator}です。<br/>
+ * パートの生成時に、空き容量が十分なディレクトリのうち優先度が最も高いものから、
+ * 書き込み中の一時ファイルが最も少ないディレクトリを選択します。
+ * いずれのディレクトリも空き容量が不足している場合は、空き容量が最も大きい
+ * ディレクトリを使用します。
+ * @author snowgoose
+ */
+public class ShardingDecorator implements DiskFileItemDecorator {
+
+    private final List<SpoolDirectory> directories;
+
+    public ShardingDecorator(List<SpoolDirectory> directories) {
+        if (directories.isEmpty()) {
+            throw new IllegalArgumentException("spool directories must not be empty.");
+        }
+        this.directories = new ArrayList<SpoolDirectory>(directories);
+    }
+
+    @Override
+    public DiskFileItemListener decorate(DiskFileItemSpec spec) {
+        final SpoolDirectory directory = select();
+        spec.setRepository(directory.nextDirectory());
+        directory.started();
+        return new DiskFileItemListener() {
+
+            private boolean writing = true;
+
+            @Override
+            public void written(long size, boolean inMemory) {
+                finished();
+            }
+
+            @Override
+            public void released(File tempFile) {
+                finished();
+            }
+
+            private synchronized void finished() {
+                if (this.writing) {
+                    this.writing = false;
+                    directory.finished();
+                }
+            }
+        };
+    }
+
+    /**
+     * 一時ファイルを書き出す{@link SpoolDirectory}を選択します。
+     */
+    protected SpoolDirectory select() {
+        SpoolDirectory selected = null;
+        for (final SpoolDirectory directory : this.directories) {
+            if (directory.hasFreeSpace() == false) {
+                continue;
+            }
+            if (selected == null || directory.getTier() < selected.getTier()) {
+                selected = directory;
+            } else if (directory.getTier() == selected.getTier()
+                    && directory.getInFlight() < selected.getInFlight()) {
+                selected = directory;
+            }
+        }
+        if (selected != null) {
+            return selected;
+        }
+        for (final SpoolDirectory directory : this.directories) {
+            if (selected == null || directory.getUsableSpace() > selected.getUsableSpace()) {
+                selected = directory;
+            }
+        }
+        return selected;
+    }
+
+    public List<SpoolDirectory> getDirectories() {
+        return this.directories;
+    }
+}
@@ -0,0 +1,94 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ShardingDecorator}が一時ファイルを書き出すディレクトリです。<br/>
+ * 指定されたディレクトリの配下に、あらかじめ指定された数のサブディレクトリを作成し、
+ * 一時ファイルを順に振り分けることで、ひとつのディレクトリに含まれるファイルの数を
+ * 抑えます。
+ * @author snowgoose
+ */
+public class SpoolDirectory {
+
+    public static final int DEFAULT_SUBDIRECTORIES = 16;
+    private static final long FREE_SPACE_REFRESH_MILLIS = 1000;
+    private final File root;
+    private final int tier;
+    private final long minFreeSpace;
+    private final File[] subdirectories;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long usableSpace;
+    private volatile long checkedAt;
+
+    public SpoolDirectory(File root) {
+        this(root, 0, 0, DEFAULT_SUBDIRECTORIES);
+    }
+
+    /**
+     * @param root 一時ファイルを書き出すディレクトリ
+     * @param tier 優先度。値の小さいディレクトリが優先して使用されます
+     * @param minFreeSpace このディレクトリを使用するために必要な空き容量(バイト)
+     * @param subdirectories 作成するサブディレクトリの数
+     */
+    public SpoolDirectory(File root, int tier, long minFreeSpace, int subdirectories) {
+        this.root = root;
+        this.tier = tier;
+        this.minFreeSpace = minFreeSpace;
+        this.subdirectories = new File[Math.max(1, subdirectories)];
+        for (int i = 0; i < this.subdirectories.length; i++) {
+            final File dir = new File(root, String.format("%02x", i));
+            if (dir.exists() == false && dir.mkdirs() == false) {
+                throw new IllegalArgumentException("cannot create spool directory [" + dir + "]");
+            }
+            this.subdirectories[i] = dir;
+        }
+    }
+
+    public File getRoot() {
+        return this.root;
+    }
+
+    public int getTier() {
+        return this.tier;
+    }
+
+    /**
+     * 現在書き込み中の一時ファイルの数を返却します。
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * 空き容量を返却します。値は一定時間キャッシュされます。
+     */
+    public long getUsableSpace() {
+        final long now = System.currentTimeMillis();
+        if (now - this.checkedAt > FREE_SPACE_REFRESH_MILLIS) {
+            this.usableSpace = this.root.getUsableSpace();
+            this.checkedAt = now;
+        }
+        return this.usableSpace;
+    }
+
+    boolean hasFreeSpace() {
+        return getUsableSpace() > this.minFreeSpace;
+    }
+
+    File nextDirectory() {
+        final int index = (this.cursor.getAndIncrement() & Integer.MAX_VALUE)
+                % this.subdirectories.length;
+        return this.subdirectories[index];
+    }
+
+    void started() {
+        this.inFlight.incrementAndGet();
+    }
+
+    void finished() {
+        this.inFlight.decrementAndGet();
+    }
+}
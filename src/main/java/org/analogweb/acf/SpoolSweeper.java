@@ -0,0 +1,199 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.CommonsFileUploadModulesConfig.PLUGIN_MESSAGE_RESOURCE;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.analogweb.util.logging.Log;
+import org.analogweb.util.logging.Logs;
+
+/**
+ * 一時ファイルを書き出すディレクトリに残された古い一時ファイルを、定期的に削除します。<br/>
+ * 一時ファイルは通常{@link MultipartCleanupProcessor}によりリクエストの完了時に削除されます。
+ * このクラスは、プロセスの異常終了などにより削除されなかったファイルを回収するためのものです。
+ * 削除の対象は、このプラグインが作成した{@value #FILE_PREFIX}で始まるファイルのみです。
+ * 一度の実行で削除するファイル数には上限があります。対象のディレクトリは
+ * {@link #addDirectory(File)}により追加できます。<br/>
+ * 定期的な削除は{@link #start(long)}により明示的に開始し、{@link #stop()}により停止します。
+ * @author snowgoose
+ */
+public class SpoolSweeper implements Runnable {
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_MAX_FILES_PER_RUN = 1000;
+    public static final String FILE_PREFIX = "acf_upload_";
+    public static final String FILE_SUFFIX = ".tmp";
+    private static final Log log = Logs.getLog(SpoolSweeper.class);
+    private static ScheduledExecutorService scheduler;
+    private static int running;
+    private final CopyOnWriteArrayList<File> directories = new CopyOnWriteArrayList<File>();
+    private final long maxAgeMillis;
+    private final int maxFilesPerRun;
+    private ScheduledFuture<?> scheduled;
+
+    public SpoolSweeper(File directory) {
+        this(directory, DEFAULT_MAX_AGE_MILLIS, DEFAULT_MAX_FILES_PER_RUN);
+    }
+
+    /**
+     * @param directory 一時ファイルを書き出すディレクトリ
+     * @param maxAgeMillis 削除の対象とする、最終更新からの経過ミリ秒
+     * @param maxFilesPerRun 一度の実行で削除するファイル数の上限
+     */
+    public SpoolSweeper(File directory, long maxAgeMillis, int maxFilesPerRun) {
+        this.directories.add(directory);
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxFilesPerRun = maxFilesPerRun;
+    }
+
+    /**
+     * 削除の対象とするディレクトリを追加します。既に対象となっている場合は、何も行いません。
+     */
+    public void addDirectory(File directory) {
+        this.directories.addIfAbsent(directory);
+    }
+
+    public List<File> getDirectories() {
+        return Collections.unmodifiableList(this.directories);
+    }
+
+    /**
+     * 指定された間隔で、バックグラウンドのデーモンスレッドによる削除を開始します。
+     * 開始されているすべての{@link SpoolSweeper}は、ひとつのスレッドを共有します。
+     * 既に開始されている場合は、何も行いません。
+     */
+    public void start(long intervalMillis) {
+        synchronized (SpoolSweeper.class) {
+            if (this.scheduled != null) {
+                return;
+            }
+            if (scheduler == null) {
+                scheduler = createScheduler();
+            }
+            running++;
+            this.scheduled = scheduler.scheduleWithFixedDelay(this, intervalMillis,
+                    intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 定期的な削除を停止します。<br/>
+     * 開始されている{@link SpoolSweeper}がなくなった時点で、共有のスレッドも終了します。
+     */
+    public void stop() {
+        synchronized (SpoolSweeper.class) {
+            if (this.scheduled == null) {
+                return;
+            }
+            this.scheduled.cancel(false);
+            this.scheduled = null;
+            if (--running == 0) {
+                scheduler.shutdown();
+                scheduler = null;
+            }
+        }
+    }
+
+    public boolean isStarted() {
+        synchronized (SpoolSweeper.class) {
+            return this.scheduled != null;
+        }
+    }
+
+    /**
+     * 指定されたディレクトリに、削除の対象となる一時ファイルの名前を生成します。
+     * @param directory ディレクトリ。{@code null}の場合は{@code java.io.tmpdir}
+     */
+    static File newFile(File directory) {
+        final File dir = directory != null ? directory : new File(
+                System.getProperty("java.io.tmpdir"));
+        return new File(dir, FILE_PREFIX + UUID.randomUUID() + FILE_SUFFIX);
+    }
+
+    @Override
+    public void run() {
+        try {
+            sweep();
+        } catch (final RuntimeException e) {
+            // keep scheduled.
+            log.log(PLUGIN_MESSAGE_RESOURCE, "WACF000006", e);
+        }
+    }
+
+    /**
+     * 古い一時ファイルを削除します。
+     * @return 削除したファイルの数
+     */
+    public int sweep() {
+        final long expiredAt = System.currentTimeMillis() - this.maxAgeMillis;
+        int deleted = 0;
+        for (final File directory : this.directories) {
+            deleted = sweep(directory, expiredAt, deleted);
+            final File[] subdirectories = directory.listFiles(new FileFilter() {
+
+                @Override
+                public boolean accept(File file) {
+                    return file.isDirectory();
+                }
+            });
+            if (subdirectories != null) {
+                for (final File subdirectory : subdirectories) {
+                    deleted = sweep(subdirectory, expiredAt, deleted);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private int sweep(File dir, final long expiredAt, int deleted) {
+        if (deleted >= this.maxFilesPerRun) {
+            return deleted;
+        }
+        final File[] expired = dir.listFiles(new FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                final String name = file.getName();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX) && file.isFile()
+                        && file.lastModified() < expiredAt;
+            }
+        });
+        if (expired == null) {
+            return deleted;
+        }
+        int count = deleted;
+        for (final File file : expired) {
+            if (count >= this.maxFilesPerRun) {
+                break;
+            }
+            if (file.delete()) {
+                log.log(PLUGIN_MESSAGE_RESOURCE, "DACF000010", file.getPath());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "analogweb-spool-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
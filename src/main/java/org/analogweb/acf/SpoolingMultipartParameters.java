@@ -0,0 +1,430 @@
+package org.analogweb.acf;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.analogweb.util.IOUtils;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.RequestContext;
+import org.apache.commons.fileupload.UploadContext;
+
+/**
+ * リクエストボディをバックグラウンドで{@link FileItem}に書き出しながら参照される
+ * {@link MultipartParameters}です。<br/>
+ * {@link #getFuture(String, PartProcessor)}により取得した{@link Future}は、該当する
+ * ファイルパラメータの書き出しが完了した時点で完了するため、リクエストボディ全体の
+ * 読み込みを待たずに処理を開始できます。それ以外の参照は、全てのパートの書き出しが
+ * 完了するまで待機します。<br/>
+ * {@link #dispose()}はリクエストボディの読み込みを中断し、書き出しの終了を待たずに
+ * 返却します。書き出されたパートは、バックグラウンドのスレッドにより削除されます。
+ * @author snowgoose
+ */
+public class SpoolingMultipartParameters extends
+        AbstractMultipartParameters<FileItemMultipart> {
+
+    private final String encoding;
+    private final Map<String, FileItemMultipart> firsts = new HashMap<String, FileItemMultipart>();
+    private FileItemMultipartParameters delegate;
+    private Throwable failure;
+    private boolean done;
+    private volatile boolean disposed;
+    private boolean spooling;
+    private boolean cancelled;
+    private Thread worker;
+    private InputStream body;
+
+    public SpoolingMultipartParameters(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * リクエストボディを読み込み、パートを{@link FileItem}に書き出します。<br/>
+     * バックグラウンドのスレッドから一度だけ呼び出されます。リクエストボディ以外の
+     * 属性は、{@link #capture(RequestContext)}により事前に取得してください。
+     * @param fileUpload {@link FileUploadBase}
+     * @param context {@link RequestContext}
+     * @param limiter パートを検査する{@link PartLimiter}。検査しない場合は{@code null}
+     * @return 書き出されたパートの数
+     * @throws FileUploadException 解析に失敗した場合
+     */
+    int spool(FileUploadBase fileUpload, RequestContext context, PartLimiter limiter)
+            throws FileUploadException {
+        synchronized (this) {
+            if (disposed) {
+                throw new FileUploadException("the request was disposed before spooling");
+            }
+            this.spooling = true;
+            this.worker = Thread.currentThread();
+        }
+        final List<FileItem> items;
+        try {
+            items = FileItemParser.parse(fileUpload, new AbortableRequestContext(context), limiter,
+                    new FileItemParser.Callback() {
+
+                        @Override
+                        public void parsed(FileItem item) throws FileUploadException {
+                            publish(item);
+                        }
+                    });
+        } catch (final FileUploadException e) {
+            failed(e);
+            throw e;
+        } catch (final RuntimeException e) {
+            failed(e);
+            throw e;
+        } finally {
+            spooled();
+        }
+        complete(items);
+        return items.size();
+    }
+
+    private synchronized InputStream opened(InputStream in) throws IOException {
+        if (disposed) {
+            IOUtils.closeQuietly(in);
+            throw new IOException("the request was disposed while spooling");
+        }
+        this.body = in;
+        return in;
+    }
+
+    private synchronized void spooled() {
+        this.spooling = false;
+        this.worker = null;
+        this.body = null;
+        if (cancelled) {
+            // do not leak the interruption to the next task of the pooled thread.
+            Thread.interrupted();
+        }
+        notifyAll();
+    }
+
+    private synchronized void publish(FileItem item) throws FileUploadException {
+        if (disposed) {
+            // parsed items are deleted by FileItemParser.
+            throw new FileUploadException("the request was disposed while spooling");
+        }
+        if (item.isFormField() == false && firsts.containsKey(item.getFieldName()) == false) {
+            firsts.put(item.getFieldName(), new FileItemMultipart(item));
+            notifyAll();
+        }
+    }
+
+    private synchronized void complete(List<FileItem> items) {
+        if (disposed) {
+            for (final FileItem item : items) {
+                item.delete();
+            }
+        } else {
+            this.delegate = new FileItemMultipartParameters(items, encoding);
+        }
+        this.done = true;
+        notifyAll();
+    }
+
+    /**
+     * 書き出しを開始できなかった場合などに、待機している参照を失敗させます。
+     */
+    synchronized void failed(Throwable cause) {
+        this.failure = cause;
+        this.done = true;
+        notifyAll();
+    }
+
+    /**
+     * 指定された名前のファイルパラメータのうち、最初に出現したものの書き出しが完了した
+     * 時点で完了する{@link Future}を返却します。<br/>
+     * {@link Future}の値は{@link PartProcessor}により変換されます。該当するパートが
+     * 存在しない場合、値は{@code null}となります。解析に失敗した場合は
+     * {@link ExecutionException}となります。個々の{@link Future}は取り消せません。
+     * @param name パラメータ名
+     * @param processor パートを値に変換する{@link PartProcessor}
+     * @return {@link Future}
+     */
+    public <R> Future<R> getFuture(final String name, final PartProcessor<R> processor) {
+        return new Future<R>() {
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return false;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+
+            @Override
+            public boolean isDone() {
+                synchronized (SpoolingMultipartParameters.this) {
+                    return done || firsts.containsKey(name);
+                }
+            }
+
+            @Override
+            public R get() throws InterruptedException, ExecutionException {
+                return convert(awaitPart(name, -1));
+            }
+
+            @Override
+            public R get(long timeout, TimeUnit unit) throws InterruptedException,
+                    ExecutionException, TimeoutException {
+                final long deadline = System.nanoTime() + unit.toNanos(timeout);
+                final FileItemMultipart part = awaitPart(name, deadline);
+                if (part == null && isDone() == false) {
+                    throw new TimeoutException();
+                }
+                return convert(part);
+            }
+
+            private R convert(FileItemMultipart part) throws ExecutionException {
+                if (part == null) {
+                    return null;
+                }
+                try {
+                    return processor.process(part);
+                } catch (final IOException e) {
+                    throw new ExecutionException(e);
+                } catch (final RuntimeException e) {
+                    throw new ExecutionException(e);
+                }
+            }
+        };
+    }
+
+    private synchronized FileItemMultipart awaitPart(String name, long deadline)
+            throws InterruptedException, ExecutionException {
+        FileItemMultipart part;
+        while ((part = firsts.get(name)) == null && done == false) {
+            if (deadline < 0) {
+                wait();
+            } else {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return null;
+                }
+                wait(remaining);
+            }
+        }
+        if (part == null && failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return part;
+    }
+
+    private synchronized FileItemMultipartParameters awaitCompletion() {
+        try {
+            while (done == false) {
+                wait();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileUploadFailureException(new InterruptedIOException());
+        }
+        if (failure instanceof FileUploadException) {
+            throw new FileUploadFailureException((FileUploadException) failure);
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new FileUploadFailureException(new IOException(failure));
+        }
+        if (delegate == null) {
+            throw new IllegalStateException("parameters have been disposed");
+        }
+        return delegate;
+    }
+
+    @Override
+    public Iterator<FileItemMultipart> iterator() {
+        return awaitCompletion().iterator();
+    }
+
+    /**
+     * 書き出しを中断し、書き出されたパートを削除します。<br/>
+     * リクエストボディを閉じてバックグラウンドのスレッドに割り込み、終了を待たずに
+     * 返却します。書き出し中のパートは、バックグラウンドのスレッドが終了する際に
+     * 削除されます。書き出しが開始されていない場合、待機している参照は失敗し、
+     * 以降の書き出しは開始されません。
+     */
+    @Override
+    public void dispose() {
+        final InputStream in;
+        synchronized (this) {
+            this.disposed = true;
+            if (this.delegate != null) {
+                this.delegate.dispose();
+                this.delegate = null;
+            }
+            this.firsts.clear();
+            if (this.done == false && this.spooling == false) {
+                failed(new FileUploadException("the request was disposed before spooling"));
+            }
+            in = this.body;
+            if (this.spooling && this.cancelled == false) {
+                this.cancelled = true;
+                this.worker.interrupt();
+            }
+        }
+        // unblocks the spooling thread reading the request body.
+        IOUtils.closeQuietly(in);
+    }
+
+    @Override
+    public String[] getParameter(String name) {
+        return awaitCompletion().getParameter(name);
+    }
+
+    @Override
+    public Collection<String> getParameterNames() {
+        return awaitCompletion().getParameterNames();
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return awaitCompletion().getParameterMap();
+    }
+
+    @Override
+    public FileItemMultipart[] getMultiparts(String name) {
+        return awaitCompletion().getMultiparts(name);
+    }
+
+    @Override
+    public Collection<String> getMultipartParameterNames() {
+        return awaitCompletion().getMultipartParameterNames();
+    }
+
+    public synchronized boolean isDone() {
+        return this.done;
+    }
+
+    boolean isDisposed() {
+        return this.disposed;
+    }
+
+    /**
+     * リクエストボディ以外の属性を呼び出し時点で取得した{@link RequestContext}を
+     * 返却します。<br/>
+     * バックグラウンドで書き出す際に、リクエストが完了した後の{@link RequestContext}を
+     * 参照しないよう、リクエストを処理するスレッドで呼び出してください。
+     * @param context {@link RequestContext}
+     * @return 属性を取得した{@link RequestContext}
+     */
+    static RequestContext capture(RequestContext context) {
+        return new CapturedRequestContext(context);
+    }
+
+    private static final class CapturedRequestContext implements UploadContext {
+
+        private final RequestContext context;
+        private final String characterEncoding;
+        private final String contentType;
+        private final long contentLength;
+
+        CapturedRequestContext(RequestContext context) {
+            this.context = context;
+            this.characterEncoding = context.getCharacterEncoding();
+            this.contentType = context.getContentType();
+            this.contentLength = context instanceof UploadContext ? ((UploadContext) context)
+                    .contentLength() : context.getContentLength();
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return characterEncoding;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        @Deprecated
+        public int getContentLength() {
+            return (int) Math.min(contentLength, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return context.getInputStream();
+        }
+    }
+
+    /**
+     * {@link #dispose()}により読み込みを中断できるリクエストボディを返却する
+     * {@link RequestContext}です。
+     */
+    private final class AbortableRequestContext implements UploadContext {
+
+        private final RequestContext context;
+
+        AbortableRequestContext(RequestContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return context.getCharacterEncoding();
+        }
+
+        @Override
+        public String getContentType() {
+            return context.getContentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return context instanceof UploadContext ? ((UploadContext) context).contentLength()
+                    : context.getContentLength();
+        }
+
+        @Override
+        @Deprecated
+        public int getContentLength() {
+            return context.getContentLength();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(opened(context.getInputStream())) {
+
+                @Override
+                public int read() throws IOException {
+                    checkDisposed();
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    checkDisposed();
+                    return super.read(b, off, len);
+                }
+            };
+        }
+
+        private void checkDisposed() throws IOException {
+            if (disposed) {
+                throw new IOException("the request was disposed while spooling");
+            }
+        }
+    }
+}
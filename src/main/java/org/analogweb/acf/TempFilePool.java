@@ -0,0 +1,121 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一時ファイルを削除せずに再利用するプールです。<br/>
+ * 返却されたファイルは新たなファイル名に変更した上で保持され、次の{@link #acquire()}で
+ * 再び使用されます。返却前のファイル名を保持している呼び出し元が、再利用された
+ * ファイルを参照することはありません。内容は次の書き込みの開始時に切り詰められます。
+ * 保持するファイル数の上限を超えて返却されたファイルは削除されます。
+ * プールのファイルは{@link SpoolSweeper}の対象とならない名前で作成され、
+ * 生成時にディレクトリに残されていたファイルは再利用されます。
+ * @author snowgoose
+ */
+public class TempFilePool {
+
+    private static final String PREFIX = "pooled_";
+    private static final String SUFFIX = ".tmp";
+    private final File directory;
+    private final int maxIdle;
+    private final Queue<File> idle = new ConcurrentLinkedQueue<File>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * @param directory 一時ファイルを作成するディレクトリ
+     * @param maxIdle プールに保持するファイル数の上限
+     */
+    public TempFilePool(File directory, int maxIdle) {
+        this.directory = directory;
+        this.maxIdle = maxIdle;
+        adoptExistingFiles();
+    }
+
+    /**
+     * 一時ファイルを取得します。<br/>
+     * プールに保持されたファイルがない場合は、新たなファイル名を返却します。
+     * このファイルはまだ作成されていない場合があります。
+     */
+    public File acquire() {
+        final File file = idle.poll();
+        if (file != null) {
+            idleCount.decrementAndGet();
+            return file;
+        }
+        return newFile();
+    }
+
+    /**
+     * 一時ファイルをプールに返却します。<br/>
+     * ファイルは新たなファイル名に変更されるため、返却後に元のファイル名は存在しません。
+     * @param file {@link #acquire()}により取得したファイル
+     */
+    public void release(File file) {
+        if (file == null || file.exists() == false) {
+            return;
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            file.delete();
+            return;
+        }
+        final File renamed = newFile();
+        if (file.renameTo(renamed) == false) {
+            idleCount.decrementAndGet();
+            file.delete();
+            return;
+        }
+        idle.offer(renamed);
+    }
+
+    /**
+     * 指定された数の空の一時ファイルをあらかじめ作成し、プールに保持します。
+     */
+    public void preallocate(int count) throws IOException {
+        for (int i = 0; i < count && idleCount.get() < maxIdle; i++) {
+            final File file = newFile();
+            if (file.createNewFile()) {
+                idleCount.incrementAndGet();
+                idle.offer(file);
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * プールに保持されているファイルの数を返却します。
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    private File newFile() {
+        return new File(directory, PREFIX + UUID.randomUUID() + SUFFIX);
+    }
+
+    private void adoptExistingFiles() {
+        final File[] remains = directory.listFiles(new FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                final String name = file.getName();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX) && file.isFile();
+            }
+        });
+        if (remains == null) {
+            return;
+        }
+        for (final File file : remains) {
+            release(file);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.fileupload.disk.DiskFileItem;
+
+/**
+ * {@link TrackedDiskFileItemFactory}により生成され、書き込みの完了と解放を
+ * {@link DiskFileItemListener}に通知する{@link DiskFileItem}です。<br/>
+ * 削除されずに回収されたパートは{@link PhantomReference}により検出され、
+ * 次のパートの生成時に解放が通知されます。
+ * @author snowgoose
+ */
+class TrackedDiskFileItem extends DiskFileItem {
+
+    private static final long serialVersionUID = 6319054418626471580L;
+    private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<Object>();
+    private static final Set<Lifecycle> TRACKED = Collections
+            .newSetFromMap(new ConcurrentHashMap<Lifecycle, Boolean>());
+    private final transient File tempFile;
+    private final transient Lifecycle lifecycle;
+
+    TrackedDiskFileItem(DiskFileItemSpec spec, List<DiskFileItemListener> listeners) {
+        super(spec.getFieldName(), spec.getContentType(), spec.isFormField(), spec
+                .getFileName(), spec.getSizeThreshold(), spec.getRepository());
+        this.tempFile = spec.getTempFile() != null ? spec.getTempFile() : SpoolSweeper
+                .newFile(spec.getRepository());
+        this.lifecycle = new Lifecycle(this, listeners, getTempFile());
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new FilterOutputStream(super.getOutputStream()) {
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    lifecycle.written(getSize(), isInMemory());
+                }
+            }
+        };
+    }
+
+    /**
+     * {@link SpoolSweeper}の対象となる名前の一時ファイルを返却します。
+     */
+    @Override
+    protected File getTempFile() {
+        return this.tempFile;
+    }
+
+    @Override
+    public void delete() {
+        // listeners may move the temp file away before it is deleted.
+        lifecycle.release();
+        super.delete();
+    }
+
+    /**
+     * 削除されずに回収されたパートの解放を通知します。
+     */
+    static void expunge() {
+        Reference<?> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            ((Lifecycle) collected).release();
+        }
+    }
+
+    private static final class Lifecycle extends PhantomReference<Object> {
+
+        private final List<DiskFileItemListener> listeners;
+        private final File tempFile;
+        private final AtomicBoolean written = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Lifecycle(Object item, List<DiskFileItemListener> listeners, File tempFile) {
+            super(item, COLLECTED);
+            this.listeners = listeners;
+            this.tempFile = tempFile;
+            TRACKED.add(this);
+        }
+
+        void written(long size, boolean inMemory) {
+            if (released.get() || written.compareAndSet(false, true) == false) {
+                return;
+            }
+            for (final DiskFileItemListener listener : listeners) {
+                listener.written(size, inMemory);
+            }
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true) == false) {
+                return;
+            }
+            TRACKED.remove(this);
+            clear();
+            for (final DiskFileItemListener listener : listeners) {
+                listener.released(tempFile);
+            }
+        }
+    }
+}
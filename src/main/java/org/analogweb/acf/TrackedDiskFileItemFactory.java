@@ -0,0 +1,146 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.io.FileCleaningTracker;
+
+/**
+ * 追加された{@link DiskFileItemDecorator}を順に適用してパートを生成する
+ * {@link DiskFileItemFactory}です。<br/>
+ * {@link UploadMetrics}が指定されている場合、一時ファイルへの書き出しと削除を記録します。
+ * @author snowgoose
+ */
+public class TrackedDiskFileItemFactory extends DiskFileItemFactory {
+
+    private final List<DiskFileItemDecorator> decorators = new CopyOnWriteArrayList<DiskFileItemDecorator>();
+    private volatile UploadMetrics metrics;
+
+    public TrackedDiskFileItemFactory(int sizeThreshold, File repository) {
+        super(sizeThreshold, repository);
+    }
+
+    @Override
+    public FileItem createItem(String fieldName, String contentType, boolean isFormField,
+            String fileName) {
+        TrackedDiskFileItem.expunge();
+        final DiskFileItemSpec spec = new DiskFileItemSpec(fieldName, contentType, isFormField,
+                fileName, getSizeThreshold(), getRepository());
+        final List<DiskFileItemListener> listeners = new ArrayList<DiskFileItemListener>();
+        try {
+            for (final DiskFileItemDecorator decorator : this.decorators) {
+                final DiskFileItemListener listener = decorator.decorate(spec);
+                if (listener != null) {
+                    listeners.add(listener);
+                }
+            }
+        } catch (final RuntimeException e) {
+            for (final DiskFileItemListener listener : listeners) {
+                listener.released(spec.getTempFile());
+            }
+            throw e;
+        }
+        final UploadMetrics metrics = getMetrics();
+        if (metrics != null) {
+            listeners.add(new MeteringListener(metrics));
+        }
+        final TrackedDiskFileItem item = new TrackedDiskFileItem(spec, listeners);
+        final FileCleaningTracker tracker = getFileCleaningTracker();
+        if (tracker != null) {
+            tracker.track(item.getTempFile(), item);
+        }
+        return item;
+    }
+
+    /**
+     * パートの生成に適用する{@link DiskFileItemDecorator}を追加します。
+     * @return このインスタンス
+     */
+    public TrackedDiskFileItemFactory addDecorator(DiskFileItemDecorator decorator) {
+        this.decorators.add(decorator);
+        return this;
+    }
+
+    /**
+     * このインスタンスの{@link DiskFileItemDecorator}と{@link UploadMetrics}を引き継ぐ
+     * {@link TrackedDiskFileItemFactory}を生成します。<br/>
+     * {@link DiskFileItemDecorator}は生成時点のものが引き継がれます。ディレクトリが
+     * 指定された場合、一時ファイルの書き出し先を決定する{@link ShardingDecorator}と
+     * {@link RecyclingDecorator}は引き継がれません。
+     * @param sizeThreshold メモリ上に保持するパートの最大バイト数。{@code -1}の場合はこのインスタンスの閾値
+     * @param repository 一時ファイルを書き出すディレクトリ。{@code null}の場合はこのインスタンスのディレクトリ
+     * @return {@link TrackedDiskFileItemFactory}
+     */
+    public TrackedDiskFileItemFactory derive(final int sizeThreshold, File repository) {
+        final TrackedDiskFileItemFactory parent = this;
+        final TrackedDiskFileItemFactory derived = new TrackedDiskFileItemFactory(sizeThreshold,
+                repository != null ? repository : getRepository()) {
+
+            @Override
+            public int getSizeThreshold() {
+                return sizeThreshold >= 0 ? sizeThreshold : parent.getSizeThreshold();
+            }
+
+            @Override
+            public UploadMetrics getMetrics() {
+                return parent.getMetrics();
+            }
+        };
+        for (final DiskFileItemDecorator decorator : this.decorators) {
+            if (repository != null
+                    && (decorator instanceof ShardingDecorator || decorator instanceof RecyclingDecorator)) {
+                continue;
+            }
+            derived.addDecorator(decorator);
+        }
+        derived.setFileCleaningTracker(getFileCleaningTracker());
+        return derived;
+    }
+
+    public List<DiskFileItemDecorator> getDecorators() {
+        return this.decorators;
+    }
+
+    public UploadMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * 一時ファイルへの書き出しを記録する{@link UploadMetrics}を指定します。
+     */
+    public void setMetrics(UploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private static final class MeteringListener implements DiskFileItemListener {
+
+        private final UploadMetrics metrics;
+        private long spooled;
+
+        MeteringListener(UploadMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public synchronized void written(long size, boolean inMemory) {
+            if (inMemory) {
+                return;
+            }
+            this.spooled = size;
+            metrics.spilled(size);
+            metrics.spoolUsageChanged(size);
+        }
+
+        @Override
+        public synchronized void released(File tempFile) {
+            if (this.spooled > 0) {
+                metrics.spoolUsageChanged(-this.spooled);
+                this.spooled = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.analogweb.acf;
+
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+import org.analogweb.Multipart;
+
+/**
+ * 内容をJavaヒープ上のバッファを経由せずに書き出すことが可能な{@link Multipart}です。<br/>
+ * 一時ファイルに書き出されているパートは、可能な限りファイルの移動や
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}
+ * により転送されます。
+ * @author snowgoose
+ */
+public interface TransferableMultipart extends Multipart {
+
+    /**
+     * このパートの内容を指定されたファイルに書き出します。<br/>
+     * 一時ファイルに書き出されているパートは、そのファイルが移動されるため、
+     * 以降このパートの内容を読み出すことは出来ません。
+     * @param target 書き出し先のファイル
+     * @return 書き出したバイト数
+     * @throws FileUploadFailureException 書き出しに失敗した場合
+     */
+    long transferTo(Path target);
+
+    /**
+     * このパートの内容を{@link WritableByteChannel}に書き出します。
+     * @param channel 書き出し先の{@link WritableByteChannel}
+     * @return 書き出したバイト数
+     * @throws FileUploadFailureException 書き出しに失敗した場合
+     */
+    long transferTo(WritableByteChannel channel);
+}
@@ -0,0 +1,89 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * パートの内容を{@link WritableByteChannel}へ書き出すためのユーティリティです。
+ * @author snowgoose
+ */
+final class Transfers {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private Transfers() {
+        // nop.
+    }
+
+    static long write(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        final int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return length;
+    }
+
+    static long copy(InputStream in, WritableByteChannel channel) throws IOException {
+        final ReadableByteChannel source = Channels.newChannel(in);
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long transferred = 0;
+        while (source.read(buffer) != -1) {
+            buffer.flip();
+            transferred += write(buffer, channel);
+            buffer.clear();
+        }
+        return transferred;
+    }
+
+    /**
+     * ファイルの内容を{@link FileChannel#transferTo(long, long, WritableByteChannel)}により
+     * 書き出します。
+     */
+    static long transfer(Path source, WritableByteChannel channel) throws IOException {
+        final FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+        try {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, channel);
+            }
+            return size;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * ファイルの内容を、指定されたサイズ毎に分割して読み取り専用でマップします。
+     */
+    static MappedByteBuffer[] map(Path source, int chunkSize) throws IOException {
+        final FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+        try {
+            final long size = in.size();
+            final int count = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+            final MappedByteBuffer[] buffers = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final long position = (long) i * chunkSize;
+                buffers[i] = in.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(chunkSize, size - position));
+            }
+            return buffers;
+        } finally {
+            // mappings remain valid after the channel is closed.
+            in.close();
+        }
+    }
+
+    static FileChannel openTarget(Path target) throws IOException {
+        return FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,157 @@
+package org.analogweb.acf;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同時に処理するアップロードの数と、処理中のリクエストボディの合計バイト数を
+ * 制限します。<br/>
+ * 上限に達している場合、指定された時間だけ空きを待機し、それでも受け付けられない
+ * リクエストは{@link UploadRejectedException}により拒否されます。
+ * 待機時間に{@code 0}を指定すると、上限に達した時点で即座に拒否します。<br/>
+ * {@code Content-Length}が不明なリクエストには、
+ * {@link #setUnknownLengthReservation(long)}により指定されたバイト数が予約されます。
+ * @author snowgoose
+ */
+public class UploadAdmissionController {
+
+    private final int maxConcurrentUploads;
+    private final long maxInFlightBytes;
+    private final long waitMillis;
+    private final Semaphore uploads;
+    private long inFlightBytes;
+    private long unknownLengthReservation;
+
+    /**
+     * @param maxConcurrentUploads 同時に処理するアップロードの上限
+     * @param maxInFlightBytes 処理中のリクエストボディの合計バイト数の上限。{@code -1}で無制限
+     * @param waitMillis 上限に達している場合に待機するミリ秒
+     */
+    public UploadAdmissionController(int maxConcurrentUploads, long maxInFlightBytes,
+            long waitMillis) {
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.waitMillis = waitMillis;
+        this.uploads = new Semaphore(maxConcurrentUploads, true);
+        // fair share of in-flight bytes by default.
+        this.unknownLengthReservation = maxInFlightBytes < 0 ? 0 : maxInFlightBytes
+                / Math.max(maxConcurrentUploads, 1);
+    }
+
+    /**
+     * アップロードの処理を開始する許可を取得します。<br/>
+     * 取得した{@link Admission}は、処理の終了時に必ず{@link Admission#release()}
+     * してください。
+     * @param contentLength リクエストボディのバイト数。不明な場合は{@code -1}
+     * @return {@link Admission}
+     * @throws UploadRejectedException 許可が得られなかった場合
+     */
+    public Admission acquire(long contentLength) {
+        final long bytes = contentLength < 0 ? reservationForUnknownLength() : contentLength;
+        if (maxInFlightBytes >= 0 && bytes > maxInFlightBytes) {
+            throw new UploadRejectedException(String.format(
+                    "request size (%s) exceeds in-flight byte limit (%s)", bytes, maxInFlightBytes));
+        }
+        final long deadline = System.currentTimeMillis() + waitMillis;
+        try {
+            if (uploads.tryAcquire(waitMillis, TimeUnit.MILLISECONDS) == false) {
+                throw new UploadRejectedException(String.format(
+                        "concurrent uploads exceed limit (%s)", maxConcurrentUploads));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UploadRejectedException("interrupted while waiting for upload admission");
+        }
+        try {
+            reserveBytes(bytes, deadline);
+        } catch (final RuntimeException e) {
+            uploads.release();
+            throw e;
+        }
+        return new Admission(bytes);
+    }
+
+    private long reservationForUnknownLength() {
+        final long reservation = this.unknownLengthReservation;
+        if (reservation < 0 && maxInFlightBytes >= 0) {
+            throw new UploadRejectedException(
+                    "request without Content-Length is not accepted under in-flight byte limit");
+        }
+        return Math.max(reservation, 0);
+    }
+
+    /**
+     * {@code Content-Length}が不明なリクエストに予約するバイト数を指定します。<br/>
+     * デフォルトは処理中のリクエストボディの合計バイト数の上限を、同時に処理する
+     * アップロードの上限で等分したバイト数です。負の値を指定すると、合計バイト数が
+     * 制限されている場合に{@code Content-Length}が不明なリクエストを拒否します。
+     * 実際のリクエストボディのバイト数は{@link org.apache.commons.fileupload.FileUploadBase#setSizeMax(long)}
+     * などにより制限してください。
+     */
+    public void setUnknownLengthReservation(long unknownLengthReservation) {
+        this.unknownLengthReservation = unknownLengthReservation;
+    }
+
+    private synchronized void reserveBytes(long bytes, long deadline) {
+        if (maxInFlightBytes < 0) {
+            inFlightBytes += bytes;
+            return;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        while (inFlightBytes + bytes > maxInFlightBytes) {
+            if (remaining <= 0) {
+                throw new UploadRejectedException(String.format(
+                        "in-flight bytes exceed limit (%s)", maxInFlightBytes));
+            }
+            try {
+                wait(remaining);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UploadRejectedException(
+                        "interrupted while waiting for upload admission");
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+        inFlightBytes += bytes;
+    }
+
+    private synchronized void releaseBytes(long bytes) {
+        inFlightBytes -= bytes;
+        notifyAll();
+    }
+
+    public int getActiveUploads() {
+        return maxConcurrentUploads - uploads.availablePermits();
+    }
+
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    /**
+     * {@link UploadAdmissionController}により許可されたアップロードを表します。
+     */
+    public final class Admission {
+
+        private final long bytes;
+        private boolean released;
+
+        Admission(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * 許可を返却します。複数回呼び出しても一度だけ返却されます。
+         */
+        public void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            releaseBytes(bytes);
+            uploads.release();
+        }
+    }
+}
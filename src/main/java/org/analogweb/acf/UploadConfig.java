@@ -0,0 +1,46 @@
+package org.analogweb.acf;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.analogweb.util.StringUtils;
+
+/**
+ * {@link MultipartParam}を使用するエンドポイントごとに、リクエストボディの解析方法を
+ * 指定します。<br/>
+ * 指定された設定はエンドポイントごとに一度だけ解決され、キャッシュされます。
+ * サイズなどの上限は{@link MultipartParam}により指定してください。
+ * @author snowgoose
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.ANNOTATION_TYPE })
+public @interface UploadConfig {
+
+    /**
+     * リクエストボディの解析方法です。
+     */
+    UploadStrategy strategy() default UploadStrategy.DEFAULT;
+
+    /**
+     * メモリ上に保持するパートの最大バイト数です。これを超えるパートは一時ファイルに
+     * 書き出されます。{@code -1}(デフォルト)で{@link MultipartParameterResolver}の
+     * 設定に従います。
+     */
+    int sizeThreshold() default -1;
+
+    /**
+     * 一時ファイルを書き出すディレクトリです。指定しない場合は
+     * {@link MultipartParameterResolver}の設定に従います。
+     */
+    String repository() default StringUtils.EMPTY;
+
+    /**
+     * 解析の直後に全てのフォームフィールドを文字列に変換するかを指定します。<br/>
+     * {@code false}(デフォルト)の場合、フィールドは参照された時点で変換されます。
+     */
+    boolean eagerDecoding() default false;
+}
@@ -0,0 +1,46 @@
+package org.analogweb.acf;
+
+/**
+ * アップロードの処理に関する計測値を受け取るSPIです。<br/>
+ * {@link MultipartParameterResolver}及び{@link TrackedDiskFileItemFactory}から、
+ * リクエストを処理するスレッド上で呼び出されるため、実装は速やかに終了する必要があります。
+ * @author snowgoose
+ */
+public interface UploadMetrics {
+
+    /**
+     * リクエストボディの解析が終了した際に呼び出されます。
+     * @param elapsedNanos 解析に要したナノ秒
+     * @param contentLength リクエストボディのバイト数。不明な場合は{@code -1}
+     * @param succeeded 解析に成功した場合は{@code true}
+     */
+    void parsed(long elapsedNanos, long contentLength, boolean succeeded);
+
+    /**
+     * リクエストに含まれるパートの数が確定した際に呼び出されます。
+     */
+    void partsParsed(int parts);
+
+    /**
+     * パラメータの値が解決された際に呼び出されます。
+     * @param elapsedNanos 解決に要したナノ秒
+     */
+    void resolved(long elapsedNanos);
+
+    /**
+     * アップロードの上限により、リクエストが拒否された際に呼び出されます。
+     */
+    void rejected();
+
+    /**
+     * パートが一時ファイルに書き出された際に呼び出されます。
+     * @param size パートのバイト数
+     */
+    void spilled(long size);
+
+    /**
+     * 一時ファイルが使用するディスク容量が変化した際に呼び出されます。
+     * @param delta 変化したバイト数
+     */
+    void spoolUsageChanged(long delta);
+}
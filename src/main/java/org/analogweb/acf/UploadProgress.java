@@ -0,0 +1,219 @@
+package org.analogweb.acf;
+
+import org.analogweb.RequestContext;
+import org.apache.commons.fileupload.ProgressListener;
+
+/**
+ * 一つのアップロードの進捗を表す{@link ProgressListener}です。<br/>
+ * 読み込み済みのバイト数、処理中のパートの位置、転送速度と残り時間の推定値を
+ * 他のスレッドから参照できます。転送速度は直近の計測区間の値を、区間が
+ * 未確定の場合は開始からの平均を使用します。
+ * @author snowgoose
+ */
+public class UploadProgress implements ProgressListener {
+
+    static final String ATTRIBUTE_NAME = UploadProgress.class.getCanonicalName();
+    static final long SAMPLE_INTERVAL_MILLIS = 1000;
+    private final String owner;
+    private final String uploadId;
+    private final long startedAt;
+    private final UploadProgressRegistry registry;
+    private volatile long contentLength;
+    private volatile long bytesRead;
+    private volatile int items;
+    private volatile long lastUpdatedAt;
+    private volatile long recentBytesPerSecond = -1;
+    private volatile boolean completed;
+    private volatile boolean canceled;
+    private long sampledAt;
+    private long sampledBytes;
+    private Thread worker;
+
+    UploadProgress(UploadProgressRegistry registry, String uploadId, long contentLength,
+            long startedAt) {
+        this(registry, null, uploadId, contentLength, startedAt);
+    }
+
+    UploadProgress(UploadProgressRegistry registry, String owner, String uploadId,
+            long contentLength, long startedAt) {
+        this.registry = registry;
+        this.owner = owner;
+        this.uploadId = uploadId;
+        this.contentLength = contentLength;
+        this.startedAt = startedAt;
+        this.lastUpdatedAt = startedAt;
+        this.sampledAt = startedAt;
+    }
+
+    /**
+     * リクエストに関連付けられた{@link UploadProgress}を取得します。
+     * @return {@link UploadProgress}。進捗が記録されていない場合は{@code null}
+     */
+    public static UploadProgress get(RequestContext request) {
+        final Object value = request.getAttribute(ATTRIBUTE_NAME);
+        if (value instanceof UploadProgress) {
+            return (UploadProgress) value;
+        }
+        return null;
+    }
+
+    @Override
+    public void update(long pBytesRead, long pContentLength, int pItems) {
+        update(pBytesRead, pContentLength, pItems, System.currentTimeMillis());
+    }
+
+    void update(long pBytesRead, long pContentLength, int pItems, long now) {
+        if (canceled) {
+            throw new UploadRejectedException(String.format("upload [%s] was canceled",
+                    uploadId));
+        }
+        synchronized (this) {
+            if (now - sampledAt >= SAMPLE_INTERVAL_MILLIS) {
+                recentBytesPerSecond = (pBytesRead - sampledBytes) * 1000 / (now - sampledAt);
+                sampledAt = now;
+                sampledBytes = pBytesRead;
+            }
+        }
+        if (pContentLength >= 0) {
+            this.contentLength = pContentLength;
+        }
+        this.items = pItems;
+        this.bytesRead = pBytesRead;
+        this.lastUpdatedAt = now;
+    }
+
+    public String getUploadId() {
+        return this.uploadId;
+    }
+
+    String getOwner() {
+        return this.owner;
+    }
+
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    /**
+     * @return リクエストボディのバイト数。不明な場合は{@code -1}
+     */
+    public long getContentLength() {
+        return this.contentLength;
+    }
+
+    /**
+     * 現在処理中のパートの位置を返却します。<br/>
+     * 最初のパートは{@code 1}です。まだパートが検出されていない場合は{@code 0}です。
+     */
+    public int getItems() {
+        return this.items;
+    }
+
+    public long getStartedAt() {
+        return this.startedAt;
+    }
+
+    public long getLastUpdatedAt() {
+        return this.lastUpdatedAt;
+    }
+
+    public long getBytesPerSecond() {
+        return getBytesPerSecond(System.currentTimeMillis());
+    }
+
+    long getBytesPerSecond(long now) {
+        final long recent = this.recentBytesPerSecond;
+        if (recent >= 0) {
+            return recent;
+        }
+        final long elapsed = now - this.startedAt;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return this.bytesRead * 1000 / elapsed;
+    }
+
+    /**
+     * 残り時間の推定値を返却します。
+     * @return 残りのミリ秒。リクエストボディのサイズや転送速度が不明な場合は{@code -1}
+     */
+    public long getEstimatedRemainingMillis() {
+        return getEstimatedRemainingMillis(System.currentTimeMillis());
+    }
+
+    long getEstimatedRemainingMillis(long now) {
+        if (completed) {
+            return 0;
+        }
+        final long length = this.contentLength;
+        final long rate = getBytesPerSecond(now);
+        if (length < 0 || rate <= 0) {
+            return -1;
+        }
+        return Math.max(length - this.bytesRead, 0) * 1000 / rate;
+    }
+
+    /**
+     * 指定した時間以上、データを受信していないかを判定します。
+     * @param stallMillis 停止とみなすミリ秒
+     */
+    public boolean isStalled(long stallMillis) {
+        return isStalled(stallMillis, System.currentTimeMillis());
+    }
+
+    boolean isStalled(long stallMillis, long now) {
+        return completed == false && now - this.lastUpdatedAt >= stallMillis;
+    }
+
+    public boolean isCompleted() {
+        return this.completed;
+    }
+
+    public boolean isCanceled() {
+        return this.canceled;
+    }
+
+    /**
+     * アップロードを中断します。<br/>
+     * 解析中のスレッドは割り込まれ、以降に受信したデータの処理は
+     * {@link UploadRejectedException}となります。
+     */
+    public void cancel() {
+        this.canceled = true;
+        synchronized (this) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * アップロードを完了し、{@link UploadProgressRegistry}から削除します。
+     */
+    public void complete() {
+        this.completed = true;
+        if (registry != null) {
+            registry.remove(this);
+        }
+    }
+
+    synchronized void bind(Thread thread) {
+        this.worker = thread;
+    }
+
+    void unbind() {
+        synchronized (this) {
+            this.worker = null;
+        }
+        if (canceled) {
+            // do not leak the interruption to the next task of this thread.
+            Thread.interrupted();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UploadProgress[%s: %s/%s bytes, items=%s]", uploadId, bytesRead,
+                contentLength, items);
+    }
+}
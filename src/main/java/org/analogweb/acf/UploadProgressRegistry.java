@@ -0,0 +1,124 @@
+package org.analogweb.acf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.analogweb.Headers;
+import org.analogweb.RequestContext;
+import org.analogweb.util.StringUtils;
+
+/**
+ * 処理中のアップロードの{@link UploadProgress}をアップロードIDごとに保持します。<br/>
+ * アップロードIDは通常サーバで生成され、{@link UploadProgress#get(RequestContext)}から
+ * 取得した{@link UploadProgress#getUploadId()}をクライアントに返却します。
+ * リクエストの属性{@value #OWNER_ATTRIBUTE}にセッションなどの所有者が指定されている場合のみ、
+ * アップロードIDをリクエストヘッダ{@value #DEFAULT_UPLOAD_ID_HEADER}によりクライアントから
+ * 指定でき、アップロードIDは所有者ごとに区別されます。
+ * 処理中のアップロードと同じアップロードIDのリクエストは拒否されます。<br/>
+ * 進捗は他のリクエストを処理するスレッドから並行して参照できます。
+ * @author snowgoose
+ */
+public class UploadProgressRegistry {
+
+    public static final String DEFAULT_UPLOAD_ID_HEADER = "X-Upload-Id";
+    public static final String OWNER_ATTRIBUTE = UploadProgressRegistry.class
+            .getCanonicalName() + ".OWNER";
+    private final ConcurrentMap<String, UploadProgress> progresses = new ConcurrentHashMap<String, UploadProgress>();
+    private String uploadIdHeader = DEFAULT_UPLOAD_ID_HEADER;
+
+    /**
+     * リクエストの進捗の記録を開始します。
+     * @param request {@link RequestContext}
+     * @return 新しい{@link UploadProgress}
+     * @throws UploadRejectedException 同じアップロードIDの進捗が既に記録されている場合
+     */
+    public UploadProgress start(RequestContext request) {
+        final String owner = resolveOwner(request);
+        final UploadProgress progress = new UploadProgress(this, owner, resolveUploadId(
+                request, owner), request.getContentLength(), System.currentTimeMillis());
+        if (progresses.putIfAbsent(key(owner, progress.getUploadId()), progress) != null) {
+            throw new UploadRejectedException(String.format("upload [%s] is already in progress",
+                    progress.getUploadId()));
+        }
+        request.setAttribute(UploadProgress.ATTRIBUTE_NAME, progress);
+        return progress;
+    }
+
+    /**
+     * アップロードの所有者を取得します。
+     * @return 所有者。指定されていない場合は{@code null}
+     */
+    protected String resolveOwner(RequestContext request) {
+        final Object owner = request.getAttribute(OWNER_ATTRIBUTE);
+        return owner != null ? owner.toString() : null;
+    }
+
+    protected String resolveUploadId(RequestContext request, String owner) {
+        if (owner == null) {
+            // client ids are accepted only within the owner's namespace.
+            return UUID.randomUUID().toString();
+        }
+        final Headers headers = request.getRequestHeaders();
+        if (headers != null) {
+            final List<String> values = headers.getValues(getUploadIdHeader());
+            if (values != null && values.isEmpty() == false
+                    && StringUtils.isNotEmpty(values.get(0))) {
+                return values.get(0);
+            }
+        }
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * リクエストの所有者のアップロードの進捗を取得します。
+     * @param request 進捗を参照する{@link RequestContext}
+     * @param uploadId アップロードID
+     * @return {@link UploadProgress}。処理中のアップロードが存在しない場合は{@code null}
+     */
+    public UploadProgress get(RequestContext request, String uploadId) {
+        return progresses.get(key(resolveOwner(request), uploadId));
+    }
+
+    public Collection<UploadProgress> getProgresses() {
+        return Collections.unmodifiableCollection(progresses.values());
+    }
+
+    /**
+     * 指定した時間以上、データを受信していないアップロードを返却します。<br/>
+     * 返却された{@link UploadProgress}を{@link UploadProgress#cancel()}することで、
+     * 解析中のスレッドを解放できます。
+     * @param stallMillis 停止とみなすミリ秒
+     */
+    public List<UploadProgress> getStalled(long stallMillis) {
+        final long now = System.currentTimeMillis();
+        final List<UploadProgress> stalled = new ArrayList<UploadProgress>();
+        for (final UploadProgress progress : progresses.values()) {
+            if (progress.isStalled(stallMillis, now)) {
+                stalled.add(progress);
+            }
+        }
+        return stalled;
+    }
+
+    void remove(UploadProgress progress) {
+        progresses.remove(key(progress.getOwner(), progress.getUploadId()), progress);
+    }
+
+    private static String key(String owner, String uploadId) {
+        // generated ids never contain a line break.
+        return owner == null ? uploadId : owner + '\n' + uploadId;
+    }
+
+    protected String getUploadIdHeader() {
+        return this.uploadIdHeader;
+    }
+
+    public void setUploadIdHeader(String uploadIdHeader) {
+        this.uploadIdHeader = uploadIdHeader;
+    }
+}
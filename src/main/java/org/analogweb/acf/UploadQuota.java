@@ -0,0 +1,168 @@
+package org.analogweb.acf;
+
+import org.analogweb.RequestContext;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
+
+/**
+ * リクエストごとに適用されるアップロードの上限です。<br/>
+ * リクエストボディ及びファイルの最大バイト数と、パートの数、フィールドごとのパートの数、
+ * パートのヘッダの最大バイト数を指定します。いずれも{@code -1}で無制限です。
+ * {@link MultipartParam}によりルートごとに指定された上限は、
+ * {@link #narrow(UploadQuota)}により全体の上限と組み合わせて適用されます。
+ * @author snowgoose
+ */
+public final class UploadQuota {
+
+    static final String ATTRIBUTE_NAME = UploadQuota.class.getCanonicalName();
+    public static final UploadQuota UNLIMITED = new UploadQuota(-1, -1, -1, -1, -1);
+    private final long maxRequestSize;
+    private final long maxFileSize;
+    private final int maxParts;
+    private final int maxPartsPerField;
+    private final int maxHeaderSize;
+
+    /**
+     * @param maxRequestSize リクエストボディの最大バイト数
+     * @param maxFileSize パートごとの最大バイト数
+     * @param maxParts パートの最大数
+     * @param maxPartsPerField 同じ名前のパートの最大数
+     * @param maxHeaderSize パートごとのヘッダの最大バイト数
+     */
+    public UploadQuota(long maxRequestSize, long maxFileSize, int maxParts, int maxPartsPerField,
+            int maxHeaderSize) {
+        this.maxRequestSize = maxRequestSize;
+        this.maxFileSize = maxFileSize;
+        this.maxParts = maxParts;
+        this.maxPartsPerField = maxPartsPerField;
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * {@link MultipartParam}に指定された上限を取得します。
+     * @param param {@link MultipartParam}
+     * @return {@link UploadQuota}。上限が指定されていない場合は{@link #UNLIMITED}
+     */
+    public static UploadQuota of(MultipartParam param) {
+        if (param == null) {
+            return UNLIMITED;
+        }
+        final UploadQuota quota = new UploadQuota(param.maxRequestSize(), param.maxFileSize(),
+                param.maxParts(), param.maxPartsPerField(), param.maxHeaderSize());
+        return quota.isUnlimited() ? UNLIMITED : quota;
+    }
+
+    static UploadQuota get(RequestContext request) {
+        final Object value = request.getAttribute(ATTRIBUTE_NAME);
+        if (value instanceof UploadQuota) {
+            return (UploadQuota) value;
+        }
+        return null;
+    }
+
+    static void put(RequestContext request, UploadQuota quota) {
+        request.setAttribute(ATTRIBUTE_NAME, quota);
+    }
+
+    /**
+     * この上限と指定された上限のうち、それぞれ厳しい方を適用した上限を返却します。
+     */
+    public UploadQuota narrow(UploadQuota other) {
+        if (other == null || other == this || other.isUnlimited()) {
+            return this;
+        }
+        if (isUnlimited()) {
+            return other;
+        }
+        return new UploadQuota(min(maxRequestSize, other.maxRequestSize), min(maxFileSize,
+                other.maxFileSize), (int) min(maxParts, other.maxParts), (int) min(
+                maxPartsPerField, other.maxPartsPerField), (int) min(maxHeaderSize,
+                other.maxHeaderSize));
+    }
+
+    /**
+     * {@link FileUploadBase}に指定された上限よりも厳しいバイト数の上限が
+     * 指定されているかを検査します。
+     */
+    boolean narrows(FileUploadBase fileUpload) {
+        return isNarrower(maxRequestSize, fileUpload.getSizeMax())
+                || isNarrower(maxFileSize, fileUpload.getFileSizeMax());
+    }
+
+    /**
+     * {@link FileUploadBase}にこの上限のバイト数を適用します。<br/>
+     * {@link FileUploadBase}に既に厳しい上限が指定されている場合、変更されません。
+     */
+    void applyTo(FileUploadBase fileUpload) {
+        if (isNarrower(maxRequestSize, fileUpload.getSizeMax())) {
+            fileUpload.setSizeMax(maxRequestSize);
+        }
+        if (isNarrower(maxFileSize, fileUpload.getFileSizeMax())) {
+            fileUpload.setFileSizeMax(maxFileSize);
+        }
+    }
+
+    /**
+     * リクエストボディを読み込む前に、{@code Content-Length}を検査します。
+     * @param contentLength リクエストボディのバイト数。不明な場合は{@code -1}
+     * @param sizeMax {@link FileUploadBase#getSizeMax()}
+     * @throws SizeLimitExceededException 上限を超えている場合
+     */
+    void checkContentLength(long contentLength, long sizeMax) throws SizeLimitExceededException {
+        final long limit = min(maxRequestSize, sizeMax);
+        if (limit >= 0 && contentLength > limit) {
+            throw new SizeLimitExceededException(String.format(
+                    "the request was rejected because its size (%s) exceeds the configured maximum (%s)",
+                    contentLength, limit), contentLength, limit);
+        }
+    }
+
+    boolean hasPartLimits() {
+        return maxParts >= 0 || maxPartsPerField >= 0 || maxHeaderSize >= 0;
+    }
+
+    boolean isUnlimited() {
+        return maxRequestSize < 0 && maxFileSize < 0 && hasPartLimits() == false;
+    }
+
+    public long getMaxRequestSize() {
+        return this.maxRequestSize;
+    }
+
+    public long getMaxFileSize() {
+        return this.maxFileSize;
+    }
+
+    public int getMaxParts() {
+        return this.maxParts;
+    }
+
+    public int getMaxPartsPerField() {
+        return this.maxPartsPerField;
+    }
+
+    public int getMaxHeaderSize() {
+        return this.maxHeaderSize;
+    }
+
+    private static boolean isNarrower(long limit, long current) {
+        return limit >= 0 && (current < 0 || limit < current);
+    }
+
+    private static long min(long a, long b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return Math.min(a, b);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "UploadQuota[maxRequestSize=%s, maxFileSize=%s, maxParts=%s, maxPartsPerField=%s, maxHeaderSize=%s]",
+                maxRequestSize, maxFileSize, maxParts, maxPartsPerField, maxHeaderSize);
+    }
+}
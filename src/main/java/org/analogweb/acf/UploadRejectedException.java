@@ -0,0 +1,17 @@
+package org.analogweb.acf;
+
+import org.analogweb.core.ApplicationRuntimeException;
+
+/**
+ * 同時に処理可能なアップロードの上限などにより、リクエストの受け付けが
+ * 拒否されたことを表します。
+ * @author snowgoose
+ */
+public class UploadRejectedException extends ApplicationRuntimeException {
+
+    private static final long serialVersionUID = -2618473027616283946L;
+
+    public UploadRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,116 @@
+package org.analogweb.acf;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.analogweb.util.StringUtils;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileUpload;
+
+/**
+ * エンドポイントごとに解決されたアップロードの設定です。<br/>
+ * {@link UploadConfig}と{@link MultipartParam}の上限から生成され、
+ * {@link MultipartParameterResolver}によりエンドポイントごとにキャッシュされます。
+ * エンドポイント固有の{@link FileItemFactory}及び{@link FileUpload}も、
+ * この設定とともに再利用されます。
+ * @author snowgoose
+ */
+public final class UploadRouteConfig {
+
+    private final UploadQuota quota;
+    private final UploadStrategy strategy;
+    private final int sizeThreshold;
+    private final File repository;
+    private final boolean eagerDecoding;
+    private final Map<String, Class<?>> futureTypes;
+    private volatile FileItemFactory fileItemFactory;
+    private volatile FileUpload fileUpload;
+
+    UploadRouteConfig(UploadQuota quota, UploadConfig config) {
+        this(quota, config, Collections.<String, Class<?>> emptyMap());
+    }
+
+    UploadRouteConfig(UploadQuota quota, UploadConfig config, Map<String, Class<?>> futureTypes) {
+        this.quota = quota;
+        this.futureTypes = futureTypes;
+        if (config == null) {
+            this.strategy = UploadStrategy.DEFAULT;
+            this.sizeThreshold = -1;
+            this.repository = null;
+            this.eagerDecoding = false;
+        } else {
+            this.strategy = config.strategy();
+            this.sizeThreshold = config.sizeThreshold();
+            this.repository = StringUtils.isEmpty(config.repository()) ? null : new File(
+                    config.repository());
+            this.eagerDecoding = config.eagerDecoding();
+        }
+    }
+
+    public UploadQuota getQuota() {
+        return this.quota;
+    }
+
+    public UploadStrategy getStrategy() {
+        return this.strategy;
+    }
+
+    /**
+     * @return メモリ上に保持するパートの最大バイト数。指定されていない場合は{@code -1}
+     */
+    public int getSizeThreshold() {
+        return this.sizeThreshold;
+    }
+
+    /**
+     * @return 一時ファイルを書き出すディレクトリ。指定されていない場合は{@code null}
+     */
+    public File getRepository() {
+        return this.repository;
+    }
+
+    public boolean isEagerDecoding() {
+        return this.eagerDecoding;
+    }
+
+    /**
+     * {@link java.util.concurrent.Future}型のパラメータが完了する値の型を取得します。
+     * @param name パラメータ名
+     * @return 値の型。型引数から特定できない場合は{@code null}
+     */
+    public Class<?> getFutureType(String name) {
+        return this.futureTypes.get(name);
+    }
+
+    /**
+     * 一時ファイルへの書き出しに関する設定が、エンドポイント固有に指定されているかを
+     * 返却します。
+     */
+    public boolean hasSpoolingConfig() {
+        return this.sizeThreshold >= 0 || this.repository != null;
+    }
+
+    FileItemFactory getFileItemFactory() {
+        return this.fileItemFactory;
+    }
+
+    void setFileItemFactory(FileItemFactory fileItemFactory) {
+        this.fileItemFactory = fileItemFactory;
+    }
+
+    FileUpload getFileUpload() {
+        return this.fileUpload;
+    }
+
+    void setFileUpload(FileUpload fileUpload) {
+        this.fileUpload = fileUpload;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "UploadRouteConfig[strategy=%s, sizeThreshold=%s, repository=%s, eagerDecoding=%s, %s]",
+                strategy, sizeThreshold, repository, eagerDecoding, quota);
+    }
+}
@@ -0,0 +1,29 @@
+package org.analogweb.acf;
+
+/**
+ * リクエストボディの解析方法です。
+ * @author snowgoose
+ * @see UploadConfig#strategy()
+ */
+public enum UploadStrategy {
+
+    /**
+     * {@link MultipartParameterResolver}の実装に従います。
+     */
+    DEFAULT,
+    /**
+     * 各パートを{@link org.apache.commons.fileupload.FileItem}として、
+     * 閾値を超えるものは一時ファイルに書き出します。
+     */
+    SPOOLING,
+    /**
+     * リクエストボディ全体をメモリ上に読み込み、各パートをそのスライスとして扱います。
+     * 小さなリクエストに適しています。
+     */
+    BUFFERED,
+    /**
+     * リクエストボディを逐次的に読み出し、パートをストリームのまま扱います。
+     * 大きなリクエストに適しています。
+     */
+    STREAMING
+}
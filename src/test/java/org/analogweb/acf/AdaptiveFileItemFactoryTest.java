@@ -0,0 +1,71 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.TestMultiparts.write;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.fileupload.FileItem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AdaptiveFileItemFactoryTest {
+
+    private AdaptiveFileItemFactory factory;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        factory = new AdaptiveFileItemFactory(1000, folder.getRoot());
+        factory.setMinSizeThreshold(16);
+        factory.setMaxSizeThreshold(400);
+    }
+
+    @Test
+    public void testCreateItemWithinBudget() throws Exception {
+        final FileItem item = factory.createItem("foo", "text/plain", false, "foo.txt");
+        assertThat(factory.getReservedBytes(), is(400L));
+        write(item, new byte[100]);
+        assertTrue(item.isInMemory());
+        // unused reservation is returned.
+        assertThat(factory.getReservedBytes(), is(100L));
+        item.delete();
+        assertThat(factory.getReservedBytes(), is(0L));
+    }
+
+    @Test
+    public void testCreateItemSpillOnExhaustedBudget() throws Exception {
+        final FileItem first = factory.createItem("foo", null, false, "foo.txt");
+        final FileItem second = factory.createItem("foo", null, false, "foo.txt");
+        final FileItem third = factory.createItem("foo", null, false, "foo.txt");
+        assertThat(factory.getReservedBytes(), is(1000L));
+        write(third, new byte[300]);
+        assertFalse(third.isInMemory());
+        assertThat(factory.getReservedBytes(), is(800L));
+        write(first, new byte[10]);
+        write(second, new byte[10]);
+        assertThat(factory.getReservedBytes(), is(20L));
+        first.delete();
+        second.delete();
+        third.delete();
+        assertThat(factory.getReservedBytes(), is(0L));
+    }
+
+    @Test
+    public void testSizeThresholdFollowsObservedSizes() throws Exception {
+        assertThat(factory.getSizeThreshold(), is(400));
+        for (int i = 0; i < 40; i++) {
+            final FileItem item = factory.createItem("foo", null, false, "foo.txt");
+            write(item, new byte[i < 36 ? 50 : 300]);
+            item.delete();
+        }
+        // 90 percentile of sizes is 50, rounded up to power of two.
+        assertThat(factory.getSizeThreshold(), is(64));
+        factory.setPercentile(1.0);
+        assertThat(factory.getSizeThreshold(), is(400));
+    }
+}
@@ -0,0 +1,145 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.analogweb.Headers;
+import org.analogweb.RequestContext;
+import org.analogweb.util.IOUtils;
+import org.junit.Test;
+
+public class ClientUploadBudgetTest {
+
+    @Test
+    public void testChargeWithinWindow() {
+        final ClientUploadBudget budget = new ClientUploadBudget(1000, 60000);
+        budget.charge("a", 600, 0);
+        budget.charge("b", 600, 0);
+        try {
+            budget.charge("a", 600, 1000);
+            fail();
+        } catch (final UploadRejectedException e) {
+            // expected.
+        }
+        // unknown length is accepted while budget remains.
+        budget.charge("a", -1, 2000);
+        budget.charge("a", 400, 3000);
+        try {
+            budget.charge("a", -1, 4000);
+            fail();
+        } catch (final UploadRejectedException e) {
+            // expected.
+        }
+        // next window.
+        budget.charge("a", 1000, 60000);
+    }
+
+    @Test
+    public void testResolveClientKey() {
+        final ClientUploadBudget budget = new ClientUploadBudget(1000, 60000);
+        budget.setClientKeyHeader("X-Forwarded-For");
+        final RequestContext request = mock(RequestContext.class);
+        final Headers headers = mock(Headers.class);
+        when(request.getRequestHeaders()).thenReturn(headers);
+        when(headers.getValues("X-Forwarded-For")).thenReturn(
+                Arrays.asList("203.0.113.9, 192.0.2.1"));
+        // the last address is appended by the trusted proxy.
+        assertThat(budget.resolveClientKey(request), is("192.0.2.1"));
+        budget.setTrustedProxies(2);
+        assertThat(budget.resolveClientKey(request), is("203.0.113.9"));
+        budget.setTrustedProxies(3);
+        assertThat(budget.resolveClientKey(request), is(nullValue()));
+        when(request.getAttribute(ClientUploadBudget.CLIENT_KEY_ATTRIBUTE)).thenReturn("user-1");
+        assertThat(budget.resolveClientKey(request), is("user-1"));
+        when(request.getContentLength()).thenReturn(300L);
+        budget.charge(request);
+        assertThat(budget.getRemaining("user-1"), is(700L));
+        assertThat(budget.getRemaining("192.0.2.1"), is(1000L));
+    }
+
+    @Test
+    public void testIgnoreHeaderByDefault() {
+        final ClientUploadBudget budget = new ClientUploadBudget(100, 60000);
+        final RequestContext request = mock(RequestContext.class);
+        final Headers headers = mock(Headers.class);
+        when(request.getRequestHeaders()).thenReturn(headers);
+        when(headers.getValues("X-Forwarded-For")).thenReturn(Arrays.asList("192.0.2.1"));
+        when(request.getContentLength()).thenReturn(300L);
+        assertThat(budget.resolveClientKey(request), is(nullValue()));
+        // unidentified requests are not charged.
+        budget.charge(request);
+        budget.charge(request);
+        assertThat(budget.getRemaining(""), is(100L));
+    }
+
+    @Test
+    public void testRejectOverMaxClients() {
+        final ClientUploadBudget budget = new ClientUploadBudget(1000, 60000);
+        budget.setMaxClients(2);
+        budget.charge("a", 100, 0);
+        budget.charge("b", 100, 0);
+        budget.charge("a", 100, 1000);
+        try {
+            budget.charge("c", 100, 1000);
+            fail();
+        } catch (final UploadRejectedException e) {
+            // expected.
+        }
+        // expired windows make room for new clients.
+        budget.charge("c", 100, 60000);
+    }
+
+    @Test
+    public void testRejectChunkedRequestOverBudget() {
+        final ClientUploadBudget budget = new ClientUploadBudget(1000, 60000);
+        final RequestContext request = chunked("user-1");
+        budget.charge("user-1", 1000, System.currentTimeMillis());
+        try {
+            budget.charge(request);
+            fail();
+        } catch (final UploadRejectedException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testChargeRepeatedChunkedRequests() throws Exception {
+        final ClientUploadBudget budget = new ClientUploadBudget(1000, 60000);
+        final RequestContext request = chunked("user-1");
+        for (int i = 0; i < 2; i++) {
+            budget.charge(request);
+            IOUtils.copy(budget.meter(request, new ByteArrayInputStream(new byte[400])),
+                    new ByteArrayOutputStream());
+        }
+        assertThat(budget.getRemaining("user-1"), is(200L));
+        budget.charge(request);
+        try {
+            IOUtils.copy(budget.meter(request, new ByteArrayInputStream(new byte[400])),
+                    new ByteArrayOutputStream());
+            fail();
+        } catch (final UploadRejectedException e) {
+            // expected.
+        }
+        try {
+            budget.charge(request);
+            fail();
+        } catch (final UploadRejectedException e) {
+            // expected.
+        }
+    }
+
+    private static RequestContext chunked(String clientKey) {
+        final RequestContext request = mock(RequestContext.class);
+        when(request.getAttribute(ClientUploadBudget.CLIENT_KEY_ATTRIBUTE)).thenReturn(clientKey);
+        when(request.getContentLength()).thenReturn(-1L);
+        return request;
+    }
+}
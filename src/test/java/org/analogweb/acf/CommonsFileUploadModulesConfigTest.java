@@ -29,5 +29,6 @@ public class CommonsFileUploadModulesConfigTest {
         final ModulesBuilder actual = config.prepare(builder);
         assertThat(actual, is(sameInstance(builder)));
         verify(builder).addRequestValueResolverClass(MultipartParameterResolver.class);
+        verify(builder).addApplicationProcessorClass(MultipartCleanupProcessor.class);
     }
 }
@@ -0,0 +1,171 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.analogweb.Headers;
+import org.analogweb.RequestContext;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileUploadBase.FileUploadIOException;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentDecoderTest {
+
+    private ContentDecoder decoder;
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        decoder = new ContentDecoder(new InflaterPool(2));
+    }
+
+    @Test
+    public void testDecodeGzip() throws Exception {
+        final byte[] content = "Hello compressed world!".getBytes();
+        final InputStream in = decoder.decode(new ByteArrayInputStream(gzip(content)), "gzip");
+        assertThat(read(in), is(content));
+        assertThat(decoder.getInflaterPool().getIdleCount(), is(1));
+    }
+
+    @Test
+    public void testDecodeDeflateAndIdentity() throws Exception {
+        final byte[] content = "Hello deflated world!".getBytes();
+        assertThat(read(decoder.decode(new ByteArrayInputStream(deflate(content)), "Deflate")),
+                is(content));
+        final ByteArrayInputStream raw = new ByteArrayInputStream(content);
+        assertTrue(decoder.decode(raw, "identity") == raw);
+        assertTrue(decoder.decode(raw, null) == raw);
+    }
+
+    @Test
+    public void testDecodeMultipleEncodings() throws Exception {
+        final byte[] content = "twice".getBytes();
+        assertThat(read(decoder.decode(new ByteArrayInputStream(gzip(deflate(content))),
+                "deflate, gzip")), is(content));
+    }
+
+    @Test
+    public void testUnsupportedEncoding() throws Exception {
+        thrown.expect(FileUploadIOException.class);
+        decoder.decode(new ByteArrayInputStream(new byte[0]), "zstd");
+    }
+
+    @Test
+    public void testCorruptTrailer() throws Exception {
+        final byte[] compressed = gzip("corrupt".getBytes());
+        compressed[compressed.length - 8] ^= 0xff;
+        thrown.expect(ZipException.class);
+        read(decoder.decode(new ByteArrayInputStream(compressed), "gzip"));
+    }
+
+    @Test
+    public void testRejectCompressionBomb() throws Exception {
+        decoder.setRatioThreshold(1024);
+        final InputStream in = decoder.decode(new ByteArrayInputStream(gzip(new byte[1024 * 1024])),
+                "gzip");
+        try {
+            read(in);
+            fail();
+        } catch (final FileUploadIOException e) {
+            assertTrue(e.getCause() instanceof SizeLimitExceededException);
+        }
+        assertThat(decoder.getInflaterPool().getIdleCount(), is(1));
+    }
+
+    @Test
+    public void testRejectDecodedSize() throws Exception {
+        decoder.setMaxDecodedSize(10);
+        thrown.expect(FileUploadIOException.class);
+        read(decoder.decode(new ByteArrayInputStream(gzip(new byte[100])), "gzip"));
+    }
+
+    @Test
+    public void testDecodeRequestBody() throws Exception {
+        final RequestContext request = mock(RequestContext.class);
+        final Headers headers = mock(Headers.class);
+        when(headers.getValues("Content-Encoding")).thenReturn(Arrays.asList("gzip"));
+        when(request.getRequestHeaders()).thenReturn(headers);
+        when(request.getContentLength()).thenReturn(30L);
+        when(request.getRequestBody()).thenReturn(new ByteArrayInputStream(gzip("body".getBytes())));
+        final AnalogwebRequestContext context = new AnalogwebRequestContext(request, decoder);
+        assertThat(context.getContentLength(), is(-1));
+        assertThat(read(context.getInputStream()), is("body".getBytes()));
+    }
+
+    @Test
+    public void testDecodeParts() throws Exception {
+        final String boundary = "----boundary";
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"foo\"; filename=\"foo.txt\"\r\n"
+                + "Content-Type: text/plain\r\n" + "Content-Encoding: gzip\r\n\r\n").getBytes());
+        body.write(gzip("Hello part!".getBytes()));
+        body.write(("\r\n--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"baa\"\r\n\r\n" + "plain\r\n" + "--"
+                + boundary + "--\r\n").getBytes());
+        final org.apache.commons.fileupload.RequestContext context = mock(org.apache.commons.fileupload.RequestContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data; boundary=" + boundary);
+        when(context.getContentLength()).thenReturn(body.size());
+        when(context.getInputStream()).thenReturn(new ByteArrayInputStream(body.toByteArray()));
+        final DefaultFileUploadFactory factory = new DefaultFileUploadFactory();
+        factory.setPartDecoder(decoder);
+        final List<FileItem> items = factory.createFileUpload(
+                new DiskFileItemFactory(4, folder.getRoot())).parseRequest(context);
+        assertThat(items.size(), is(2));
+        assertThat(items.get(0).getString(), is("Hello part!"));
+        assertThat(items.get(1).getString(), is("plain"));
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(content);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DeflaterOutputStream deflate = new DeflaterOutputStream(out);
+        deflate.write(content);
+        deflate.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,74 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class DigestingFileItemFactoryTest {
+
+    private DigestingFileItemFactory factory;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Before
+    public void setUp() {
+        factory = new DigestingFileItemFactory(new DiskFileItemFactory(8, folder.getRoot()),
+                "SHA-256", "MD5");
+    }
+
+    @Test
+    public void testDigestSpooledFile() throws Exception {
+        final byte[] content = "Hello digesting world!".getBytes();
+        final FileItem item = factory.createItem("foo", "text/plain", false, "foo.txt");
+        final OutputStream out = item.getOutputStream();
+        out.write(content, 0, 5);
+        out.write(content, 5, content.length - 5);
+        out.close();
+        final FileItemMultipart mp = new FileItemMultipart(item);
+        assertThat(mp.getDigest("SHA-256"),
+                is(MessageDigest.getInstance("SHA-256").digest(content)));
+        assertThat(mp.getDigest("md5"), is(MessageDigest.getInstance("MD5").digest(content)));
+        assertNull(mp.getDigest("SHA-1"));
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        assertThat(mp.getChecksum(), is(crc.getValue()));
+        // contents are still reachable through the wrapped item.
+        assertTrue(mp.isMappable());
+        final File target = new File(folder.getRoot(), "moved.txt");
+        mp.transferTo(target.toPath());
+        assertThat(Files.readAllBytes(target.toPath()), is(content));
+    }
+
+    @Test
+    public void testFormFieldNotDigested() {
+        final FileItem item = factory.createItem("foo", "text/plain", true, null);
+        assertFalse(item instanceof DigestingFileItem);
+        assertThat(new FileItemMultipart(item).getChecksum(), is(-1L));
+        factory.setDigestFormFields(true);
+        assertTrue(factory.createItem("foo", "text/plain", true, null) instanceof DigestingFileItem);
+    }
+
+    @Test
+    public void testUnknownAlgorithm() {
+        thrown.expect(IllegalArgumentException.class);
+        new DigestingFileItemFactory(new DiskFileItemFactory(), "UNKNOWN");
+    }
+}
@@ -0,0 +1,86 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.fileupload.FileItem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class FieldDecoderTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testDecodeAscii() {
+        final FieldDecoder decoder = FieldDecoder.forEncoding("UTF-8");
+        assertTrue(decoder.isAsciiCompatible());
+        assertThat(decoder.decode(ByteBuffer.wrap("hello=world".getBytes())), is("hello=world"));
+        assertThat(FieldDecoder.forEncoding("UTF-8"), is(sameInstance(decoder)));
+    }
+
+    @Test
+    public void testShareDecoderForAliases() {
+        final FieldDecoder decoder = FieldDecoder.forEncoding("UTF-8");
+        assertThat(FieldDecoder.forEncoding("utf-8"), is(sameInstance(decoder)));
+        assertThat(FieldDecoder.forEncoding("UTF8"), is(sameInstance(decoder)));
+    }
+
+    @Test
+    public void testDecodeMultibyte() throws Exception {
+        final ByteBuffer utf8 = ByteBuffer.wrap("abcあいう".getBytes("UTF-8"));
+        assertThat(FieldDecoder.forEncoding("UTF-8").decode(utf8), is("abcあいう"));
+        // source buffer is not consumed.
+        assertThat(utf8.position(), is(0));
+        final ByteBuffer sjis = ByteBuffer.wrap("漢字".getBytes("Shift_JIS"));
+        assertThat(FieldDecoder.forEncoding("Shift_JIS").decode(sjis), is("漢字"));
+    }
+
+    @Test
+    public void testDecodeNonAsciiCompatible() throws Exception {
+        final FieldDecoder decoder = FieldDecoder.forEncoding("UTF-16BE");
+        assertFalse(decoder.isAsciiCompatible());
+        assertThat(decoder.decode(ByteBuffer.wrap("abc".getBytes("UTF-16BE"))), is("abc"));
+    }
+
+    @Test
+    public void testUnsupportedEncoding() {
+        thrown.expect(FileUploadFailureException.class);
+        FieldDecoder.forEncoding("UnknownEncoding");
+    }
+
+    @Test
+    public void testDecodeOnlyReferencedFields() {
+        final FileItem small = field("small", "value".getBytes());
+        final FileItem hidden = field("hidden", new byte[1024]);
+        final FileItemMultipartParameters parameters = new FileItemMultipartParameters(
+                Arrays.asList(small, hidden), "UTF-8");
+        assertThat(parameters.getParameter("small")[0], is("value"));
+        final Map<String, String[]> map = parameters.getParameterMap();
+        assertThat(map.size(), is(2));
+        assertTrue(map.containsKey("hidden"));
+        verify(hidden, never()).get();
+        assertThat(map.get("hidden")[0].length(), is(1024));
+    }
+
+    private static FileItem field(String name, byte[] value) {
+        final FileItem item = mock(FileItem.class);
+        when(item.getFieldName()).thenReturn(name);
+        when(item.isFormField()).thenReturn(true);
+        when(item.get()).thenReturn(value);
+        return item;
+    }
+}
@@ -0,0 +1,113 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+
+import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileItemMultipartTest {
+
+    private FileItemMultipart multipart;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTransferToPathMovesStoredFile() throws Exception {
+        final DiskFileItem item = createItem(8, "Hello file!");
+        multipart = new FileItemMultipart(item);
+        final File stored = item.getStoreLocation();
+        assertTrue(stored.exists());
+        final File target = new File(folder.getRoot(), "moved.txt");
+        assertThat(multipart.transferTo(target.toPath()), is(11L));
+        assertFalse(stored.exists());
+        assertThat(new String(Files.readAllBytes(target.toPath())), is("Hello file!"));
+    }
+
+    @Test
+    public void testTransferToPathInMemory() throws Exception {
+        final DiskFileItem item = createItem(1024, "Hello file!");
+        multipart = new FileItemMultipart(item);
+        final File target = folder.newFile("written.txt");
+        assertThat(multipart.transferTo(target.toPath()), is(11L));
+        assertThat(new String(Files.readAllBytes(target.toPath())), is("Hello file!"));
+    }
+
+    @Test
+    public void testTransferToChannel() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        multipart = new FileItemMultipart(createItem(8, "Hello file!"));
+        assertThat(multipart.transferTo(Channels.newChannel(out)), is(11L));
+        multipart = new FileItemMultipart(createItem(1024, " Hello memory!"));
+        assertThat(multipart.transferTo(Channels.newChannel(out)), is(14L));
+        assertThat(new String(out.toByteArray()), is("Hello file! Hello memory!"));
+    }
+
+    @Test
+    public void testGetAsTemporalyFileInMemory() throws Exception {
+        multipart = new FileItemMultipart(createItem(1024, "Hello file!"));
+        final File actual = multipart.getAsTemporalyFile();
+        assertThat(new String(Files.readAllBytes(actual.toPath())), is("Hello file!"));
+        assertThat(multipart.getAsTemporalyFile(), is(actual));
+        multipart.delete();
+        assertFalse(actual.exists());
+    }
+
+    @Test
+    public void testGetAsTemporalyFileInRepository() throws Exception {
+        final File repository = folder.newFolder("repository");
+        final PooledFileItem item = (PooledFileItem) new PooledFileItemFactory(
+                new DirectBufferPool(4, 2, 16), 1024, repository).createItem("foo", "text/plain",
+                false, "foo.txt");
+        final OutputStream out = item.getOutputStream();
+        out.write("Hello pool!".getBytes());
+        out.close();
+        multipart = new FileItemMultipart(item);
+        final File actual = multipart.getAsTemporalyFile();
+        assertThat(actual.getParentFile(), is(repository));
+        assertThat(new String(Files.readAllBytes(actual.toPath())), is("Hello pool!"));
+        multipart.delete();
+        assertFalse(actual.exists());
+    }
+
+    @Test
+    public void testMapStoredFile() throws Exception {
+        multipart = new FileItemMultipart(createItem(8, "Hello mapped file!"));
+        assertTrue(multipart.isMappable());
+        final MappedByteBuffer[] actual = multipart.map(8);
+        assertThat(actual.length, is(3));
+        assertThat(actual[0].remaining(), is(8));
+        assertThat(actual[2].remaining(), is(2));
+        assertThat((char) actual[2].get(1), is('!'));
+        final ByteBuffer buffer = multipart.asReadOnlyBuffer();
+        assertThat(buffer.remaining(), is(18));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMapInMemory() throws Exception {
+        multipart = new FileItemMultipart(createItem(1024, "Hello file!"));
+        assertFalse(multipart.isMappable());
+        multipart.map();
+    }
+
+    private DiskFileItem createItem(int threshold, String content) throws Exception {
+        final DiskFileItem item = new DiskFileItem("foo", "text/plain", false, "foo.txt",
+                threshold, folder.getRoot());
+        final OutputStream out = item.getOutputStream();
+        out.write(content.getBytes());
+        out.close();
+        return item;
+    }
+}
@@ -7,6 +7,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
@@ -274,4 +277,62 @@ public class FileItemStreamMultipartParametersTest {
         assertTrue(names.contains("foo"));
         assertTrue(names.contains("baz"));
     }
+
+    @Test
+    public void testGetFirstParameterReadsOnlyRequiredParts() throws Exception {
+        final FileItemIterator iterator = mock(FileItemIterator.class);
+        final FileItemStream param1 = mock(FileItemStream.class);
+        final FileItemStream param2 = mock(FileItemStream.class);
+        final FileItemStream file1 = mock(FileItemStream.class);
+        when(iterator.hasNext()).thenReturn(true).thenReturn(true).thenReturn(true)
+        .thenReturn(false);
+        when(iterator.next()).thenReturn(param1).thenReturn(param2).thenReturn(file1);
+        when(param1.isFormField()).thenReturn(true);
+        when(param1.getFieldName()).thenReturn("foo");
+        when(param1.openStream()).thenReturn(new ByteArrayInputStream("hoge".getBytes()));
+        when(param2.isFormField()).thenReturn(true);
+        when(param2.getFieldName()).thenReturn("baa");
+        when(param2.openStream()).thenReturn(new ByteArrayInputStream("fuga".getBytes()));
+        when(file1.isFormField()).thenReturn(false);
+        when(file1.getFieldName()).thenReturn("baz");
+        parameters = new FileItemStreamMultipartParameters(iterator, "UTF-8");
+        assertThat(parameters.getFirstParameter("foo"), is("hoge"));
+        assertThat(parameters.getFirstParameter("baa"), is("fuga"));
+        assertThat(parameters.getFirstParameter("foo"), is("hoge"));
+        verify(iterator, times(2)).next();
+        verify(file1, never()).openStream();
+        // indexed parts are returned before unread parts.
+        final Iterator<FileItemStreamMultipart> actual = parameters.iterator();
+        assertThat(new String(actual.next().getBytes()), is("hoge"));
+        assertThat(new String(actual.next().getBytes()), is("fuga"));
+        assertTrue(actual.hasNext());
+        assertThat(actual.next().getName(), is("baz"));
+        assertFalse(actual.hasNext());
+        assertNull(parameters.getFirstParameter("unknown"));
+    }
+
+    @Test
+    public void testGetFirstMultipartWithSpoolPassedMultiparts() throws Exception {
+        final FileItemIterator iterator = mock(FileItemIterator.class);
+        final FileItemStream file1 = mock(FileItemStream.class);
+        final FileItemStream file2 = mock(FileItemStream.class);
+        when(iterator.hasNext()).thenReturn(true).thenReturn(true).thenReturn(false);
+        when(iterator.next()).thenReturn(file1).thenReturn(file2);
+        when(file1.isFormField()).thenReturn(false);
+        when(file1.getFieldName()).thenReturn("foo");
+        when(file1.openStream()).thenReturn(
+                new ByteArrayInputStream(new byte[] { 0x00, 0x01, 0x02 }));
+        when(file2.isFormField()).thenReturn(false);
+        when(file2.getFieldName()).thenReturn("baa");
+        parameters = new FileItemStreamMultipartParameters(iterator, "UTF-8");
+        parameters.setSpoolPassedMultiparts(true);
+        final FileItemStreamMultipart actual = parameters.getFirstMultipart("baa");
+        assertThat(actual.getName(), is("baa"));
+        verify(file1, times(1)).openStream();
+        verify(file2, never()).openStream();
+        assertArrayEquals(new byte[] { 0x00, 0x01, 0x02 }, parameters.getFirstMultipart("foo")
+                .getBytes());
+        assertArrayEquals(new byte[] { 0x00, 0x01, 0x02 }, parameters.getFirstMultipart("foo")
+                .getBytes());
+    }
 }
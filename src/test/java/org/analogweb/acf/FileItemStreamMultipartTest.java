@@ -2,6 +2,8 @@ package org.analogweb.acf;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -9,6 +11,9 @@ import static org.mockito.Mockito.when;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
 
 import org.apache.commons.fileupload.FileItemStream;
 import org.junit.Rule;
@@ -30,6 +35,23 @@ public class FileItemStreamMultipartTest {
         assertThat(actual, is("foo"));
     }
 
+    @Test
+    public void testDigestWhileReading() throws Exception {
+        final FileItemStream item = mock(FileItemStream.class);
+        final byte[] content = "streamed content".getBytes();
+        when(item.openStream()).thenReturn(new ByteArrayInputStream(content));
+        file = new FileItemStreamMultipart(item);
+        file.setDigester(new PartDigester("SHA-256"));
+        assertNull(file.getDigest("SHA-256"));
+        assertThat(file.getChecksum(), is(-1L));
+        assertThat(file.getBytes(), is(content));
+        assertThat(file.getDigest("SHA-256"),
+                is(MessageDigest.getInstance("SHA-256").digest(content)));
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        assertThat(file.getChecksum(), is(crc.getValue()));
+    }
+
     @Test
     public void testGetFileName() {
         final FileItemStream item = mock(FileItemStream.class);
@@ -78,4 +100,34 @@ public class FileItemStreamMultipartTest {
         final String actual = file.getContentType();
         assertThat(actual, is("application/xml"));
     }
+
+    @Test
+    public void testGetExtractedContents() throws Exception {
+        final FileItemStream item = mock(FileItemStream.class);
+        file = new FileItemStreamMultipart(item);
+        when(item.openStream()).thenReturn(new ByteArrayInputStream(new byte[] { 0x00, 0x01 }));
+        file.extract();
+        final ByteBuffer buffer = file.asReadOnlyBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertThat(buffer.remaining(), is(2));
+        assertThat(buffer.get(1), is((byte) 0x01));
+        final InputStream in = file.getInputStream();
+        assertThat(in.read(), is(0x00));
+        assertThat(in.read(), is(0x01));
+        assertThat(in.read(), is(-1));
+        final byte[] copied = file.getBytes();
+        copied[0] = 0x02;
+        assertNotSame(copied, file.getBytes());
+        assertThat(file.getBytes()[0], is((byte) 0x00));
+    }
+
+    @Test
+    public void testAsReadOnlyBufferWithoutExtract() throws Exception {
+        final FileItemStream item = mock(FileItemStream.class);
+        file = new FileItemStreamMultipart(item);
+        when(item.openStream()).thenReturn(new ByteArrayInputStream(new byte[] { 0x00, 0x01 }));
+        assertThat(file.asReadOnlyBuffer().remaining(), is(2));
+        // extracted contents are reused.
+        assertThat(file.asReadOnlyBuffer().get(0), is((byte) 0x00));
+    }
 }
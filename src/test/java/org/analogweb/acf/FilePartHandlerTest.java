@@ -0,0 +1,86 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import org.analogweb.Multipart;
+import org.analogweb.util.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FilePartHandlerTest {
+
+    private ByteBufferMultipartParameters parameters;
+    private Multipart streamed;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        final ByteBufferMultipart field = new ByteBufferMultipart("foo", null, null, null,
+                ByteBuffer.wrap("field".getBytes()));
+        final ByteBufferMultipart file = new ByteBufferMultipart("baa", "baa.txt", null, null,
+                ByteBuffer.wrap("Hello".getBytes()));
+        parameters = new ByteBufferMultipartParameters(Arrays.asList(field, file), "UTF-8");
+        streamed = mock(Multipart.class);
+        when(streamed.getName()).thenReturn("baa");
+        when(streamed.getResourceName()).thenReturn("baz.txt");
+        when(streamed.getInputStream()).thenReturn(new ByteArrayInputStream(" World".getBytes()));
+    }
+
+    @Test
+    public void testChannelPartHandler() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ChannelPartHandler handler = new ChannelPartHandler(Channels.newChannel(out));
+        parameters.forEachPart(handler);
+        handler.handle(streamed);
+        assertThat(new String(out.toByteArray()), is("Hello World"));
+        assertThat(handler.getTransferred(), is(11L));
+    }
+
+    @Test
+    public void testDigestPartHandler() throws Exception {
+        final DigestPartHandler handler = new DigestPartHandler("SHA-256");
+        parameters.forEachPart(handler);
+        handler.handle(streamed);
+        final List<byte[]> actual = handler.getDigests("baa");
+        assertThat(actual.size(), is(2));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest("Hello".getBytes()),
+                actual.get(0));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(" World".getBytes()),
+                actual.get(1));
+        assertThat(handler.getDigests("foo").isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDigestPartHandlerWithUnknownAlgorithm() {
+        new DigestPartHandler("UNKNOWN");
+    }
+
+    @Test
+    public void testDirectoryPartHandler() throws Exception {
+        final DirectoryPartHandler handler = new DirectoryPartHandler(folder.getRoot());
+        parameters.forEachPart(handler);
+        handler.handle(streamed);
+        final List<File> actual = handler.getFiles("baa");
+        assertThat(actual.size(), is(2));
+        assertThat(IOUtils.toString(new FileInputStream(actual.get(0))), is("Hello"));
+        assertThat(IOUtils.toString(new FileInputStream(actual.get(1))), is(" World"));
+        assertThat(folder.getRoot().list().length, is(2));
+    }
+}
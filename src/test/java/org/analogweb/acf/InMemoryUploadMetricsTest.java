@@ -0,0 +1,64 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.TestMultiparts.write;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.commons.fileupload.FileItem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InMemoryUploadMetricsTest {
+
+    private InMemoryUploadMetrics metrics;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        metrics = new InMemoryUploadMetrics();
+    }
+
+    @Test
+    public void testParsed() {
+        metrics.parsed(100, 1000, true);
+        metrics.parsed(300, -1, false);
+        assertThat(metrics.getParseTime().getCount(), is(2L));
+        assertThat(metrics.getParseTime().getMax(), is(300L));
+        assertThat(metrics.getParseTime().getMean(), is(200.0));
+        assertThat(metrics.getBytesIn().getCount(), is(1L));
+        assertThat(metrics.getParseFailures(), is(1L));
+    }
+
+    @Test
+    public void testHistogramPercentile() {
+        final Histogram histogram = new Histogram();
+        assertThat(histogram.getPercentile(0.5), is(0L));
+        for (int i = 0; i < 9; i++) {
+            histogram.record(100);
+        }
+        histogram.record(5000);
+        assertThat(histogram.getPercentile(0.5), is(128L));
+        assertThat(histogram.getPercentile(0.9), is(128L));
+        assertThat(histogram.getPercentile(1.0), is(8192L));
+        assertThat(histogram.getSum(), is(5900L));
+    }
+
+    @Test
+    public void testMeteredDiskFileItemFactory() throws Exception {
+        final MeteredDiskFileItemFactory factory = new MeteredDiskFileItemFactory(8,
+                folder.getRoot(), metrics);
+        final FileItem spilled = factory.createItem("foo", null, false, "foo.txt");
+        write(spilled, "Hello file!");
+        final FileItem memory = factory.createItem("foo", null, false, "foo.txt");
+        write(memory, "Hello");
+        assertThat(metrics.getSpilledSize().getCount(), is(1L));
+        assertThat(metrics.getSpoolUsage(), is(11L));
+        spilled.delete();
+        spilled.delete();
+        memory.delete();
+        assertThat(metrics.getSpoolUsage(), is(0L));
+    }
+}
@@ -0,0 +1,91 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.TestMultiparts.BOUNDARY;
+import static org.analogweb.acf.TestMultiparts.multipartBody;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.analogweb.util.IOUtils;
+import org.apache.commons.fileupload.MultipartStream;
+import org.apache.commons.fileupload.MultipartStream.MalformedStreamException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MultipartBufferParserTest {
+
+    private MultipartBufferParser parser;
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testParse() throws Exception {
+        parser = new MultipartBufferParser(BOUNDARY.getBytes(), "UTF-8");
+        final List<ByteBufferMultipart> actual = parser.parse(ByteBuffer.wrap(multipartBody()));
+        assertThat(actual.size(), is(3));
+        ByteBufferMultipart part = actual.get(0);
+        assertThat(part.getName(), is("foo"));
+        assertFalse(part.isMultipartFile());
+        assertNull(part.getContentType());
+        assertThat(new String(part.getBytes()), is("baa"));
+        part = actual.get(1);
+        assertThat(part.getName(), is("file"));
+        assertThat(part.getResourceName(), is("a.txt"));
+        assertTrue(part.isMultipartFile());
+        assertThat(part.getContentType(), is("text/plain"));
+        assertThat(IOUtils.toString(part.getInputStream()), is("line1\r\n--line2"));
+        assertThat(part.asReadOnlyBuffer().isReadOnly(), is(true));
+        part = actual.get(2);
+        assertThat(part.getName(), is("foo"));
+        assertThat(part.getSize(), is(0L));
+    }
+
+    @Test
+    public void testParseWithPreamble() throws Exception {
+        parser = new MultipartBufferParser(BOUNDARY.getBytes(), null);
+        final byte[] body = new StringBuilder().append("preamble\r\n")
+                .append("--" + BOUNDARY + "\r\n")
+                .append("Content-Disposition: form-data; name=\"foo\"\r\n").append("\r\n")
+                .append("--baa\r\n").append("--" + BOUNDARY + "--").toString().getBytes();
+        final List<ByteBufferMultipart> actual = parser.parse(ByteBuffer.wrap(body));
+        assertThat(actual.size(), is(1));
+        assertThat(new String(actual.get(0).getBytes()), is("--baa"));
+    }
+
+    @Test
+    public void testParseUnterminatedBody() throws Exception {
+        thrown.expect(MalformedStreamException.class);
+        parser = new MultipartBufferParser(BOUNDARY.getBytes(), "UTF-8");
+        final byte[] body = new StringBuilder().append("--" + BOUNDARY + "\r\n")
+                .append("Content-Disposition: form-data; name=\"foo\"\r\n").append("\r\n")
+                .append("baa").toString().getBytes();
+        parser.parse(ByteBuffer.wrap(body));
+    }
+
+    @Test
+    public void testParseWithoutBoundary() throws Exception {
+        thrown.expect(MalformedStreamException.class);
+        parser = new MultipartBufferParser(BOUNDARY.getBytes(), "UTF-8");
+        parser.parse(ByteBuffer.wrap("no boundaries".getBytes()));
+    }
+
+    @Test
+    public void testParseTooLargeHeader() throws Exception {
+        thrown.expect(MalformedStreamException.class);
+        thrown.expectMessage("Header section has more than");
+        parser = new MultipartBufferParser(BOUNDARY.getBytes(), "UTF-8");
+        final StringBuilder body = new StringBuilder().append("--" + BOUNDARY + "\r\n")
+                .append("Content-Disposition: form-data; name=\"foo\"\r\n");
+        while (body.length() <= MultipartStream.HEADER_PART_SIZE_MAX * 2) {
+            body.append("X-Padding: padding\r\n");
+        }
+        body.append("\r\nbaa\r\n--" + BOUNDARY + "--\r\n");
+        parser.parse(ByteBuffer.wrap(body.toString().getBytes()));
+    }
+}
@@ -0,0 +1,90 @@
+package org.analogweb.acf;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.analogweb.RequestContext;
+import org.analogweb.ResponseContext;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MultipartCleanupProcessorTest {
+
+    private MultipartCleanupProcessor processor;
+    private RequestContext request;
+    private ResponseContext response;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        processor = new MultipartCleanupProcessor();
+        request = mock(RequestContext.class);
+        response = mock(ResponseContext.class);
+    }
+
+    @Test
+    public void testAfterCompletionDeletesTemporaryFiles() throws Exception {
+        final DiskFileItem item = new DiskFileItem("foo", "text/plain", false, "foo.txt", 4,
+                folder.getRoot());
+        final OutputStream out = item.getOutputStream();
+        out.write("Hello file!".getBytes());
+        out.close();
+        final File stored = item.getStoreLocation();
+        final FileItemMultipartParameters params = new FileItemMultipartParameters(
+                Arrays.<FileItem> asList(item), "UTF-8");
+        when(request.getAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME)).thenReturn(params);
+        processor.afterCompletion(request, response, null);
+        assertFalse(stored.exists());
+        verify(request).setAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME, null);
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testAfterCompletionIgnoresFailure() {
+        final AbstractMultipartParameters params = mock(AbstractMultipartParameters.class);
+        doThrow(new IllegalStateException()).when(params).dispose();
+        when(request.getAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME)).thenReturn(params);
+        processor.afterCompletion(request, response, null);
+        verify(params).dispose();
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testAfterCompletionIgnoresPlainParameters() {
+        final MultipartParameters params = mock(MultipartParameters.class);
+        when(request.getAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME)).thenReturn(params);
+        processor.afterCompletion(request, response, null);
+        verify(request).setAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME, null);
+    }
+
+    @Test
+    public void testAfterCompletionCompletesProgress() {
+        final UploadProgressRegistry registry = new UploadProgressRegistry();
+        final UploadProgress progress = registry.start(request);
+        when(request.getAttribute(UploadProgress.ATTRIBUTE_NAME)).thenReturn(progress);
+        processor.afterCompletion(request, response, null);
+        assertTrue(progress.isCompleted());
+        assertNull(registry.get(request, progress.getUploadId()));
+    }
+
+    @Test
+    public void testAfterCompletionWithoutMultipart() {
+        processor.afterCompletion(request, response, null);
+        verify(request, never()).setAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME, null);
+    }
+}
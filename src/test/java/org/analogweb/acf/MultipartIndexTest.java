@@ -0,0 +1,91 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.analogweb.Multipart;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MultipartIndexTest {
+
+    private MultipartIndex<Multipart> index;
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Before
+    public void setUp() {
+        index = new MultipartIndex<Multipart>(Multipart.class);
+    }
+
+    @Test
+    public void testRepeatedValues() {
+        for (int i = 0; i < 500; i++) {
+            index.add(part("check", String.valueOf(i)));
+            index.add(part("field" + i, "v" + i));
+        }
+        assertThat(index.size(), is(1000));
+        final String[] checks = index.getStrings("check", "UTF-8");
+        assertThat(checks.length, is(500));
+        assertThat(checks[0], is("0"));
+        assertThat(checks[499], is("499"));
+        assertThat(index.getStrings("field250", "UTF-8"), is(new String[] { "v250" }));
+        assertThat(index.get("check").length, is(500));
+        assertThat(index.names().size(), is(501));
+        assertThat(index.names().get(0), is("check"));
+        assertThat(index.names().get(500), is("field499"));
+        assertThat(index.get("missing"), is(nullValue()));
+        assertThat(index.getStrings("missing", "UTF-8"), is(nullValue()));
+    }
+
+    @Test
+    public void testMaterializedArraysAreCached() {
+        final Multipart first = part("foo", "a");
+        index.add(first);
+        final Multipart[] values = index.get("foo");
+        assertThat(index.get("foo"), is(sameInstance(values)));
+        assertThat(index.first("foo"), is(sameInstance(first)));
+        index.add(part("foo", "b"));
+        assertThat(index.get("foo").length, is(2));
+        assertThat(index.getStrings("foo", "UTF-8"), is(new String[] { "a", "b" }));
+    }
+
+    @Test
+    public void testAsMapKeepsOrder() {
+        index.add(part("b", "1"));
+        index.add(part("a", "2"));
+        index.add(part(null, "3"));
+        final Map<String, String[]> map = index.asStringMap("UTF-8");
+        assertThat(Arrays.asList(map.keySet().toArray()),
+                is(Arrays.<Object> asList("b", "a", null)));
+        assertTrue(index.contains(null));
+        index.clear();
+        assertFalse(index.contains("b"));
+        assertThat(index.size(), is(0));
+    }
+
+    @Test
+    public void testUnsupportedEncoding() {
+        thrown.expect(FileUploadFailureException.class);
+        index.add(part("foo", "a"));
+        index.getStrings("foo", "UNKNOWN-ENCODING");
+    }
+
+    private static Multipart part(String name, String value) {
+        final Multipart part = mock(Multipart.class);
+        when(part.getName()).thenReturn(name);
+        when(part.getBytes()).thenReturn(value.getBytes());
+        return part;
+    }
+}
@@ -0,0 +1,104 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+
+import org.analogweb.Application;
+import org.analogweb.InvocationMetadata;
+import org.analogweb.Multipart;
+import org.analogweb.Parameters;
+import org.analogweb.RequestContext;
+import org.analogweb.core.DefaultApplicationProperties;
+import org.analogweb.core.MediaTypes;
+import org.analogweb.util.ApplicationPropertiesHolder;
+import org.analogweb.util.IOUtils;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
+import org.hamcrest.core.IsInstanceOf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MultipartParameterBufferResolverTest {
+
+    private MultipartParameterBufferResolver resolver;
+    private RequestContext context;
+    private InvocationMetadata metadata;
+    private Parameters params;
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Before
+    public void setUp() throws Exception {
+        ApplicationPropertiesHolder.configure(mock(Application.class),
+                DefaultApplicationProperties.defaultProperties());
+        resolver = new MultipartParameterBufferResolver();
+        context = mock(RequestContext.class);
+        metadata = mock(InvocationMetadata.class);
+        params = mock(Parameters.class);
+        when(context.getFormParameters()).thenReturn(params);
+        when(context.getQueryParameters()).thenReturn(params);
+        when(context.getMatrixParameters()).thenReturn(params);
+        when(context.getRequestMethod()).thenReturn("POST");
+    }
+
+    @After
+    public void tearDown() {
+        ApplicationPropertiesHolder.dispose(mock(Application.class));
+    }
+
+    @Test
+    public void testResolveMultipart() throws Exception {
+        final byte[] part = multipartBody();
+        when(context.getContentLength()).thenReturn((long) part.length);
+        when(context.getContentType()).thenReturn(
+                MediaTypes.valueOf("multipart/form-data; boundary=------------------------------4ebf00fbcf09"));
+        when(context.getRequestBody()).thenReturn(new ByteArrayInputStream(part));
+        final Multipart actual = (Multipart) resolver.resolveValue(context, metadata, "file",
+                Multipart.class, null);
+        assertThat(actual.getResourceName(), is("foo.txt"));
+        assertThat(IOUtils.toString(actual.getInputStream()), is("test"));
+    }
+
+    @Test
+    public void testResolveMultipartExceedsSizeMax() throws Exception {
+        thrown.expect(FileUploadFailureException.class);
+        thrown.expectCause(IsInstanceOf.<Throwable> instanceOf(SizeLimitExceededException.class));
+        final DefaultFileUploadFactory factory = new DefaultFileUploadFactory();
+        factory.setSizeMax(10);
+        resolver.setFileUploadFactory(factory);
+        final byte[] part = multipartBody();
+        when(context.getContentLength()).thenReturn(-1L);
+        when(context.getContentType()).thenReturn(
+                MediaTypes.valueOf("multipart/form-data; boundary=------------------------------4ebf00fbcf09"));
+        when(context.getRequestBody()).thenReturn(new ByteArrayInputStream(part));
+        resolver.resolveValue(context, metadata, "file", Multipart.class, null);
+    }
+
+    @Test
+    public void testResolveMultipartExceedsMaxBufferedSize() throws Exception {
+        thrown.expect(FileUploadFailureException.class);
+        thrown.expectCause(IsInstanceOf.<Throwable> instanceOf(SizeLimitExceededException.class));
+        // sizeMax is unlimited.
+        resolver.setMaxBufferedSize(10);
+        final byte[] part = multipartBody();
+        when(context.getContentLength()).thenReturn(-1L);
+        when(context.getContentType()).thenReturn(
+                MediaTypes.valueOf("multipart/form-data; boundary=------------------------------4ebf00fbcf09"));
+        when(context.getRequestBody()).thenReturn(new ByteArrayInputStream(part));
+        resolver.resolveValue(context, metadata, "file", Multipart.class, null);
+    }
+
+    private byte[] multipartBody() {
+        return new StringBuilder().append("--------------------------------4ebf00fbcf09\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"foo.txt\"\r\n")
+                .append("Content-Type: text/plain\r\n").append("\r\n").append("test\r\n")
+                .append("--------------------------------4ebf00fbcf09--\r\n").toString()
+                .getBytes();
+    }
+}
@@ -1,9 +1,19 @@
 package org.analogweb.acf;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
@@ -11,8 +21,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.analogweb.Application;
 import org.analogweb.ApplicationProperties;
@@ -27,13 +44,16 @@ import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileItemFactory;
 import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadBase.FileSizeLimitExceededException;
 import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.ProgressListener;
 import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
+import org.hamcrest.core.IsInstanceOf;
 import org.junit.After;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -115,6 +135,409 @@ public class MultipartParameterResolverTest {
         assertThat(actualMultipart.getName(), is("foo"));
     }
 
+    @Test
+    public void testResolveAttributeRecordsMetrics() {
+        final UploadMetrics metrics = mock(UploadMetrics.class);
+        resolver.setUploadMetrics(metrics);
+        @SuppressWarnings("unchecked")
+        final
+        FileUploadFactory<FileUpload> fileUploadFactory = mock(FileUploadFactory.class);
+        final FileItem item1 = mock(FileItem.class);
+        when(item1.getFieldName()).thenReturn("baa");
+        final FileItem item2 = mock(FileItem.class);
+        when(item2.getFieldName()).thenReturn("foo");
+        final List<FileItem> items = Arrays.asList(item1, item2);
+        final FileUpload fileUpload = new FileUpload() {
+
+            @Override
+            public List<FileItem> parseRequest(org.apache.commons.fileupload.RequestContext ctx)
+                    throws FileUploadException {
+                return items;
+            }
+        };
+        when(fileUploadFactory.createFileUpload(any(FileItemFactory.class))).thenReturn(
+                fileUpload);
+        resolver.setFileUploadFactory(fileUploadFactory);
+        when(context.getAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME)).thenReturn(null);
+        when(context.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        when(context.getRequestMethod()).thenReturn("POST");
+        when(context.getContentLength()).thenReturn(120L);
+        resolver.resolveValue(context, metadata, "foo", Multipart.class, null);
+        verify(metrics).parsed(anyLong(), eq(120L), eq(true));
+        verify(metrics).partsParsed(2);
+        verify(metrics).resolved(anyLong());
+    }
+
+    @Test
+    public void testReuseFileUpload() {
+        @SuppressWarnings("unchecked")
+        final
+        FileUploadFactory<FileUpload> fileUploadFactory = mock(FileUploadFactory.class);
+        final FileItem item = mock(FileItem.class);
+        when(item.getFieldName()).thenReturn("foo");
+        final FileUpload fileUpload = new FileUpload() {
+
+            @Override
+            public List<FileItem> parseRequest(org.apache.commons.fileupload.RequestContext ctx)
+                    throws FileUploadException {
+                return Arrays.asList(item);
+            }
+        };
+        when(fileUploadFactory.createFileUpload(any(FileItemFactory.class))).thenReturn(
+                fileUpload);
+        resolver.setFileUploadFactory(fileUploadFactory);
+        when(context.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        resolver.resolveValue(context, metadata, "foo", Multipart.class, null);
+        final RequestContext other = mock(RequestContext.class);
+        when(other.getRequestMethod()).thenReturn("POST");
+        when(other.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        resolver.resolveValue(other, metadata, "foo", Multipart.class, null);
+        verify(fileUploadFactory, times(1)).createFileUpload(any(FileItemFactory.class));
+    }
+
+    @Test
+    public void testRejectByContentLengthBeforeReading() throws Exception {
+        final UploadMetrics metrics = mock(UploadMetrics.class);
+        resolver.setUploadMetrics(metrics);
+        final FileUpload fileUpload = mock(FileUpload.class);
+        when(fileUpload.getSizeMax()).thenReturn(-1L);
+        when(fileUpload.getFileSizeMax()).thenReturn(-1L);
+        @SuppressWarnings("unchecked")
+        final
+        FileUploadFactory<FileUpload> fileUploadFactory = mock(FileUploadFactory.class);
+        when(fileUploadFactory.createFileUpload(any(FileItemFactory.class))).thenReturn(
+                fileUpload);
+        resolver.setFileUploadFactory(fileUploadFactory);
+        when(context.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        when(context.getContentLength()).thenReturn(120L);
+        final Annotation[] annotations = getClass().getDeclaredMethod("limited", String.class)
+                .getParameterAnnotations()[0];
+        try {
+            resolver.resolveValue(context, metadata, "foo", Multipart.class, annotations);
+            fail();
+        } catch (final FileUploadFailureException e) {
+            // expected.
+        }
+        verify(metrics).rejected();
+        verify(fileUpload).setSizeMax(100L);
+        verify(fileUpload, never()).parseRequest(any(org.apache.commons.fileupload.RequestContext.class));
+        verify(context, never()).getRequestBody();
+    }
+
+    @Test
+    public void testResolveUploadQuota() throws Exception {
+        resolver.setUploadQuota(new UploadQuota(50, -1, 10, -1, -1));
+        final Annotation[] annotations = getClass().getDeclaredMethod("limited", String.class)
+                .getParameterAnnotations()[0];
+        final UploadQuota quota = resolver.resolveUploadQuota(metadata, annotations);
+        assertThat(quota.getMaxRequestSize(), is(50L));
+        assertThat(quota.getMaxParts(), is(3));
+        assertThat(resolver.resolveUploadQuota(metadata, null).getMaxParts(), is(10));
+    }
+
+    @Test
+    public void testRouteConfigResolvedOncePerMetadata() throws Exception {
+        resolver.setUploadQuota(new UploadQuota(1000, -1, -1, -1, -1));
+        final InvocationMetadata route = routeOf("upload");
+        final UploadRouteConfig config = resolver.getRouteConfig(route, null);
+        assertThat(config.getStrategy(), is(UploadStrategy.BUFFERED));
+        assertThat(config.getSizeThreshold(), is(256));
+        assertTrue(config.isEagerDecoding());
+        // limits of all parameters are applied.
+        assertThat(config.getQuota().getMaxRequestSize(), is(500L));
+        assertThat(config.getQuota().getMaxParts(), is(3));
+        assertThat(resolver.getRouteConfig(route, null), is(sameInstance(config)));
+        final FileItemFactory factory = resolver.getFileItemFactory(config);
+        assertThat(((DiskFileItemFactory) factory).getSizeThreshold(), is(256));
+        assertThat(((DiskFileItemFactory) factory).getRepository(),
+                is(((DiskFileItemFactory) resolver.getFileItemFactory()).getRepository()));
+        assertThat(resolver.getFileItemFactory(config), is(sameInstance(factory)));
+        final UploadRouteConfig defaults = resolver.getRouteConfig(routeOf("limited"),
+                null);
+        assertThat(defaults.getStrategy(), is(UploadStrategy.DEFAULT));
+        assertThat(resolver.getFileItemFactory(defaults),
+                is(sameInstance(resolver.getFileItemFactory())));
+    }
+
+    @Test
+    public void testRouteFactoryDerivedFromConfigured() throws Exception {
+        final TrackedDiskFileItemFactory tracked = new TrackedDiskFileItemFactory(100,
+                folder.getRoot());
+        resolver.setFileItemFactory(new DigestingFileItemFactory(tracked, "MD5"));
+        final SpoolSweeper sweeper = new SpoolSweeper(folder.getRoot());
+        resolver.setSpoolSweeper(sweeper);
+        final File repository = folder.newFolder("route");
+        final UploadConfig uploadConfig = mock(UploadConfig.class);
+        when(uploadConfig.strategy()).thenReturn(UploadStrategy.DEFAULT);
+        when(uploadConfig.sizeThreshold()).thenReturn(-1);
+        when(uploadConfig.repository()).thenReturn(repository.getPath());
+        final UploadRouteConfig config = new UploadRouteConfig(UploadQuota.UNLIMITED,
+                uploadConfig);
+        final FileItemFactory factory = resolver.getFileItemFactory(config);
+        assertTrue(factory instanceof DigestingFileItemFactory);
+        final TrackedDiskFileItemFactory derived = (TrackedDiskFileItemFactory) ((DigestingFileItemFactory) factory)
+                .getDelegate();
+        // the shared threshold is inherited.
+        assertThat(derived.getSizeThreshold(), is(100));
+        assertThat(derived.getRepository(), is(repository));
+        assertThat(derived.getMetrics(), is(sameInstance(tracked.getMetrics())));
+        assertTrue(sweeper.getDirectories().contains(repository));
+    }
+
+    @Test
+    public void testResolveWithRouteStrategy() throws Exception {
+        final ByteBufferMultipartParameters buffered = mock(ByteBufferMultipartParameters.class);
+        when(buffered.getParameterNames()).thenReturn(Arrays.asList("foo"));
+        resolver = new MultipartParameterResolver() {
+
+            @Override
+            protected ByteBufferMultipartParameters createBufferedMultipartParameters(
+                    RequestContext request, org.apache.commons.fileupload.RequestContext context,
+                    FileUpload fileUpload, String resolvedEncoding) {
+                return buffered;
+            }
+        };
+        when(context.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        final Object actual = resolver.resolveValue(context, routeOf("upload"), "foo",
+                Iterable.class, null);
+        assertThat(actual, is((Object) buffered));
+        // eager decoding.
+        verify(buffered).getParameter("foo");
+    }
+
+    @Test
+    public void testResolveBufferedRouteExceedsMaxFileSize() throws Exception {
+        thrown.expect(FileUploadFailureException.class);
+        thrown.expectCause(IsInstanceOf.<Throwable> instanceOf(FileSizeLimitExceededException.class));
+        final byte[] body = ("--boundary\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"foo.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\ntest\r\n--boundary--\r\n").getBytes();
+        when(context.getContentType()).thenReturn(
+                MediaTypes.valueOf("multipart/form-data; boundary=boundary"));
+        when(context.getContentLength()).thenReturn((long) body.length);
+        when(context.getRequestBody()).thenReturn(new ByteArrayInputStream(body));
+        resolver.resolveValue(context, routeOf("buffered"), "file", Multipart.class, null);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResolveFutureOfParsedParameters() throws Exception {
+        final MultipartParameters<Multipart> parameters = mock(MultipartParameters.class);
+        final Multipart multipart = mock(Multipart.class);
+        when(parameters.getMultiparts("foo")).thenReturn(new Multipart[] { multipart });
+        when(context.getAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME)).thenReturn(
+                parameters);
+        final Future<Multipart> actual = (Future<Multipart>) resolver.resolveValue(context,
+                metadata, "foo", Future.class, null);
+        assertTrue(actual.isDone());
+        assertThat(actual.get(), is(multipart));
+        final Future<Multipart> missing = (Future<Multipart>) resolver.resolveValue(context,
+                metadata, "baa", Future.class, null);
+        assertNull(missing.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResolveFutureWhileSpooling() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final UploadMetrics metrics = mock(UploadMetrics.class);
+        final InputStream body = new ByteArrayInputStream((SpoolingMultipartParametersTest
+                .part("foo", "foo.txt", "Hello file!")
+                + SpoolingMultipartParametersTest.part("baa", null, "baz") + "------boundary--\r\n")
+                .getBytes());
+        resolver = new MultipartParameterResolver() {
+
+            @Override
+            protected org.apache.commons.fileupload.RequestContext createRequestContext(
+                    RequestContext request) {
+                return SpoolingMultipartParametersTest.context(body);
+            }
+        };
+        resolver.setFileItemFactory(new DiskFileItemFactory(0, folder.newFolder()));
+        resolver.setSpoolingExecutor(executor);
+        resolver.setUploadMetrics(metrics);
+        when(context.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        try {
+            final Future<File> actual = (Future<File>) resolver.resolveValue(context,
+                    routeOf("spool"), "foo", Future.class, null);
+            assertThat(fileToString(actual.get(10, TimeUnit.SECONDS)), is("Hello file!"));
+            verify(context).setAttribute(eq(CurrentMultipartParameters.ATTRIBUTE_NAME),
+                    any(SpoolingMultipartParameters.class));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            verify(metrics).parsed(anyLong(), anyLong(), eq(true));
+            verify(metrics).partsParsed(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private InvocationMetadata routeOf(String methodName) {
+        final InvocationMetadata route = mock(InvocationMetadata.class);
+        when(route.getInvocationClass()).thenReturn((Class) UploadHandler.class);
+        when(route.getMethodName()).thenReturn(methodName);
+        for (final Method method : UploadHandler.class.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                when(route.getArgumentTypes()).thenReturn(method.getParameterTypes());
+            }
+        }
+        return route;
+    }
+
+    public static class UploadHandler {
+
+        @UploadConfig(strategy = UploadStrategy.BUFFERED, sizeThreshold = 256, eagerDecoding = true)
+        public void upload(@MultipartParam(value = "foo", maxRequestSize = 500) String foo,
+                @MultipartParam(value = "baa", maxParts = 3) String baa) {
+            // nop.
+        }
+
+        @UploadConfig(strategy = UploadStrategy.BUFFERED)
+        public void buffered(@MultipartParam(value = "file", maxFileSize = 3) Multipart file) {
+            // nop.
+        }
+
+        public void limited(@MultipartParam("foo") String foo, String baa) {
+            // nop.
+        }
+
+        public void spool(@MultipartParam("foo") Future<File> foo, String baa) {
+            // nop.
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private void limited(@MultipartParam(value = "foo", maxRequestSize = 100, maxParts = 3) String foo) {
+        // for annotations.
+    }
+
+    @Test
+    public void testReleaseAdmissionWhenInterruptedParsingEnds() throws Exception {
+        final UploadAdmissionController controller = new UploadAdmissionController(1, -1, 0);
+        resolver.setAdmissionController(controller);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        resolver.setParsingExecutor(executor);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final FileItem item = mock(FileItem.class);
+        when(item.getFieldName()).thenReturn("foo");
+        final FileUpload fileUpload = new FileUpload() {
+
+            @Override
+            public List<FileItem> parseRequest(org.apache.commons.fileupload.RequestContext ctx)
+                    throws FileUploadException {
+                entered.countDown();
+                // simulates blocking read that ignores interruption.
+                while (true) {
+                    try {
+                        proceed.await();
+                        return Arrays.asList(item);
+                    } catch (final InterruptedException e) {
+                        // ignore.
+                    }
+                }
+            }
+        };
+        @SuppressWarnings("unchecked")
+        final FileUploadFactory<FileUpload> fileUploadFactory = mock(FileUploadFactory.class);
+        when(fileUploadFactory.createFileUpload(any(FileItemFactory.class))).thenReturn(
+                fileUpload);
+        resolver.setFileUploadFactory(fileUploadFactory);
+        when(context.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        final Thread caller = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    resolver.resolveValue(context, metadata, "foo", Multipart.class, null);
+                } catch (final FileUploadFailureException e) {
+                    // expected.
+                }
+            }
+        });
+        try {
+            caller.start();
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            caller.interrupt();
+            caller.join(10000);
+            assertFalse(caller.isAlive());
+            // parsing is still running.
+            assertThat(controller.getActiveUploads(), is(1));
+            proceed.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertThat(controller.getActiveUploads(), is(0));
+            verify(item).delete();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testValueTypeOf() {
+        assertThat(resolver.valueTypeOf(File[].class), is(MultipartValueType.FILES));
+        assertThat(resolver.valueTypeOf(Multipart[].class), is(MultipartValueType.MULTIPARTS));
+        assertThat(resolver.valueTypeOf(byte[].class), is(MultipartValueType.BYTES));
+        assertThat(resolver.valueTypeOf(Iterable.class), is(MultipartValueType.ITERABLE));
+        assertThat(resolver.valueTypeOf(String.class), is(MultipartValueType.OTHER));
+        assertThat(resolver.valueTypeOf(null), is(MultipartValueType.OTHER));
+    }
+
+    @Test
+    public void testReleaseAdmissionWhenProgressRejected() {
+        final UploadAdmissionController controller = new UploadAdmissionController(1, -1, 0);
+        resolver.setAdmissionController(controller);
+        resolver.setProgressRegistry(new UploadProgressRegistry() {
+
+            @Override
+            public UploadProgress start(RequestContext request) {
+                throw new UploadRejectedException("duplicated");
+            }
+        });
+        when(context.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        try {
+            resolver.resolveValue(context, metadata, "foo", Multipart.class, null);
+            fail();
+        } catch (final UploadRejectedException e) {
+            assertThat(controller.getActiveUploads(), is(0));
+        }
+    }
+
+    @Test
+    public void testResolveAttributeTracksProgress() {
+        final UploadProgressRegistry registry = new UploadProgressRegistry();
+        resolver.setProgressRegistry(registry);
+        final ProgressListener shared = mock(ProgressListener.class);
+        final FileItem item = mock(FileItem.class);
+        when(item.getFieldName()).thenReturn("foo");
+        final FileUpload fileUpload = new FileUpload() {
+
+            @Override
+            public List<FileItem> parseRequest(org.apache.commons.fileupload.RequestContext ctx)
+                    throws FileUploadException {
+                getProgressListener().update(120, 120, 1);
+                return Arrays.asList(item);
+            }
+        };
+        fileUpload.setProgressListener(shared);
+        @SuppressWarnings("unchecked")
+        final
+        FileUploadFactory<FileUpload> fileUploadFactory = mock(FileUploadFactory.class);
+        when(fileUploadFactory.createFileUpload(any(FileItemFactory.class))).thenReturn(
+                fileUpload);
+        resolver.setFileUploadFactory(fileUploadFactory);
+        when(context.getContentType()).thenReturn(MediaTypes.valueOf("multipart/form-data"));
+        when(context.getContentLength()).thenReturn(120L);
+        resolver.resolveValue(context, metadata, "foo", Multipart.class, null);
+        verify(shared).update(120, 120, 1);
+        assertThat(registry.getProgresses().size(), is(1));
+        final UploadProgress progress = registry.getProgresses().iterator().next();
+        assertThat(progress.getBytesRead(), is(120L));
+        assertThat(progress.getItems(), is(1));
+        verify(context).setAttribute(UploadProgress.ATTRIBUTE_NAME, progress);
+    }
+
     @Test
     public void testResolveAttributeFileValue() {
         final Multipart file = mock(Multipart.class);
@@ -156,7 +579,6 @@ public class MultipartParameterResolverTest {
 
     @Test
     @SuppressWarnings("unchecked")
-    @Ignore
     public void testResolveAttributeWithFileArray() throws IOException {
         final File repository = folder.newFolder();
         final DiskFileItem disk1 = new DiskFileItem("foo", "text/plain", true, null, 8, repository);
@@ -234,6 +656,22 @@ public class MultipartParameterResolverTest {
         assertThat(new String(actualFiles), is("Hello file!"));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResolveAttributeAsByteArrayExceedsLimit() throws IOException {
+        thrown.expect(FileUploadFailureException.class);
+        final File repository = folder.newFolder();
+        final DiskFileItem disk = new DiskFileItem("foo", "text/plain", false, "foo.txt", 8,
+                repository);
+        disk.getOutputStream().write("Hello file!".getBytes());
+        final MultipartParameters<Multipart> params = mock(MultipartParameters.class);
+        when(context.getAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME)).thenReturn(params);
+        when(params.getMultiparts("foo")).thenReturn(
+                new Multipart[] { new FileItemMultipart(disk) });
+        resolver.setMaxByteArraySize(10);
+        resolver.resolveValue(context, metadata, "foo", byte[].class, null);
+    }
+
     private String fileToString(File file) throws IOException {
         final FileReader reader = new FileReader(file);
         int i = 0;
@@ -142,4 +142,25 @@ public class MultipartParameterStreamResolverTest {
         final Object actual = resolver.resolveValue(context, metadata, "foo", InputStream[].class, null);
         assertThat((Multipart) actual, is(multipart));
     }
+
+    @Test
+    public void testResolveAttributeFileStream() throws Exception {
+        when(context.getAttribute(CurrentMultipartParameters.ATTRIBUTE_NAME)).thenReturn(null);
+        when(context.getContentLength()).thenReturn(306L);
+        final MediaType mt = MediaTypes
+                .valueOf("multipart/form-data; boundary=------------------------------4ebf00fbcf09");
+        when(context.getContentType()).thenReturn(mt);
+        final byte[] part = new StringBuilder()
+        .append("--------------------------------4ebf00fbcf09\r\n")
+        .append("Content-Disposition: form-data; name=\"example\"\r\n")
+        .append("\r\n").append("test\r\n")
+        .append("--------------------------------4ebf00fbcf09\r\n")
+        .append("Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n")
+        .append("Content-Type: text/plain\r\n").append("\r\n").append("content\r\n")
+        .append("--------------------------------4ebf00fbcf09--\r\n").toString().getBytes();
+        when(context.getRequestBody()).thenReturn(new ByteArrayInputStream(part));
+        final InputStream actual = (InputStream) resolver.resolveValue(context, metadata, "file",
+                InputStream.class, null);
+        assertThat(IOUtils.toString(actual), is("content"));
+    }
 }
@@ -0,0 +1,73 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.TestMultiparts.BOUNDARY;
+import static org.analogweb.acf.TestMultiparts.multipartBody;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import org.apache.commons.fileupload.MultipartStream.MalformedStreamException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MultipartPushParserTest {
+
+    private MultipartPushParser parser;
+    private BufferingMultipartEventHandler handler;
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testFeedInChunks() throws Exception {
+        final byte[] body = multipartBody();
+        for (final int size : new int[] { 1, 2, 3, 7, 45, 64, body.length }) {
+            handler = new BufferingMultipartEventHandler();
+            parser = new MultipartPushParser(BOUNDARY.getBytes(), "UTF-8", handler);
+            for (int i = 0; i < body.length; i += size) {
+                parser.feed(ByteBuffer.wrap(body, i, Math.min(size, body.length - i)));
+            }
+            parser.complete();
+            assertTrue(handler.isComplete());
+            final MultipartParameters<ByteBufferMultipart> actual = handler.getParameters("UTF-8");
+            assertThat(actual.getParameter("foo").length, is(2));
+            assertThat(actual.getParameter("foo")[0], is("baa"));
+            assertThat(actual.getParameter("foo")[1], is(""));
+            final ByteBufferMultipart file = actual.getMultiparts("file")[0];
+            assertThat(file.getResourceName(), is("a.txt"));
+            assertThat(new String(file.getBytes()), is("line1\r\n--line2"));
+        }
+    }
+
+    @Test
+    public void testReadFromChannel() throws Exception {
+        handler = new BufferingMultipartEventHandler();
+        parser = new MultipartPushParser(BOUNDARY.getBytes(), null, handler);
+        final ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(
+                multipartBody()));
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        while (parser.read(channel, buffer) >= 0) {
+            // continue.
+        }
+        assertTrue(parser.isComplete());
+        assertThat(handler.getMultiparts().size(), is(3));
+    }
+
+    @Test
+    public void testCompleteUnterminatedBody() throws Exception {
+        thrown.expect(MalformedStreamException.class);
+        handler = new BufferingMultipartEventHandler();
+        parser = new MultipartPushParser(BOUNDARY.getBytes(), "UTF-8", handler);
+        parser.feed(ByteBuffer.wrap(new StringBuilder().append("--" + BOUNDARY + "\r\n")
+                .append("Content-Disposition: form-data; name=\"foo\"\r\n").append("\r\n")
+                .append("baa").toString().getBytes()));
+        assertFalse(parser.isComplete());
+        parser.complete();
+    }
+}
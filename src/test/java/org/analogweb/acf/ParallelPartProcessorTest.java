@@ -0,0 +1,265 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.analogweb.Multipart;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class ParallelPartProcessorTest {
+
+    private ExecutorService executor;
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testProcessAllInOrderWithBackpressure() {
+        final List<Multipart> parts = new ArrayList<Multipart>();
+        for (int i = 0; i < 20; i++) {
+            parts.add(part("file" + i));
+        }
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<String> results = new ParallelPartProcessor(executor, 2).processAll(parts,
+                new PartProcessor<String>() {
+
+                    @Override
+                    public String process(Multipart part) throws IOException {
+                        final int current = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            maxRunning.set(Math.max(maxRunning.get(), current));
+                        }
+                        try {
+                            Thread.sleep(5);
+                        } catch (final InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                        running.decrementAndGet();
+                        return part.getName();
+                    }
+                });
+        assertThat(results.size(), is(20));
+        assertThat(results.get(0), is("file0"));
+        assertThat(results.get(19), is("file19"));
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testProcessAllFailure() {
+        thrown.expect(FileUploadFailureException.class);
+        new ParallelPartProcessor(executor).processAll(Arrays.asList(part("foo"), part("baa")),
+                new PartProcessor<String>() {
+
+                    @Override
+                    public String process(Multipart part) throws IOException {
+                        if (part.getName().equals("baa")) {
+                            throw new IOException();
+                        }
+                        return part.getName();
+                    }
+                });
+    }
+
+    @Test
+    public void testProcessAllStopsReadingAfterFailure() {
+        final AtomicInteger read = new AtomicInteger();
+        final Iterable<Multipart> parts = new Iterable<Multipart>() {
+
+            @Override
+            public Iterator<Multipart> iterator() {
+                return new Iterator<Multipart>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return read.get() < 20;
+                    }
+
+                    @Override
+                    public Multipart next() {
+                        return part("file" + read.getAndIncrement());
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+        try {
+            new ParallelPartProcessor(executor, 2).processAll(parts,
+                    new PartProcessor<String>() {
+
+                        @Override
+                        public String process(Multipart part) throws IOException {
+                            if (part.getName().equals("file0")) {
+                                throw new IOException();
+                            }
+                            try {
+                                Thread.sleep(50);
+                            } catch (final InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                            return part.getName();
+                        }
+                    });
+            fail();
+        } catch (final FileUploadFailureException e) {
+            assertTrue(read.get() < 20);
+        }
+    }
+
+    @Test
+    public void testProcessAllOnOwnExecutorThread() throws Exception {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            final Future<List<String>> future = single.submit(new Callable<List<String>>() {
+
+                @Override
+                public List<String> call() {
+                    return new ParallelPartProcessor(single, 1).processAll(
+                            Arrays.asList(part("foo"), part("baa")),
+                            new PartProcessor<String>() {
+
+                                @Override
+                                public String process(Multipart part) {
+                                    return part.getName();
+                                }
+                            });
+                }
+            });
+            assertThat(future.get(10, TimeUnit.SECONDS), is(Arrays.asList("foo", "baa")));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testProcessAllOnRejectingExecutor() {
+        final Executor rejecting = new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        final Thread caller = Thread.currentThread();
+        final List<Boolean> results = new ParallelPartProcessor(rejecting).processAll(
+                Arrays.asList(part("foo")), new PartProcessor<Boolean>() {
+
+                    @Override
+                    public Boolean process(Multipart part) {
+                        return Thread.currentThread() == caller;
+                    }
+                });
+        assertThat(results.get(0), is(true));
+    }
+
+    @Test
+    public void testProcessAllStreamParameters() throws Exception {
+        final FileItemIterator iterator = mock(FileItemIterator.class);
+        final FileItemStream file1 = mock(FileItemStream.class);
+        final FileItemStream file2 = mock(FileItemStream.class);
+        when(iterator.hasNext()).thenReturn(true).thenReturn(true).thenReturn(false);
+        when(iterator.next()).thenReturn(file1).thenReturn(file2);
+        when(file1.getFieldName()).thenReturn("foo");
+        when(file1.openStream()).thenReturn(new ByteArrayInputStream("first".getBytes()));
+        when(file2.getFieldName()).thenReturn("foo");
+        when(file2.openStream()).thenReturn(new ByteArrayInputStream("second".getBytes()));
+        final FileItemStreamMultipartParameters parameters = new FileItemStreamMultipartParameters(
+                iterator, "UTF-8");
+        final List<String> results = parameters.processAll(new PartProcessor<String>() {
+
+            @Override
+            public String process(Multipart part) {
+                return new String(part.getBytes());
+            }
+        }, executor);
+        assertThat(results, is(Arrays.asList("first", "second")));
+    }
+
+    @Test
+    public void testProcessAllReleasesProcessedFiles() throws Exception {
+        final FileItemIterator iterator = mock(FileItemIterator.class);
+        final FileItemStream file = mock(FileItemStream.class);
+        when(iterator.hasNext()).thenReturn(true).thenReturn(false);
+        when(iterator.next()).thenReturn(file);
+        when(file.getFieldName()).thenReturn("foo");
+        when(file.openStream()).thenReturn(new ByteArrayInputStream("first".getBytes()));
+        final FileItemStreamMultipartParameters parameters = new FileItemStreamMultipartParameters(
+                iterator, "UTF-8");
+        final List<String> results = parameters.processAll(new PartProcessor<String>() {
+
+            @Override
+            public String process(Multipart part) {
+                return new String(part.getBytes());
+            }
+        }, executor);
+        assertThat(results, is(Arrays.asList("first")));
+        thrown.expect(FileUploadFailureException.class);
+        thrown.expectMessage("parameter [foo] has already been consumed");
+        parameters.getMultiparts("foo")[0].getBytes();
+    }
+
+    @Test
+    public void testProcessAllExceedsExtractSize() throws Exception {
+        thrown.expect(FileUploadFailureException.class);
+        final FileItemIterator iterator = mock(FileItemIterator.class);
+        final FileItemStream file = mock(FileItemStream.class);
+        when(iterator.hasNext()).thenReturn(true).thenReturn(false);
+        when(iterator.next()).thenReturn(file);
+        when(file.getFieldName()).thenReturn("foo");
+        when(file.openStream()).thenReturn(new ByteArrayInputStream("too large".getBytes()));
+        final FileItemStreamMultipartParameters parameters = new FileItemStreamMultipartParameters(
+                iterator, "UTF-8");
+        parameters.setMaxExtractSize(4);
+        parameters.processAll(new PartProcessor<String>() {
+
+            @Override
+            public String process(Multipart part) {
+                return new String(part.getBytes());
+            }
+        }, executor);
+    }
+
+    private static Multipart part(String name) {
+        final Multipart part = mock(Multipart.class);
+        when(part.getName()).thenReturn(name);
+        return part;
+    }
+}
@@ -0,0 +1,136 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.analogweb.util.IOUtils;
+import org.apache.commons.fileupload.FileItem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PooledFileItemFactoryTest {
+
+    private DirectBufferPool pool;
+    private PooledFileItemFactory factory;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new DirectBufferPool(4, 2, 16);
+        factory = new PooledFileItemFactory(pool, 12, folder.getRoot());
+    }
+
+    @Test
+    public void testCreateItemInMemory() throws Exception {
+        final FileItem item = factory.createItem("foo", "text/plain", false, "foo.txt");
+        final OutputStream out = item.getOutputStream();
+        out.write("Hello pool".getBytes());
+        out.close();
+        assertTrue(item.isInMemory());
+        assertThat(item.getSize(), is(10L));
+        assertThat(item.getString(), is("Hello pool"));
+        assertThat(pool.getAllocatedChunks(), is(4));
+        assertThat(pool.getAvailableChunks(), is(1));
+        final InputStream in = item.getInputStream();
+        item.delete();
+        // chunks are still referenced by the opened stream.
+        assertThat(pool.getAvailableChunks(), is(1));
+        assertThat(IOUtils.toString(in), is("Hello pool"));
+        in.close();
+        assertThat(pool.getAvailableChunks(), is(4));
+    }
+
+    @Test
+    public void testCreateItemSpillOverThreshold() throws Exception {
+        final PooledFileItem item = (PooledFileItem) factory.createItem("foo", "text/plain",
+                false, "foo.txt");
+        final OutputStream out = item.getOutputStream();
+        out.write("Hello ".getBytes());
+        out.write("spilled pool".getBytes());
+        out.close();
+        assertFalse(item.isInMemory());
+        assertThat(pool.getAvailableChunks(), is(pool.getAllocatedChunks()));
+        final File stored = item.getStoreLocation();
+        assertTrue(stored.exists());
+        assertThat(new String(item.get()), is("Hello spilled pool"));
+        item.delete();
+        assertFalse(stored.exists());
+    }
+
+    @Test
+    public void testCreateItemSpillOnExhaustedPool() throws Exception {
+        factory = new PooledFileItemFactory(pool, 1024, folder.getRoot());
+        final PooledFileItem item = (PooledFileItem) factory.createItem("foo", null, true, null);
+        final OutputStream out = item.getOutputStream();
+        out.write("0123456789abcdefXYZ".getBytes());
+        out.close();
+        assertFalse(item.isInMemory());
+        assertThat(item.getString(), is("0123456789abcdefXYZ"));
+        assertThat(pool.getAvailableChunks(), is(4));
+        final File stored = item.getStoreLocation();
+        item.delete();
+        assertFalse(stored.exists());
+    }
+
+    @Test
+    public void testGetAfterDeleted() throws Exception {
+        final FileItem item = factory.createItem("foo", "text/plain", false, "foo.txt");
+        final OutputStream out = item.getOutputStream();
+        out.write("Hello pool".getBytes());
+        out.close();
+        item.delete();
+        assertThat(pool.getAvailableChunks(), is(4));
+        assertThat(item.get().length, is(0));
+        assertThat(item.getString(), is(""));
+        try {
+            item.getInputStream();
+            fail();
+        } catch (final IOException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testGetKeepsChunksWhileReading() throws Exception {
+        final FileItem item = factory.createItem("foo", "text/plain", false, "foo.txt");
+        final OutputStream out = item.getOutputStream();
+        out.write("Hello pool".getBytes());
+        out.close();
+        final InputStream in = item.getInputStream();
+        assertThat(new String(item.get()), is("Hello pool"));
+        item.delete();
+        assertThat(pool.getAvailableChunks(), is(1));
+        in.close();
+        assertThat(pool.getAvailableChunks(), is(4));
+    }
+
+    @Test
+    public void testReleaseChunksOfCollectedItem() throws Exception {
+        createAndDrop("Hello pool");
+        assertFalse(pool.getAvailableChunks() == 4);
+        for (int i = 0; i < 100 && pool.getAvailableChunks() < 4; i++) {
+            System.gc();
+            Thread.sleep(10);
+            PooledFileItem.expunge();
+        }
+        assertThat(pool.getAvailableChunks(), is(4));
+    }
+
+    private void createAndDrop(String value) throws Exception {
+        final FileItem item = factory.createItem("foo", "text/plain", false, "foo.txt");
+        final OutputStream out = item.getOutputStream();
+        out.write(value.getBytes());
+        out.close();
+    }
+}
@@ -0,0 +1,67 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.TestMultiparts.write;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardedDiskFileItemFactoryTest {
+
+    private SpoolDirectory first;
+    private SpoolDirectory second;
+    private ShardedDiskFileItemFactory factory;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        first = new SpoolDirectory(folder.newFolder("first"), 0, 0, 4);
+        second = new SpoolDirectory(folder.newFolder("second"), 0, 0, 4);
+        factory = new ShardedDiskFileItemFactory(4, Arrays.asList(first, second));
+    }
+
+    @Test
+    public void testCreateSubdirectories() {
+        assertThat(first.getRoot().list().length, is(4));
+        assertTrue(new File(first.getRoot(), "03").isDirectory());
+    }
+
+    @Test
+    public void testCreateItemSpreadsInFlightWrites() throws Exception {
+        final FileItem item1 = factory.createItem("foo", null, false, "foo.txt");
+        final FileItem item2 = factory.createItem("foo", null, false, "foo.txt");
+        assertThat(first.getInFlight(), is(1));
+        assertThat(second.getInFlight(), is(1));
+        write(item1, "Hello file!");
+        assertThat(first.getInFlight(), is(0));
+        final File stored = ((DiskFileItem) item1).getStoreLocation();
+        assertThat(stored.getParentFile().getParentFile(), is(first.getRoot()));
+        final FileItem item3 = factory.createItem("foo", null, false, "foo.txt");
+        assertThat(first.getInFlight(), is(1));
+        item2.delete();
+        item3.delete();
+        assertThat(first.getInFlight(), is(0));
+        assertThat(second.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testSelectByTierAndFreeSpace() throws Exception {
+        final SpoolDirectory full = new SpoolDirectory(folder.newFolder("full"), 0,
+                Long.MAX_VALUE, 1);
+        final SpoolDirectory fallback = new SpoolDirectory(folder.newFolder("fallback"), 1, 0, 1);
+        factory = new ShardedDiskFileItemFactory(4, Arrays.asList(full, fallback));
+        assertThat(factory.select(), is(fallback));
+        factory = new ShardedDiskFileItemFactory(4, Arrays.asList(full));
+        assertThat(factory.select(), is(full));
+    }
+}
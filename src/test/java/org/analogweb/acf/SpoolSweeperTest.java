@@ -0,0 +1,67 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpoolSweeperTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSweepExpiredFiles() throws Exception {
+        final long expired = System.currentTimeMillis() - 10000;
+        final File old1 = createFile(folder.getRoot(), SpoolSweeper.FILE_PREFIX + "1.tmp", expired);
+        final File old2 = createFile(folder.newFolder("00"), SpoolSweeper.FILE_PREFIX + "2.tmp", expired);
+        final File fresh = createFile(folder.getRoot(), SpoolSweeper.FILE_PREFIX + "3.tmp",
+                System.currentTimeMillis());
+        final File other = createFile(folder.getRoot(), "other.tmp", expired);
+        // files of other applications sharing the directory.
+        final File foreign = createFile(folder.getRoot(), "upload_4.tmp", expired);
+        final SpoolSweeper sweeper = new SpoolSweeper(folder.getRoot(), 5000, 10);
+        assertThat(sweeper.sweep(), is(2));
+        assertThat(old1.exists() || old2.exists(), is(false));
+        assertTrue(fresh.exists());
+        assertTrue(other.exists());
+        assertTrue(foreign.exists());
+    }
+
+    @Test
+    public void testSweepIsBounded() throws Exception {
+        final long expired = System.currentTimeMillis() - 10000;
+        for (int i = 0; i < 5; i++) {
+            createFile(folder.getRoot(), SpoolSweeper.FILE_PREFIX + i + ".tmp", expired);
+        }
+        final SpoolSweeper sweeper = new SpoolSweeper(folder.getRoot(), 5000, 3);
+        assertThat(sweeper.sweep(), is(3));
+        assertThat(sweeper.sweep(), is(2));
+        assertThat(folder.getRoot().list().length, is(0));
+    }
+
+    @Test
+    public void testStartAndStop() {
+        final SpoolSweeper sweeper = new SpoolSweeper(folder.getRoot());
+        assertFalse(sweeper.isStarted());
+        sweeper.start(60000);
+        sweeper.start(60000);
+        assertTrue(sweeper.isStarted());
+        sweeper.stop();
+        assertFalse(sweeper.isStarted());
+        sweeper.stop();
+    }
+
+    private File createFile(File dir, String name, long lastModified) throws Exception {
+        final File file = new File(dir, name);
+        assertTrue(file.createNewFile());
+        assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+}
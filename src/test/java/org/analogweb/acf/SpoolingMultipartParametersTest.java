@@ -0,0 +1,231 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.analogweb.Multipart;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.RequestContext;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpoolingMultipartParametersTest {
+
+    private static final String BOUNDARY = "----boundary";
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private FileUpload fileUpload;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        fileUpload = new FileUpload(new DiskFileItemFactory(0, folder.newFolder()));
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFutureCompletesBeforeBodyIsRead() throws Exception {
+        final PipedOutputStream out = new PipedOutputStream();
+        final PipedInputStream in = new PipedInputStream(out, 65536);
+        final SpoolingMultipartParameters parameters = spoolAsync(in);
+        final Future<Multipart> first = parameters.getFuture("first", identity());
+        final Future<Multipart> second = parameters.getFuture("second", identity());
+        out.write(part("first", "a.txt", "first file").getBytes());
+        // the boundary of next part tells the first one is finished.
+        out.write(("--" + BOUNDARY + "\r\n").getBytes());
+        out.flush();
+        final Multipart actual = first.get(10, TimeUnit.SECONDS);
+        assertThat(new String(actual.getBytes()), is("first file"));
+        assertFalse(second.isDone());
+        assertFalse(parameters.isDone());
+        try {
+            second.get(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (final TimeoutException e) {
+            // expected.
+        }
+        out.write(("Content-Disposition: form-data; name=\"second\"; filename=\"b.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\nsecond file\r\n" + part("field", null,
+                "value") + "--" + BOUNDARY + "--\r\n").getBytes());
+        out.close();
+        assertThat(new String(second.get(10, TimeUnit.SECONDS).getBytes()), is("second file"));
+        assertThat(parameters.getParameter("field")[0], is("value"));
+        assertThat(parameters.getMultiparts("first").length, is(1));
+        assertTrue(parameters.isDone());
+        assertThat(parameters.getFuture("missing", identity()).get(), is(nullValue()));
+        parameters.dispose();
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        fileUpload.setSizeMax(10);
+        final SpoolingMultipartParameters parameters = spoolAsync(new ByteArrayInputStream(
+                (part("first", "a.txt", "first file") + "--" + BOUNDARY + "--\r\n").getBytes()));
+        try {
+            parameters.getFuture("first", identity()).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof SizeLimitExceededException);
+        }
+        try {
+            parameters.getParameter("first");
+            fail();
+        } catch (final FileUploadFailureException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testDisposeWhileSpooling() throws Exception {
+        final File repository = folder.newFolder();
+        fileUpload = new FileUpload(new DiskFileItemFactory(0, repository));
+        final BlockingInputStream blocking = new BlockingInputStream();
+        final SpoolingMultipartParameters parameters = spoolAsync(new SequenceInputStream(
+                new ByteArrayInputStream((part("first", "a.txt", "first file") + "--" + BOUNDARY
+                        + "\r\n").getBytes()), blocking));
+        final Future<Multipart> first = parameters.getFuture("first", identity());
+        first.get(10, TimeUnit.SECONDS);
+        // the spooling thread is blocked reading the rest of the body.
+        parameters.dispose();
+        assertTrue(blocking.closed.await(0, TimeUnit.SECONDS));
+        // spooled parts are deleted by the spooling thread itself.
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(parameters.isDone());
+        assertThat(repository.list().length, is(0));
+    }
+
+    @Test
+    public void testCaptureRequestContext() throws Exception {
+        final InputStream body = mock(InputStream.class);
+        final RequestContext context = context(body);
+        final RequestContext captured = SpoolingMultipartParameters.capture(context);
+        reset(context);
+        assertThat(captured.getContentType(), is("multipart/form-data; boundary=" + BOUNDARY));
+        assertThat(captured.getContentLength(), is(-1));
+        assertThat(captured.getCharacterEncoding(), is("UTF-8"));
+        when(context.getInputStream()).thenReturn(body);
+        assertThat(captured.getInputStream(), is(body));
+    }
+
+    @Test
+    public void testDisposeBeforeSpooling() throws Exception {
+        final SpoolingMultipartParameters parameters = new SpoolingMultipartParameters("UTF-8");
+        final Future<Multipart> first = parameters.getFuture("first", identity());
+        parameters.dispose();
+        try {
+            first.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof FileUploadException);
+        }
+        final InputStream body = mock(InputStream.class);
+        try {
+            parameters.spool(fileUpload, context(body), null);
+            fail();
+        } catch (final FileUploadException e) {
+            // the body is never read.
+            verifyZeroInteractions(body);
+        }
+    }
+
+    private SpoolingMultipartParameters spoolAsync(InputStream body) {
+        final SpoolingMultipartParameters parameters = new SpoolingMultipartParameters("UTF-8");
+        final RequestContext context = context(body);
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    parameters.spool(fileUpload, context, null);
+                } catch (final FileUploadException e) {
+                    // failure is notified to parameters.
+                }
+            }
+        });
+        return parameters;
+    }
+
+    private static final class BlockingInputStream extends InputStream {
+
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            try {
+                closed.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("closed");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    static RequestContext context(InputStream body) {
+        final RequestContext context = mock(RequestContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data; boundary=" + BOUNDARY);
+        when(context.getContentLength()).thenReturn(-1);
+        when(context.getCharacterEncoding()).thenReturn("UTF-8");
+        try {
+            when(context.getInputStream()).thenReturn(body);
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        }
+        return context;
+    }
+
+    static String part(String name, String fileName, String value) {
+        return "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\""
+                + (fileName == null ? "" : "; filename=\"" + fileName + "\"")
+                + "\r\nContent-Type: text/plain\r\n\r\n" + value + "\r\n";
+    }
+
+    private static PartProcessor<Multipart> identity() {
+        return new PartProcessor<Multipart>() {
+
+            @Override
+            public Multipart process(Multipart part) {
+                return part;
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.TestMultiparts.write;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TempFilePoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReuseReleasedFile() throws Exception {
+        final TempFilePool pool = new TempFilePool(folder.getRoot(), 2);
+        pool.preallocate(1);
+        assertThat(pool.getIdleCount(), is(1));
+        final RecyclingDiskFileItemFactory factory = new RecyclingDiskFileItemFactory(4, pool);
+        final FileItem item = factory.createItem("foo", "text/plain", false, "foo.txt");
+        write(item, "Hello file!");
+        final File stored = ((DiskFileItem) item).getStoreLocation();
+        assertThat(pool.getIdleCount(), is(0));
+        assertThat(item.getString(), is("Hello file!"));
+        item.delete();
+        item.delete();
+        // released file is renamed, never reachable through the old path.
+        assertFalse(stored.exists());
+        assertThat(pool.getIdleCount(), is(1));
+        assertThat(item.get(), is((byte[]) null));
+        final FileItem reused = factory.createItem("foo", "text/plain", false, "foo.txt");
+        write(reused, "Hi file");
+        final File reusedLocation = ((DiskFileItem) reused).getStoreLocation();
+        assertThat(reusedLocation.equals(stored), is(false));
+        assertThat(reusedLocation.getParentFile(), is(folder.getRoot()));
+        assertThat(folder.getRoot().list().length, is(1));
+        assertThat(reused.getString(), is("Hi file"));
+    }
+
+    @Test
+    public void testReleaseOverMaxIdle() throws Exception {
+        final TempFilePool pool = new TempFilePool(folder.getRoot(), 1);
+        final File first = pool.acquire();
+        final File second = pool.acquire();
+        assertTrue(first.createNewFile());
+        assertTrue(second.createNewFile());
+        pool.release(first);
+        pool.release(second);
+        assertThat(pool.getIdleCount(), is(1));
+        assertFalse(first.exists());
+        assertFalse(second.exists());
+        assertThat(folder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void testAdoptRemainingFiles() throws Exception {
+        new TempFilePool(folder.getRoot(), 4).preallocate(3);
+        final TempFilePool pool = new TempFilePool(folder.getRoot(), 2);
+        assertThat(pool.getIdleCount(), is(2));
+        assertThat(folder.getRoot().list().length, is(2));
+    }
+}
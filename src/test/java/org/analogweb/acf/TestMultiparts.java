@@ -0,0 +1,45 @@
+package org.analogweb.acf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.fileupload.FileItem;
+
+/**
+ * テストで共有するマルチパートのデータを扱います。
+ * @author snowgoose
+ */
+final class TestMultiparts {
+
+    static final String BOUNDARY = "------------------------------4ebf00fbcf09";
+
+    private TestMultiparts() {
+        // nop.
+    }
+
+    /**
+     * 通常のパラメータ2つと、境界に似た行を含むファイルパラメータで構成される
+     * リクエストボディを返却します。
+     */
+    static byte[] multipartBody() {
+        return new StringBuilder().append("--" + BOUNDARY + "\r\n")
+                .append("Content-Disposition: form-data; name=\"foo\"\r\n").append("\r\n")
+                .append("baa\r\n").append("--" + BOUNDARY + "\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n")
+                .append("Content-Type: text/plain\r\n").append("\r\n")
+                .append("line1\r\n--line2\r\n").append("--" + BOUNDARY + "\r\n")
+                .append("Content-Disposition: form-data; name=\"foo\"\r\n").append("\r\n")
+                .append("\r\n").append("--" + BOUNDARY + "--\r\n").append("epilogue").toString()
+                .getBytes();
+    }
+
+    static void write(FileItem item, String content) throws IOException {
+        write(item, content.getBytes());
+    }
+
+    static void write(FileItem item, byte[] content) throws IOException {
+        final OutputStream out = item.getOutputStream();
+        out.write(content);
+        out.close();
+    }
+}
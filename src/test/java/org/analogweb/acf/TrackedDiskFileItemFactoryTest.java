@@ -0,0 +1,107 @@
+package org.analogweb.acf;
+
+import static org.analogweb.acf.TestMultiparts.write;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TrackedDiskFileItemFactoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCombineDecorators() throws Exception {
+        final SpoolDirectory directory = new SpoolDirectory(folder.newFolder("spool"), 0, 0, 2);
+        final MemoryBudgetDecorator budget = new MemoryBudgetDecorator(100, 8);
+        budget.setMaxSizeThreshold(8);
+        final InMemoryUploadMetrics metrics = new InMemoryUploadMetrics();
+        final TrackedDiskFileItemFactory factory = new TrackedDiskFileItemFactory(1024,
+                folder.getRoot()).addDecorator(budget).addDecorator(
+                new ShardingDecorator(Arrays.asList(directory)));
+        factory.setMetrics(metrics);
+        final FileItem item = factory.createItem("foo", null, false, "foo.txt");
+        assertThat(budget.getReservedBytes(), is(8L));
+        assertThat(directory.getInFlight(), is(1));
+        write(item, "Hello file!");
+        assertFalse(item.isInMemory());
+        final File stored = ((DiskFileItem) item).getStoreLocation();
+        assertThat(stored.getParentFile().getParentFile(), is(directory.getRoot()));
+        assertThat(budget.getReservedBytes(), is(0L));
+        assertThat(directory.getInFlight(), is(0));
+        assertThat(metrics.getSpoolUsage(), is(11L));
+        item.delete();
+        assertFalse(stored.exists());
+        assertThat(metrics.getSpoolUsage(), is(0L));
+    }
+
+    @Test
+    public void testDerive() throws Exception {
+        final SpoolDirectory directory = new SpoolDirectory(folder.newFolder("spool"));
+        final MemoryBudgetDecorator budget = new MemoryBudgetDecorator(100, 8);
+        final TrackedDiskFileItemFactory factory = new TrackedDiskFileItemFactory(1024,
+                folder.getRoot()).addDecorator(budget).addDecorator(
+                new ShardingDecorator(Arrays.asList(directory)));
+        final InMemoryUploadMetrics metrics = new InMemoryUploadMetrics();
+        factory.setMetrics(metrics);
+        final TrackedDiskFileItemFactory inherited = factory.derive(-1, null);
+        assertThat(inherited.getSizeThreshold(), is(1024));
+        assertThat(inherited.getDecorators().size(), is(2));
+        assertThat(inherited.getMetrics(), is((UploadMetrics) metrics));
+        // the route directory replaces the shards.
+        final File route = folder.newFolder("route");
+        final TrackedDiskFileItemFactory relocated = factory.derive(4, route);
+        assertThat(relocated.getSizeThreshold(), is(4));
+        assertThat(relocated.getRepository(), is(route));
+        assertThat(relocated.getDecorators(), is(Arrays.<DiskFileItemDecorator> asList(budget)));
+        final FileItem item = relocated.createItem("foo", null, false, "foo.txt");
+        write(item, "Hello file!");
+        assertThat(((DiskFileItem) item).getStoreLocation().getParentFile(), is(route));
+        item.delete();
+    }
+
+    @Test
+    public void testReleaseDecoratedOnFailure() throws Exception {
+        final MemoryBudgetDecorator budget = new MemoryBudgetDecorator(100, 8);
+        final TrackedDiskFileItemFactory factory = new TrackedDiskFileItemFactory(1024,
+                folder.getRoot()).addDecorator(budget).addDecorator(
+                new DiskFileItemDecorator() {
+
+                    @Override
+                    public DiskFileItemListener decorate(DiskFileItemSpec spec) {
+                        throw new IllegalStateException();
+                    }
+                });
+        try {
+            factory.createItem("foo", null, false, "foo.txt");
+            fail();
+        } catch (final IllegalStateException e) {
+            assertThat(budget.getReservedBytes(), is(0L));
+        }
+    }
+
+    @Test
+    public void testRecycleWithRepository() throws Exception {
+        final TempFilePool pool = new TempFilePool(folder.newFolder("pool"), 2);
+        final TrackedDiskFileItemFactory factory = new TrackedDiskFileItemFactory(4,
+                folder.getRoot()).addDecorator(new RecyclingDecorator(pool));
+        final FileItem item = factory.createItem("foo", null, false, "foo.txt");
+        write(item, "Hello file!");
+        final File stored = ((DiskFileItem) item).getStoreLocation();
+        assertThat(stored.getParentFile(), is(pool.getDirectory()));
+        item.delete();
+        assertFalse(stored.exists());
+        assertThat(pool.getIdleCount(), is(1));
+        assertThat(pool.getDirectory().list().length, is(1));
+    }
+}
@@ -0,0 +1,92 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class UploadAdmissionControllerTest {
+
+    private UploadAdmissionController controller;
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testAcquireAndRelease() {
+        controller = new UploadAdmissionController(2, 100, 0);
+        final UploadAdmissionController.Admission first = controller.acquire(40);
+        final UploadAdmissionController.Admission second = controller.acquire(-1);
+        assertThat(controller.getActiveUploads(), is(2));
+        // unknown length reserves a fair share.
+        assertThat(controller.getInFlightBytes(), is(90L));
+        first.release();
+        first.release();
+        second.release();
+        assertThat(controller.getActiveUploads(), is(0));
+        assertThat(controller.getInFlightBytes(), is(0L));
+    }
+
+    @Test
+    public void testUnknownLengthReservation() {
+        controller = new UploadAdmissionController(4, 100, 0);
+        controller.setUnknownLengthReservation(70);
+        controller.acquire(-1);
+        assertThat(controller.getInFlightBytes(), is(70L));
+        controller.setUnknownLengthReservation(-1);
+        thrown.expect(UploadRejectedException.class);
+        controller.acquire(-1);
+    }
+
+    @Test
+    public void testRejectOnConcurrentUploads() {
+        thrown.expect(UploadRejectedException.class);
+        controller = new UploadAdmissionController(1, -1, 0);
+        controller.acquire(10);
+        controller.acquire(10);
+    }
+
+    @Test
+    public void testRejectOnInFlightBytes() {
+        controller = new UploadAdmissionController(2, 100, 10);
+        controller.acquire(60);
+        try {
+            controller.acquire(60);
+        } catch (final UploadRejectedException e) {
+            // the upload permit must be returned on rejection.
+            assertThat(controller.getActiveUploads(), is(1));
+            return;
+        }
+        throw new AssertionError();
+    }
+
+    @Test
+    public void testRejectTooLargeRequest() {
+        thrown.expect(UploadRejectedException.class);
+        controller = new UploadAdmissionController(2, 100, 1000);
+        controller.acquire(101);
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+        controller = new UploadAdmissionController(1, -1, 5000);
+        final UploadAdmissionController.Admission first = controller.acquire(10);
+        final Thread releaser = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                    // nop.
+                }
+                first.release();
+            }
+        };
+        releaser.start();
+        controller.acquire(10).release();
+        releaser.join();
+        assertThat(controller.getActiveUploads(), is(0));
+    }
+}
@@ -0,0 +1,144 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.analogweb.Headers;
+import org.analogweb.RequestContext;
+import org.apache.commons.fileupload.ProgressListener;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class UploadProgressRegistryTest {
+
+    private UploadProgressRegistry registry;
+    private RequestContext request;
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Before
+    public void setUp() {
+        registry = new UploadProgressRegistry();
+        request = mock(RequestContext.class);
+        when(request.getContentLength()).thenReturn(10000L);
+    }
+
+    @Test
+    public void testStartWithUploadIdHeader() {
+        final Headers headers = mock(Headers.class);
+        when(headers.getValues("X-Upload-Id")).thenReturn(Arrays.asList("abc"));
+        when(request.getRequestHeaders()).thenReturn(headers);
+        when(request.getAttribute(UploadProgressRegistry.OWNER_ATTRIBUTE)).thenReturn("alice");
+        final UploadProgress progress = registry.start(request);
+        assertThat(progress.getUploadId(), is("abc"));
+        assertThat(progress.getContentLength(), is(10000L));
+        assertThat(registry.get(request, "abc"), is(progress));
+        verify(request).setAttribute(UploadProgress.ATTRIBUTE_NAME, progress);
+        // other owners cannot see the upload.
+        final RequestContext other = mock(RequestContext.class);
+        when(other.getAttribute(UploadProgressRegistry.OWNER_ATTRIBUTE)).thenReturn("bob");
+        assertNull(registry.get(other, "abc"));
+        assertNull(registry.get(mock(RequestContext.class), "abc"));
+        progress.complete();
+        assertNull(registry.get(request, "abc"));
+        assertTrue(progress.isCompleted());
+    }
+
+    @Test
+    public void testIgnoreUploadIdHeaderWithoutOwner() {
+        final Headers headers = mock(Headers.class);
+        when(headers.getValues("X-Upload-Id")).thenReturn(Arrays.asList("abc"));
+        when(request.getRequestHeaders()).thenReturn(headers);
+        final UploadProgress progress = registry.start(request);
+        assertFalse(progress.getUploadId().equals("abc"));
+        assertNull(registry.get(request, "abc"));
+    }
+
+    @Test
+    public void testRejectDuplicateUploadId() {
+        final Headers headers = mock(Headers.class);
+        when(headers.getValues("X-Upload-Id")).thenReturn(Arrays.asList("abc"));
+        when(request.getRequestHeaders()).thenReturn(headers);
+        when(request.getAttribute(UploadProgressRegistry.OWNER_ATTRIBUTE)).thenReturn("alice");
+        final UploadProgress progress = registry.start(request);
+        try {
+            registry.start(request);
+            fail();
+        } catch (final UploadRejectedException e) {
+            assertThat(registry.get(request, "abc"), is(progress));
+        }
+    }
+
+    @Test
+    public void testStartWithGeneratedUploadId() {
+        final UploadProgress progress = registry.start(request);
+        assertThat(registry.get(request, progress.getUploadId()), is(progress));
+        assertThat(registry.getProgresses().size(), is(1));
+    }
+
+    @Test
+    public void testThroughputAndRemaining() {
+        final UploadProgress progress = new UploadProgress(registry, "foo", 10000, 0);
+        progress.update(500, 10000, 1, 500);
+        // average since start.
+        assertThat(progress.getBytesPerSecond(500), is(1000L));
+        assertThat(progress.getEstimatedRemainingMillis(500), is(9500L));
+        progress.update(2000, 10000, 2, 1000);
+        progress.update(6000, 10000, 3, 2000);
+        // rate of the last sampling interval.
+        assertThat(progress.getBytesPerSecond(2000), is(4000L));
+        assertThat(progress.getEstimatedRemainingMillis(2000), is(1000L));
+        assertThat(progress.getItems(), is(3));
+        assertThat(progress.getBytesRead(), is(6000L));
+    }
+
+    @Test
+    public void testRemainingUnknown() {
+        final UploadProgress progress = new UploadProgress(registry, "foo", -1, 0);
+        progress.update(500, -1, 1, 500);
+        assertThat(progress.getEstimatedRemainingMillis(500), is(-1L));
+    }
+
+    @Test
+    public void testStalled() {
+        final UploadProgress progress = registry.start(request);
+        progress.update(100, 10000, 1, System.currentTimeMillis() - 5000);
+        assertTrue(progress.isStalled(1000));
+        assertThat(registry.getStalled(1000).size(), is(1));
+        assertThat(registry.getStalled(60000).size(), is(0));
+        progress.complete();
+        assertFalse(progress.isStalled(1000));
+    }
+
+    @Test
+    public void testCancel() {
+        final UploadProgress progress = new UploadProgress(registry, "foo", 10000, 0);
+        progress.bind(Thread.currentThread());
+        progress.cancel();
+        assertTrue(Thread.currentThread().isInterrupted());
+        progress.unbind();
+        assertFalse(Thread.currentThread().isInterrupted());
+        thrown.expect(UploadRejectedException.class);
+        progress.update(100, 10000, 1);
+    }
+
+    @Test
+    public void testCompositeProgressListener() {
+        final ProgressListener first = mock(ProgressListener.class);
+        final ProgressListener second = mock(ProgressListener.class);
+        new CompositeProgressListener(first, null, second).update(10, 20, 1);
+        verify(first).update(10, 20, 1);
+        verify(second).update(10, 20, 1);
+    }
+}
@@ -0,0 +1,113 @@
+package org.analogweb.acf;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
+import org.apache.commons.fileupload.util.FileItemHeadersImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class UploadQuotaTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testNarrow() {
+        final UploadQuota global = new UploadQuota(1000, -1, 10, -1, 512);
+        final UploadQuota route = new UploadQuota(-1, 100, 20, 2, 256);
+        final UploadQuota actual = global.narrow(route);
+        assertThat(actual.getMaxRequestSize(), is(1000L));
+        assertThat(actual.getMaxFileSize(), is(100L));
+        assertThat(actual.getMaxParts(), is(10));
+        assertThat(actual.getMaxPartsPerField(), is(2));
+        assertThat(actual.getMaxHeaderSize(), is(256));
+        assertThat(global.narrow(UploadQuota.UNLIMITED), is(sameInstance(global)));
+        assertThat(UploadQuota.UNLIMITED.narrow(route), is(sameInstance(route)));
+    }
+
+    @Test
+    public void testApplyTo() {
+        final FileUpload fileUpload = new FileUpload();
+        fileUpload.setSizeMax(500);
+        final UploadQuota quota = new UploadQuota(1000, 100, -1, -1, -1);
+        assertTrue(quota.narrows(fileUpload));
+        quota.applyTo(fileUpload);
+        assertThat(fileUpload.getSizeMax(), is(500L));
+        assertThat(fileUpload.getFileSizeMax(), is(100L));
+        assertFalse(quota.narrows(fileUpload));
+        assertFalse(UploadQuota.UNLIMITED.narrows(new FileUpload()));
+    }
+
+    @Test
+    public void testCheckContentLength() throws Exception {
+        final UploadQuota quota = new UploadQuota(1000, -1, -1, -1, -1);
+        quota.checkContentLength(-1, -1);
+        quota.checkContentLength(1000, -1);
+        thrown.expect(SizeLimitExceededException.class);
+        quota.checkContentLength(501, 500);
+    }
+
+    @Test
+    public void testLimitParts() throws Exception {
+        final PartLimiter limiter = PartLimiter.of(new UploadQuota(-1, -1, 3, -1, -1));
+        final FileItemIterator limited = limiter.limit(iterator("a", "b", "c", "d"));
+        limited.next();
+        limited.next();
+        limited.next();
+        thrown.expect(PartLimitExceededException.class);
+        limited.next();
+    }
+
+    @Test
+    public void testLimitPartsPerField() throws Exception {
+        final PartLimiter limiter = PartLimiter.of(new UploadQuota(-1, -1, -1, 2, -1));
+        final FileItemIterator limited = limiter.limit(iterator("a", "b", "a",
+                "b", "a"));
+        for (int i = 0; i < 4; i++) {
+            limited.next();
+        }
+        thrown.expect(PartLimitExceededException.class);
+        limited.next();
+    }
+
+    @Test
+    public void testLimitHeaderSize() throws Exception {
+        final PartLimiter limiter = PartLimiter.of(new UploadQuota(-1, -1, -1, -1, 64));
+        final FileItemHeadersImpl headers = new FileItemHeadersImpl();
+        headers.addHeader("Content-Disposition", "form-data; name=\"a\"");
+        limiter.check("a", headers);
+        headers.addHeader("X-Padding", "0123456789012345678901234567890123456789");
+        thrown.expect(PartLimitExceededException.class);
+        limiter.check("a", headers);
+    }
+
+    @Test
+    public void testNoPartLimits() {
+        assertThat(PartLimiter.of(new UploadQuota(100, 100, -1, -1, -1)), is((PartLimiter) null));
+        assertThat(PartLimiter.of(null), is((PartLimiter) null));
+    }
+
+    private static FileItemIterator iterator(String... names) throws Exception {
+        final FileItemIterator iterator = mock(FileItemIterator.class);
+        final FileItemStream[] items = new FileItemStream[names.length];
+        for (int i = 0; i < names.length; i++) {
+            items[i] = mock(FileItemStream.class);
+            when(items[i].getFieldName()).thenReturn(names[i]);
+        }
+        when(iterator.next()).thenReturn(items[0], Arrays.copyOfRange(items, 1, items.length));
+        return iterator;
+    }
+}